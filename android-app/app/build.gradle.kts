@@ -3,6 +3,7 @@ plugins {
     alias(libs.plugins.kotlin.android)
     alias(libs.plugins.kotlin.compose)
     kotlin("plugin.serialization") version "2.0.0"
+    id("com.google.devtools.ksp") version "2.0.0-1.0.21"
 }
 
 android {
@@ -41,10 +42,15 @@ android {
     buildFeatures {
         compose = true
     }
+    testOptions {
+        // android.util.Log and friends return defaults in local JVM tests
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
 
+    implementation(project(":core"))
     implementation(libs.androidx.core.ktx)
     implementation(libs.androidx.lifecycle.runtime.ktx)
     implementation(libs.androidx.activity.compose)
@@ -54,6 +60,7 @@ dependencies {
     implementation(libs.androidx.ui.tooling.preview)
     implementation(libs.androidx.material3)
     testImplementation(libs.junit)
+    testImplementation("org.jetbrains.kotlinx:kotlinx-coroutines-test:1.7.3")
     androidTestImplementation(libs.androidx.junit)
     androidTestImplementation(libs.androidx.espresso.core)
     androidTestImplementation(platform(libs.androidx.compose.bom))
@@ -79,17 +86,24 @@ dependencies {
     implementation("com.amplifyframework:aws-core:2.24.0")
     implementation("com.amplifyframework:aws-storage-s3:2.24.0")
 
+    // Foreground/background state of the whole process
+    implementation("androidx.lifecycle:lifecycle-process:2.8.7")
+
     // WorkManager for background tasks
     implementation("androidx.work:work-runtime-ktx:2.8.1")
 
     // DataStore for preference storage
     implementation("androidx.datastore:datastore-preferences:1.0.0")
 
+    // Room for the offline catalog cache
+    implementation("androidx.room:room-runtime:2.6.1")
+    implementation("androidx.room:room-ktx:2.6.1")
+    ksp("androidx.room:room-compiler:2.6.1")
+
     // Kotlin Serialization
     implementation("org.jetbrains.kotlinx:kotlinx-serialization-json:1.6.0")
 
     implementation("io.coil-kt:coil-compose:2.4.0")
-    implementation("com.github.bumptech.glide:compose:1.0.0-beta01")
 
 
 }
\ No newline at end of file
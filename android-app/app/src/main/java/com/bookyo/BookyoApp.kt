@@ -13,7 +13,8 @@ import com.amplifyframework.analytics.pinpoint.AWSPinpointAnalyticsPlugin
 import com.amplifyframework.core.Amplify as JavaAmplify
 import com.amplifyframework.storage.s3.AWSS3StoragePlugin
 import com.bookyo.notifications.NotificationService
-import com.bookyo.publish.PendingPublishWorker
+import com.bookyo.outbox.OutboxWorker
+import com.bookyo.services.ImageCache
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.SupervisorJob
@@ -51,7 +52,7 @@ class BookyoApp: Application(), Configuration.Provider {
             Log.i("BookyoApp", "Initialized Amplify")
 
             // Initialize notification service
-            notificationService = NotificationService.getInstance()
+            notificationService = NotificationService.getInstance(this)
 
             // Initialize WorkManager for background tasks
             WorkManager.getInstance(this)
@@ -81,8 +82,8 @@ class BookyoApp: Application(), Configuration.Provider {
     }
 
     private fun checkPendingPublishes() {
-        // Schedule a worker to process any pending publish requests
-        PendingPublishWorker.enqueueWork(this)
+        // Schedule a drain of any mutations queued while offline
+        OutboxWorker.enqueueWork(this)
     }
 
     fun startNotificationService() {
@@ -94,6 +95,13 @@ class BookyoApp: Application(), Configuration.Provider {
         }
     }
 
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            ImageCache.getInstance(this).clearMemory()
+        }
+    }
+
     override fun getWorkManagerConfiguration(): Configuration {
         return Configuration.Builder()
             .setMinimumLoggingLevel(Log.INFO)
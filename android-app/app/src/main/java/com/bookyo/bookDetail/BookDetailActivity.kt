@@ -143,7 +143,7 @@ fun BookDetailScreen(
                 .fillMaxSize()
                 .padding(paddingValues)
         ) {
-            if (uiState.isLoading) {
+            if (uiState.isLoadingBook) {
                 // Show loading indicator
                 CircularProgressIndicator(
                     modifier = Modifier.align(Alignment.Center),
@@ -195,7 +195,15 @@ fun BookDetailScreen(
                     Spacer(modifier = Modifier.height(24.dp))
 
                     // Status badge
-                    if (uiState.hasListing) {
+                    if (uiState.isLoadingListings) {
+                        CircularProgressIndicator(
+                            modifier = Modifier
+                                .padding(bottom = 16.dp)
+                                .size(24.dp),
+                            color = blue,
+                            strokeWidth = 2.dp
+                        )
+                    } else if (uiState.hasListing) {
                         Surface(
                             shape = MaterialTheme.shapes.small,
                             color = green.copy(alpha = 0.2f),
@@ -238,6 +246,7 @@ fun BookDetailScreen(
                                 }
                             },
                             modifier = Modifier.padding(horizontal = 8.dp),
+                            enabled = !uiState.isLoadingWishlist,
                             isPrimary = false
                         )
                     }
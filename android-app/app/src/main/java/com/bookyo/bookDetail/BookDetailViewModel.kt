@@ -4,7 +4,6 @@ import android.app.Application
 import android.util.Log
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
-import com.amplifyframework.api.graphql.model.ModelMutation
 import com.amplifyframework.api.graphql.model.ModelQuery
 import com.amplifyframework.core.model.LoadedModelReference
 import com.amplifyframework.core.model.includes
@@ -17,15 +16,30 @@ import com.amplifyframework.datastore.generated.model.ListingPath
 import com.amplifyframework.datastore.generated.model.Wishlist
 import com.amplifyframework.kotlin.core.Amplify
 import com.bookyo.analytics.BookyoAnalytics
+import com.bookyo.data.EntityCache
+import com.bookyo.data.local.CatalogStore
+import com.bookyo.outbox.OutboxMutation
+import com.bookyo.outbox.OutboxStore
+import com.bookyo.outbox.OutboxWorker
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.async
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.filterNotNull
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.supervisorScope
 
+/**
+ * Each section (book, listings, wishlist) loads on its own and has its own
+ * loading flag, so the screen fills in as the data arrives.
+ */
 data class BookDetailUIState(
-    val isLoading: Boolean = true,
+    val isLoadingBook: Boolean = true,
+    val isLoadingListings: Boolean = true,
+    val isLoadingWishlist: Boolean = true,
     val book: Book? = null,
     val authorName: String = "",
     val errorMessage: String? = null,
@@ -37,33 +51,26 @@ data class BookDetailUIState(
 class BookDetailViewModel(application: Application) : AndroidViewModel(application) {
     companion object {
         private const val TAG = "BookDetailViewModel"
+
+        // A book another screen loaded this recently is not fetched again
+        private const val FRESH_FOR_MS = 60_000L
     }
 
     private val _uiState = MutableStateFlow(BookDetailUIState())
     val uiState: StateFlow<BookDetailUIState> = _uiState.asStateFlow()
 
-    private var bookId: String? = null
-    private var currentUserId: String? = null
-    private var wishlistId: String? = null
+    private val catalogStore = CatalogStore.getInstance(application)
+    private val entityCache = EntityCache.getInstance()
 
-    init {
-        viewModelScope.launch {
-            try {
-                // Get current user
-                val authUser = Amplify.Auth.getCurrentUser()
-                currentUserId = authUser.userId
+    private var bookId: String? = null
+    private var loadJob: Job? = null
 
-                // Load user's wishlist ID
-                loadWishlistId()
-            } catch (e: Exception) {
-                Log.e(TAG, "Error getting current user", e)
-            }
-        }
-    }
+    // Started right away; the wishlist check and toggles wait on it
+    private val userWishlistId: Deferred<String?> = viewModelScope.async { loadWishlistId() }
 
-    private suspend fun loadWishlistId() {
-        try {
-            val userId = currentUserId ?: return
+    private suspend fun loadWishlistId(): String? {
+        return try {
+            val userId = Amplify.Auth.getCurrentUser().userId
 
             val response = Amplify.API.query(
                 ModelQuery.list(
@@ -72,71 +79,140 @@ class BookDetailViewModel(application: Application) : AndroidViewModel(applicati
                 )
             )
 
-            wishlistId = response.data.items.firstOrNull()?.id
-            Log.d(TAG, "Loaded wishlist ID: $wishlistId")
+            response.data.items.firstOrNull()?.id.also {
+                Log.d(TAG, "Loaded wishlist ID: $it")
+            }
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e(TAG, "Error loading wishlist", e)
+            null
         }
     }
 
+    /**
+     * The book, its listings and its wishlist entry are fetched at the same
+     * time; each section is shown as soon as its own request returns.
+     */
     fun loadBookDetails(bookId: String) {
         this.bookId = bookId
 
-        viewModelScope.launch {
-            _uiState.update { it.copy(isLoading = true, errorMessage = null) }
+        loadJob?.cancel()
+        loadJob = viewModelScope.launch {
+            _uiState.update {
+                it.copy(
+                    isLoadingBook = true,
+                    isLoadingListings = true,
+                    isLoadingWishlist = true,
+                    errorMessage = null
+                )
+            }
 
-            try {
-                // Load the book
-                val book = fetchBook(bookId)
-
-                if (book != null) {
-                    // Get author name
-                    val authorName = (book.author as? LoadedModelReference<Author>)?.value?.name ?: ""
-
-                    // Check if there are any listings for this book
-                    val listings = fetchListings(bookId)
-                    val hasListing = !listings.isNullOrEmpty()
-                    val listingPrice = if (hasListing) {
-                        String.format("$%.2f", listings.first().price)
-                    } else ""
-
-                    // Check if the book is in the user's wishlist
-                    val isInWishlist = checkWishlist(bookId)
-
-                    _uiState.update {
-                        it.copy(
-                            isLoading = false,
-                            book = book,
-                            authorName = authorName,
-                            hasListing = hasListing,
-                            listingPrice = listingPrice,
-                            isInWishlist = isInWishlist
-                        )
-                    }
-                } else {
-                    _uiState.update {
-                        it.copy(
-                            isLoading = false,
-                            errorMessage = "Book not found"
-                        )
-                    }
-                }
-            } catch (e: Exception) {
-                Log.e(TAG, "Error loading book details", e)
-                _uiState.update {
-                    it.copy(
-                        isLoading = false,
-                        errorMessage = e.localizedMessage ?: "Failed to load book details"
-                    )
-                }
+            launch { loadBook(bookId) }
+            launch { loadListings(bookId) }
+            launch { loadWishlistState(bookId) }
+        }
+    }
+
+    /**
+     * A book fresh in memory is shown without a request. Otherwise a cached
+     * copy renders at once and the network result replaces it and is
+     * written back. Changes made to the book elsewhere keep showing up.
+     */
+    private suspend fun loadBook(bookId: String) {
+        val fresh = entityCache.getFresh(Book::class.java, bookId, FRESH_FOR_MS)
+        if (fresh != null) {
+            showBook(fresh)
+        } else {
+            fetchAndShowBook(bookId)
+        }
+
+        entityCache.observe(Book::class.java, bookId)
+            .filterNotNull()
+            .collect { showBook(it) }
+    }
+
+    private suspend fun fetchAndShowBook(bookId: String) {
+        val cached = catalogStore.book(bookId)
+        if (cached != null) showBook(cached)
+
+        val book = fetchBook(bookId)
+
+        if (book != null) {
+            entityCache.put(book)
+            showBook(book)
+            catalogStore.saveBooks(listOf(book))
+        } else if (cached == null) {
+            _uiState.update {
+                it.copy(
+                    isLoadingBook = false,
+                    errorMessage = "Book not found"
+                )
             }
         }
     }
 
-    private suspend fun fetchBook(bookId: String): Book? = supervisorScope {
+    private fun showBook(book: Book) {
+        val authorName = (book.author as? LoadedModelReference<Author>)?.value?.name ?: ""
+        _uiState.update {
+            it.copy(
+                isLoadingBook = false,
+                book = book,
+                authorName = authorName.ifEmpty { it.authorName }
+            )
+        }
+    }
+
+    private suspend fun loadListings(bookId: String) {
+        val cached = catalogStore.listingsForBook(bookId)
+        if (cached.isNotEmpty()) showListings(cached)
+
+        val listings = fetchListings(bookId)
+
+        if (listings == null) {
+            showListings(cached)
+            return
+        }
+
+        entityCache.replaceWhere(Listing::class.java, listings) { it.bookId() == bookId }
+        catalogStore.replaceListingsForBook(bookId, listings)
+
+        // Includes listings created for this book on other screens
+        entityCache.observeQuery(Listing::class.java) { it.bookId() == bookId }
+            .collect { showListings(it) }
+    }
+
+    private fun Listing.bookId(): String? = (book as? LoadedModelReference<Book>)?.value?.id
+
+    private fun showListings(listings: List<Listing>) {
+        val hasListing = listings.isNotEmpty()
+        val listingPrice = if (hasListing) {
+            String.format("$%.2f", listings.first().price)
+        } else ""
+
+        _uiState.update {
+            it.copy(
+                isLoadingListings = false,
+                hasListing = hasListing,
+                listingPrice = listingPrice
+            )
+        }
+    }
+
+    private suspend fun loadWishlistState(bookId: String) {
+        val isInWishlist = checkWishlist(bookId)
+        _uiState.update {
+            it.copy(
+                isLoadingWishlist = false,
+                isInWishlist = isInWishlist
+            )
+        }
+    }
+
+    private suspend fun fetchBook(bookId: String): Book? {
         val start = System.currentTimeMillis()
 
-        try {
+        return try {
             val request = ModelQuery.get<Book, BookPath>(
                 Book::class.java,
                 bookId
@@ -160,6 +236,8 @@ class BookDetailViewModel(application: Application) : AndroidViewModel(applicati
             )
 
             response.data
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             BookyoAnalytics.trackApiCall(
                 "fetchBook",
@@ -175,10 +253,10 @@ class BookDetailViewModel(application: Application) : AndroidViewModel(applicati
         }
     }
 
-    private suspend fun fetchListings(bookId: String): List<Listing>? = supervisorScope {
+    private suspend fun fetchListings(bookId: String): List<Listing>? {
         val start = System.currentTimeMillis()
 
-        try {
+        return try {
             val request = ModelQuery.list<Listing, ListingPath>(
                 Listing::class.java,
                 Listing.BOOK.eq(bookId)
@@ -202,6 +280,8 @@ class BookDetailViewModel(application: Application) : AndroidViewModel(applicati
             )
 
             response.data.items.toList()
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             BookyoAnalytics.trackApiCall(
                 "fetchListings",
@@ -218,75 +298,64 @@ class BookDetailViewModel(application: Application) : AndroidViewModel(applicati
     }
 
     private suspend fun checkWishlist(bookId: String): Boolean {
-        val wishlistId = this.wishlistId ?: return false
+        val wishlistId = userWishlistId.await() ?: return false
 
         try {
             val response = Amplify.API.query(
                 ModelQuery.list(
                     BookWishlist::class.java,
-                    BookWishlist.ID.eq(bookId).and(BookWishlist.ID.eq(wishlistId))
+                    BookWishlist.BOOK.eq(bookId).and(BookWishlist.LIST.eq(wishlistId))
                 )
             )
 
             val res = response.data.items
             return res.iterator().hasNext()
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             Log.e(TAG, "Error checking wishlist", e)
             return false
         }
     }
 
+    /**
+     * Wishlist changes go through the outbox: the UI updates right away and
+     * the change is applied (or retried) by the drain job, online or not.
+     */
     fun addToWishlist() {
-        viewModelScope.launch {
-            try {
-                val bookId = this@BookDetailViewModel.bookId ?: return@launch
-                val wishlistId = this@BookDetailViewModel.wishlistId ?: return@launch
-
-                // Create a new BookWishlist entry
-                val bookWishlist = BookWishlist.builder()
-                    .id(bookId)
-                    .id(wishlistId)
-                    .build()
-
-                Amplify.API.mutate(
-                    ModelMutation.create(bookWishlist)
-                )
-
-                _uiState.update { it.copy(isInWishlist = true) }
-
-            } catch (e: Exception) {
-                Log.e(TAG, "Error adding to wishlist", e)
-                _uiState.update { it.copy(errorMessage = "Failed to add to wishlist") }
-            }
+        queueWishlistChange(inWishlist = true) { wishlistId, bookId ->
+            OutboxMutation.AddToWishlist(wishlistId = wishlistId, bookId = bookId)
         }
     }
 
     fun removeFromWishlist() {
-        viewModelScope.launch {
-            try {
-                val bookId = this@BookDetailViewModel.bookId ?: return@launch
-                val wishlistId = this@BookDetailViewModel.wishlistId ?: return@launch
-
-                // Find the BookWishlist entry
-                val response = Amplify.API.query(
-                    ModelQuery.list(
-                        BookWishlist::class.java,
-                        BookWishlist.ID.eq(bookId).and(BookWishlist.ID.eq(wishlistId))
-                    )
-                )
-
-                val bookWishlist = response.data.items.firstOrNull() ?: return@launch
-
+        queueWishlistChange(inWishlist = false) { wishlistId, bookId ->
+            OutboxMutation.RemoveFromWishlist(wishlistId = wishlistId, bookId = bookId)
+        }
+    }
 
-                Amplify.API.mutate(
-                    ModelMutation.delete(bookWishlist)
-                )
+    private fun queueWishlistChange(
+        inWishlist: Boolean,
+        mutation: (wishlistId: String, bookId: String) -> OutboxMutation
+    ) {
+        val bookId = this.bookId ?: return
 
-                _uiState.update { it.copy(isInWishlist = false) }
+        viewModelScope.launch {
+            val wishlistId = userWishlistId.await() ?: return@launch
+            val previous = _uiState.value.isInWishlist
+            _uiState.update { it.copy(isInWishlist = inWishlist) }
 
+            try {
+                OutboxStore.getInstance(getApplication()).enqueue(mutation(wishlistId, bookId))
+                OutboxWorker.enqueueWork(getApplication())
             } catch (e: Exception) {
-                Log.e(TAG, "Error removing from wishlist", e)
-                _uiState.update { it.copy(errorMessage = "Failed to remove from wishlist") }
+                Log.e(TAG, "Error queuing wishlist change", e)
+                _uiState.update {
+                    it.copy(
+                        isInWishlist = previous,
+                        errorMessage = if (inWishlist) "Failed to add to wishlist" else "Failed to remove from wishlist"
+                    )
+                }
             }
         }
     }
@@ -14,20 +14,22 @@ import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.remember
-import androidx.compose.runtime.rememberCoroutineScope
 import androidx.compose.runtime.setValue
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
+import androidx.compose.ui.layout.onSizeChanged
 import androidx.compose.ui.graphics.asImageBitmap
 import androidx.compose.ui.platform.LocalContext
 import androidx.compose.ui.res.painterResource
+import androidx.compose.ui.unit.IntSize
 import androidx.compose.ui.unit.dp
 import com.bookyo.R
+import com.bookyo.services.DecodeSizing
 import com.bookyo.services.ImageLoader
 import com.bookyo.services.rememberImageLoader
 import com.bookyo.ui.blue
 import com.bookyo.ui.white
-import kotlinx.coroutines.launch
+import kotlinx.coroutines.CancellationException
 
 
 @Composable
@@ -36,26 +38,32 @@ fun BookThumbnail(
     modifier: Modifier = Modifier
 ) {
     val context = LocalContext.current
-    val coroutineScope = rememberCoroutineScope()
 
     var imageState by remember { mutableStateOf<ImageLoader.ImageLoadingState>(ImageLoader.ImageLoadingState.Loading) }
 
     val imageLoader = rememberImageLoader(context)
 
-    // Se dispara cada vez que cambia thumbnailKey
-    LaunchedEffect(thumbnailKey) {
+    // Tamaño medido en píxeles, para decodificar la imagen a esa resolución
+    var targetSize by remember { mutableStateOf(IntSize.Zero) }
+
+    // Se dispara cada vez que cambia thumbnailKey. La carga se cancela con el
+    // efecto, y la descarga compartida solo se aborta si nadie más la espera
+    LaunchedEffect(thumbnailKey, targetSize) {
         if (!thumbnailKey.isNullOrEmpty()) {
-            coroutineScope.launch {
-                imageState = ImageLoader.ImageLoadingState.Loading
-                try {
-                    imageLoader.loadImage(thumbnailKey)
-                        .collect { state ->
-                            imageState = state
-                        }
-                } catch (e: Exception) {
-                    imageState = ImageLoader.ImageLoadingState.Error(e)
-                    Log.e("BookThumbnail", "Error al cargar la imagen", e)
-                }
+            // Esperar a la primera medición antes de cargar
+            if (targetSize == IntSize.Zero) return@LaunchedEffect
+
+            imageState = ImageLoader.ImageLoadingState.Loading
+            try {
+                imageLoader.loadImage(thumbnailKey, targetSize.width, targetSize.height)
+                    .collect { state ->
+                        imageState = state
+                    }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                imageState = ImageLoader.ImageLoadingState.Error(e)
+                Log.e("BookThumbnail", "Error al cargar la imagen", e)
             }
         } else {
             imageState = ImageLoader.ImageLoadingState.Error(Exception("Clave de imagen inválida"))
@@ -66,7 +74,11 @@ fun BookThumbnail(
         modifier = modifier
             .fillMaxWidth()
             .aspectRatio(0.67f)
-            .background(white),
+            .background(white)
+            .onSizeChanged { size ->
+                val bucketed = IntSize(DecodeSizing.bucket(size.width), DecodeSizing.bucket(size.height))
+                if (bucketed != targetSize) targetSize = bucketed
+            },
         contentAlignment = Alignment.Center
     ) {
         when (imageState) {
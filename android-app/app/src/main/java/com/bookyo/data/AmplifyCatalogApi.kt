@@ -0,0 +1,66 @@
+package com.bookyo.data
+
+import com.amplifyframework.api.graphql.GraphQLRequest
+import com.amplifyframework.api.graphql.PaginatedResult
+import com.amplifyframework.api.graphql.model.ModelPagination
+import com.amplifyframework.api.graphql.model.ModelQuery
+import com.amplifyframework.auth.AuthUserAttributeKey
+import com.amplifyframework.datastore.generated.model.Author
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.User
+import com.amplifyframework.kotlin.core.Amplify
+import com.bookyo.outbox.createIdempotent
+
+/**
+ * [CatalogApi] backed by the Amplify GraphQL API
+ */
+class AmplifyCatalogApi : CatalogApi {
+    companion object {
+        private const val AUTHOR_PAGE_SIZE = 1000
+    }
+
+    override suspend fun currentUserEmail(): String {
+        val attributes = Amplify.Auth.fetchUserAttributes()
+        val email = attributes.firstOrNull { it.key == AuthUserAttributeKey.email() } ?: attributes.first()
+        return email.value
+    }
+
+    override suspend fun listAuthors(): List<Author> {
+        val authors = ArrayList<Author>()
+        var request: GraphQLRequest<PaginatedResult<Author>>? =
+            ModelQuery.list(Author::class.java, ModelPagination.limit(AUTHOR_PAGE_SIZE))
+        while (request != null) {
+            val response = Amplify.API.query(request)
+            if (response.hasErrors()) {
+                throw Exception("Error querying authors: ${response.errors.first().message}")
+            }
+            val page = response.data
+            authors += page.items
+            request = if (page.hasNextResult()) page.requestForNextResult else null
+        }
+        return authors
+    }
+
+    override suspend fun createAuthor(author: Author): Author = createIdempotent(author)
+
+    override suspend fun getBook(id: String): Book? {
+        val response = Amplify.API.query(ModelQuery[Book::class.java, id])
+        if (response.hasErrors()) {
+            throw Exception("Failed to get book: ${response.errors.first().message}")
+        }
+        return response.data
+    }
+
+    override suspend fun getUser(email: String): User? {
+        val response = Amplify.API.query(ModelQuery[User::class.java, email])
+        if (response.hasErrors()) {
+            throw Exception("Failed to get user: ${response.errors.first().message}")
+        }
+        return response.data
+    }
+
+    override suspend fun createBook(book: Book): Book = createIdempotent(book)
+
+    override suspend fun createListing(listing: Listing): Listing = createIdempotent(listing)
+}
@@ -0,0 +1,68 @@
+package com.bookyo.data
+
+import android.content.Context
+import android.util.Log
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.edit
+import androidx.datastore.preferences.core.stringPreferencesKey
+import androidx.datastore.preferences.preferencesDataStore
+import kotlinx.coroutines.flow.first
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+@Serializable
+data class CachedAuthor(val id: String, val name: String)
+
+/**
+ * Persisted normalized-name to author map used by [AuthorResolver]
+ */
+interface AuthorNameStore {
+    suspend fun load(): Map<String, CachedAuthor>
+
+    suspend fun save(key: String, author: CachedAuthor)
+}
+
+class InMemoryAuthorNameStore : AuthorNameStore {
+    private val authors = HashMap<String, CachedAuthor>()
+
+    override suspend fun load(): Map<String, CachedAuthor> = synchronized(authors) { HashMap(authors) }
+
+    override suspend fun save(key: String, author: CachedAuthor) {
+        synchronized(authors) { authors[key] = author }
+    }
+}
+
+private val Context.authorNameDataStore: DataStore<Preferences> by preferencesDataStore(
+    name = "author_names"
+)
+
+class DataStoreAuthorNameStore(context: Context) : AuthorNameStore {
+    companion object {
+        private const val TAG = "AuthorNameStore"
+    }
+
+    private val dataStore = context.applicationContext.authorNameDataStore
+
+    override suspend fun load(): Map<String, CachedAuthor> {
+        return try {
+            dataStore.data.first().asMap().entries.mapNotNull { (key, value) ->
+                val author = runCatching { Json.decodeFromString<CachedAuthor>(value as String) }.getOrNull()
+                author?.let { key.name to it }
+            }.toMap()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error loading cached authors", e)
+            emptyMap()
+        }
+    }
+
+    override suspend fun save(key: String, author: CachedAuthor) {
+        try {
+            dataStore.edit { it[stringPreferencesKey(key)] = Json.encodeToString(author) }
+        } catch (e: Exception) {
+            // Only a cache: the author is looked up again next time
+            Log.e(TAG, "Error saving cached author", e)
+        }
+    }
+}
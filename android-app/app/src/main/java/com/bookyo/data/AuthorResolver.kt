@@ -0,0 +1,128 @@
+package com.bookyo.data
+
+import com.amplifyframework.datastore.generated.model.Author
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.text.Normalizer
+import java.util.Locale
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Resolves author names typed by users to [Author] records.
+ *
+ * Names are matched on a normalized key (case, accents and spacing
+ * ignored). Resolved ids are kept in memory and in an [AuthorNameStore], so
+ * publishing another book by a known author costs no round-trip. Unknown
+ * names are looked up by key in a single scan of the server's authors,
+ * made once per resolver, so variants of an author created before keys
+ * existed (with an unrelated id) are found too.
+ *
+ * A new author gets an id derived from its key. Two publishes creating the
+ * same author at once, on this device or another, therefore target one
+ * record: the second create finds it instead of adding a duplicate.
+ */
+class AuthorResolver(
+    private val api: CatalogApi,
+    private val store: AuthorNameStore = InMemoryAuthorNameStore()
+) {
+    companion object {
+        private val WHITESPACE = Regex("\\s+")
+        private val COMBINING_MARKS = Regex("\\p{Mn}+")
+
+        /**
+         * Key under which [name] is cached and matched
+         */
+        fun normalize(name: String): String {
+            return Normalizer.normalize(clean(name), Normalizer.Form.NFD)
+                .replace(COMBINING_MARKS, "")
+                .lowercase(Locale.ROOT)
+        }
+
+        /**
+         * [name] as typed, without stray spacing
+         */
+        private fun clean(name: String): String = name.trim().replace(WHITESPACE, " ")
+
+        /**
+         * Id given to a new author with normalized name [key]
+         */
+        fun authorIdFor(key: String): String {
+            return UUID.nameUUIDFromBytes("author:$key".toByteArray(Charsets.UTF_8)).toString()
+        }
+    }
+
+    private val loadLock = Mutex()
+    private var cache: MutableMap<String, CachedAuthor>? = null
+
+    private val scanLock = Mutex()
+
+    // Server authors by key, from the one scan
+    private var serverAuthors: Map<String, Author>? = null
+
+    // One create at a time per key, so concurrent publishes share it
+    private val createLocks = ConcurrentHashMap<String, Mutex>()
+
+    suspend fun resolve(name: String): Author {
+        val key = normalize(name)
+        require(key.isNotEmpty()) { "Author name is required" }
+
+        cached(key)?.let { return it.toModel() }
+
+        prefetch(listOf(name))
+        cached(key)?.let { return it.toModel() }
+
+        return createLocks.getOrPut(key) { Mutex() }.withLock {
+            cached(key)?.toModel() ?: create(key, clean(name))
+        }
+    }
+
+    /**
+     * Look up all [names] not cached yet, scanning the server's authors if
+     * this resolver has not yet
+     */
+    suspend fun prefetch(names: Collection<String>) {
+        val unknown = names
+            .map { normalize(it) }
+            .filter { it.isNotEmpty() && cached(it) == null }
+            .distinct()
+        if (unknown.isEmpty()) return
+
+        val byKey = serverAuthors()
+        unknown.forEach { key -> byKey[key]?.let { remember(it) } }
+    }
+
+    private suspend fun serverAuthors(): Map<String, Author> = scanLock.withLock {
+        // Several records may share a key (older duplicates): prefer the one
+        // with the derived id, otherwise the first returned
+        serverAuthors ?: api.listAuthors()
+            .sortedBy { it.id != authorIdFor(normalize(it.name)) }
+            .distinctBy { normalize(it.name) }
+            .associateBy { normalize(it.name) }
+            .also { serverAuthors = it }
+    }
+
+    private suspend fun create(key: String, name: String): Author {
+        val author = api.createAuthor(Author.builder().name(name).id(authorIdFor(key)).build())
+        remember(author)
+        return author
+    }
+
+    private suspend fun cached(key: String): CachedAuthor? = entries()[key]
+
+    private suspend fun remember(author: Author) {
+        val key = normalize(author.name)
+        val entry = CachedAuthor(author.id, author.name)
+        entries()[key] = entry
+        store.save(key, entry)
+    }
+
+    private suspend fun entries(): MutableMap<String, CachedAuthor> {
+        cache?.let { return it }
+        return loadLock.withLock {
+            cache ?: ConcurrentHashMap(store.load()).also { cache = it }
+        }
+    }
+
+    private fun CachedAuthor.toModel(): Author = Author.builder().name(name).id(id).build()
+}
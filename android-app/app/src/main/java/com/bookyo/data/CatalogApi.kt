@@ -0,0 +1,43 @@
+package com.bookyo.data
+
+import com.amplifyframework.datastore.generated.model.Author
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.User
+
+/**
+ * Backend operations used by the publish and listing use cases. Kept small
+ * so the use cases can run against a fake in unit tests.
+ */
+interface CatalogApi {
+    /**
+     * Email of the signed-in user, which is also the id of their [User]
+     */
+    suspend fun currentUserEmail(): String
+
+    /**
+     * Every author, following all pages. Names are stored as typed, so
+     * callers match them on a normalized key themselves.
+     */
+    suspend fun listAuthors(): List<Author>
+
+    /**
+     * Create [author], with the same replay semantics as [createBook]
+     */
+    suspend fun createAuthor(author: Author): Author
+
+    suspend fun getBook(id: String): Book?
+
+    suspend fun getUser(email: String): User?
+
+    /**
+     * Create [book]; a book with the same id already on the server counts
+     * as created, so replays are safe
+     */
+    suspend fun createBook(book: Book): Book
+
+    /**
+     * Create [listing], with the same replay semantics as [createBook]
+     */
+    suspend fun createListing(listing: Listing): Listing
+}
@@ -0,0 +1,210 @@
+package com.bookyo.data
+
+import com.amplifyframework.core.model.LoadedModelReference
+import com.amplifyframework.core.model.Model
+import com.amplifyframework.core.model.ModelReference
+import com.amplifyframework.datastore.generated.model.Author
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.User
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.update
+
+/**
+ * Process-wide, normalized cache of API models, keyed by model type and id.
+ *
+ * Nested models that were loaded with their parent (a book's author, a
+ * listing's book and seller) are stored as entities of their own, and are
+ * put back from the cache on read. An author renamed through one book, or a
+ * listing created on one screen, is therefore seen by every screen that
+ * observes the cache.
+ *
+ * Observation follows a version counter, like QueueStore: every write bumps
+ * it and each observer re-reads its entity or query, emitting only changes.
+ */
+class EntityCache(
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 2000
+
+        @Volatile
+        private var INSTANCE: EntityCache? = null
+
+        fun getInstance(): EntityCache {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: EntityCache().also { INSTANCE = it }
+            }
+        }
+    }
+
+    private data class Key(val type: Class<out Model>, val id: String)
+
+    private class Entry(val model: Model, val storedAt: Long)
+
+    private val lock = Any()
+
+    // Insertion order is write order, so the first entry is the stalest
+    private val entries = LinkedHashMap<Key, Entry>()
+
+    private val version = MutableStateFlow(0L)
+
+    /**
+     * Store [models] and every loaded model nested in them
+     */
+    fun putAll(models: Iterable<Model>) {
+        val now = clock()
+        synchronized(lock) {
+            models.forEach { store(it, now) }
+            while (entries.size > maxEntries) {
+                entries.remove(entries.keys.first())
+            }
+        }
+        version.update { it + 1 }
+    }
+
+    fun put(model: Model) = putAll(listOf(model))
+
+    fun <T : Model> remove(type: Class<T>, id: String) {
+        val removed = synchronized(lock) { entries.remove(Key(type, id)) }
+        if (removed != null) version.update { it + 1 }
+    }
+
+    /**
+     * Make the cached set of [type] matching [predicate] exactly [models],
+     * dropping entities the server no longer returned for that query.
+     */
+    fun <T : Model> replaceWhere(type: Class<T>, models: List<T>, predicate: (T) -> Boolean) {
+        val keep = models.mapTo(HashSet()) { it.primaryKeyString }
+        synchronized(lock) {
+            val stale = entries.filter { (key, entry) ->
+                key.type == type && key.id !in keep && predicate(type.cast(entry.model)!!)
+            }.keys
+            stale.forEach { entries.remove(it) }
+        }
+        putAll(models)
+    }
+
+    fun <T : Model> get(type: Class<T>, id: String): T? {
+        return synchronized(lock) { resolve(type, entries[Key(type, id)]?.model) }
+    }
+
+    /**
+     * The cached entity, if it was stored within the last [maxAgeMs]
+     */
+    fun <T : Model> getFresh(type: Class<T>, id: String, maxAgeMs: Long): T? {
+        return synchronized(lock) {
+            val entry = entries[Key(type, id)] ?: return null
+            if (clock() - entry.storedAt > maxAgeMs) null else resolve(type, entry.model)
+        }
+    }
+
+    /**
+     * Cached entities of [type] matching [predicate], in write order
+     */
+    fun <T : Model> query(type: Class<T>, predicate: (T) -> Boolean = { true }): List<T> {
+        return synchronized(lock) {
+            entries.entries
+                .filter { it.key.type == type }
+                .mapNotNull { resolve(type, it.value.model) }
+                .filter(predicate)
+        }
+    }
+
+    fun <T : Model> observe(type: Class<T>, id: String): Flow<T?> {
+        return version.map { get(type, id) }.distinctUntilChanged()
+    }
+
+    fun <T : Model> observeQuery(type: Class<T>, predicate: (T) -> Boolean = { true }): Flow<List<T>> {
+        return version.map { query(type, predicate) }.distinctUntilChanged()
+    }
+
+    fun clear() {
+        synchronized(lock) { entries.clear() }
+        version.update { it + 1 }
+    }
+
+    private fun store(model: Model, now: Long) {
+        // Models referenced only by id (Book.justId) carry no data to keep
+        if (!model.isComplete()) return
+
+        when (model) {
+            is Book -> model.author.loaded()?.let { store(it, now) }
+            is Listing -> {
+                model.book.loaded()?.let { store(it, now) }
+                model.user.loaded()?.let { store(it, now) }
+            }
+        }
+
+        val key = Key(model.javaClass, model.primaryKeyString)
+        val previous = entries.remove(key)?.model
+        entries[key] = Entry(mergeRelations(model, previous), now)
+    }
+
+    /**
+     * A model fetched without its relations keeps the ones already cached
+     */
+    private fun mergeRelations(model: Model, previous: Model?): Model {
+        return when {
+            model is Book && previous is Book -> {
+                val author = previous.author.loaded()
+                if (model.author.loaded() == null && author != null) {
+                    model.copyOfBuilder().author(author).build()
+                } else model
+            }
+            model is Listing && previous is Listing -> {
+                val book = previous.book.loaded().takeIf { model.book.loaded() == null }
+                val user = previous.user.loaded().takeIf { model.user.loaded() == null }
+                if (book == null && user == null) return model
+
+                val builder = model.copyOfBuilder()
+                if (book != null) builder.book(book)
+                if (user != null) builder.user(user)
+                builder.build()
+            }
+            else -> model
+        }
+    }
+
+    /**
+     * Swap nested models for their current cached versions
+     */
+    private fun <T : Model> resolve(type: Class<T>, model: Model?): T? {
+        val resolved = when (model) {
+            is Book -> {
+                val author = model.author.loaded()?.let { current(Author::class.java, it) }
+                if (author != null && author !== model.author.loaded()) {
+                    model.copyOfBuilder().author(author).build()
+                } else model
+            }
+            is Listing -> {
+                val book = model.book.loaded()?.let { resolve(Book::class.java, current(Book::class.java, it)) }
+                val user = model.user.loaded()?.let { current(User::class.java, it) }
+                val builder = model.copyOfBuilder()
+                if (book != null) builder.book(book)
+                if (user != null) builder.user(user)
+                builder.build()
+            }
+            else -> model
+        }
+        return resolved?.let { type.cast(it) }
+    }
+
+    private fun <T : Model> current(type: Class<T>, nested: T): T? {
+        return entries[Key(type, nested.primaryKeyString)]?.model?.let { type.cast(it) }
+    }
+
+    private fun Model.isComplete(): Boolean = when (this) {
+        is Book -> title != null
+        is Author -> name != null
+        is Listing -> price != null
+        is User -> email != null
+        else -> true
+    }
+
+    private fun <T : Model> ModelReference<T>?.loaded(): T? = (this as? LoadedModelReference<T>)?.value
+}
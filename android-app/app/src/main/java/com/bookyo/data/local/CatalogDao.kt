@@ -0,0 +1,134 @@
+package com.bookyo.data.local
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import androidx.room.Transaction
+import kotlinx.coroutines.flow.Flow
+
+@Dao
+abstract class CatalogDao {
+
+    @Transaction
+    @Query("SELECT * FROM books ORDER BY cachedAt DESC LIMIT :limit")
+    abstract suspend fun books(limit: Int): List<BookWithAuthor>
+
+    @Transaction
+    @Query("SELECT * FROM books ORDER BY cachedAt DESC LIMIT :limit")
+    abstract fun observeBooks(limit: Int): Flow<List<BookWithAuthor>>
+
+    @Transaction
+    @Query("SELECT * FROM books WHERE id = :id")
+    abstract suspend fun book(id: String): BookWithAuthor?
+
+    @Transaction
+    @Query("SELECT * FROM listings ORDER BY cachedAt DESC LIMIT :limit")
+    abstract suspend fun listings(limit: Int): List<ListingWithBook>
+
+    @Transaction
+    @Query("SELECT * FROM listings WHERE bookId = :bookId ORDER BY cachedAt DESC")
+    abstract suspend fun listingsForBook(bookId: String): List<ListingWithBook>
+
+    @Query("SELECT * FROM authors WHERE id IN (:ids)")
+    protected abstract suspend fun authorsById(ids: List<String>): List<AuthorEntity>
+
+    @Query("SELECT * FROM books WHERE id IN (:ids)")
+    protected abstract suspend fun booksById(ids: List<String>): List<BookEntity>
+
+    @Query("SELECT * FROM listings WHERE id IN (:ids)")
+    protected abstract suspend fun listingsById(ids: List<String>): List<ListingEntity>
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract suspend fun insertAuthors(rows: List<AuthorEntity>)
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract suspend fun insertBooks(rows: List<BookEntity>)
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    protected abstract suspend fun insertListings(rows: List<ListingEntity>)
+
+    @Query("DELETE FROM listings WHERE bookId = :bookId AND id NOT IN (:keepIds)")
+    protected abstract suspend fun deleteListingsForBookExcept(bookId: String, keepIds: List<String>)
+
+    /**
+     * Upserts skip rows the cache already holds in a newer version, so a slow
+     * response landing after a fresher one cannot roll the cache back.
+     */
+    @Transaction
+    open suspend fun upsertAuthors(rows: List<AuthorEntity>) {
+        if (rows.isEmpty()) return
+        val current = authorsById(rows.map { it.id }).associateBy { it.id }
+        insertAuthors(rows.filter { it.updatedAt >= (current[it.id]?.updatedAt ?: 0L) })
+    }
+
+    @Transaction
+    open suspend fun upsertBooks(rows: List<BookEntity>) {
+        if (rows.isEmpty()) return
+        val current = booksById(rows.map { it.id }).associateBy { it.id }
+        insertBooks(rows.mapNotNull { row ->
+            val existing = current[row.id]
+            when {
+                existing == null -> row
+                row.updatedAt < existing.updatedAt -> null
+                // Books loaded without their author keep the known one
+                else -> row.copy(authorId = row.authorId ?: existing.authorId)
+            }
+        })
+    }
+
+    @Transaction
+    open suspend fun upsertListings(rows: List<ListingEntity>) {
+        if (rows.isEmpty()) return
+        val current = listingsById(rows.map { it.id }).associateBy { it.id }
+        insertListings(rows.mapNotNull { row ->
+            val existing = current[row.id]
+            when {
+                existing == null -> row
+                row.updatedAt < existing.updatedAt -> null
+                else -> row.copy(sellerEmail = row.sellerEmail ?: existing.sellerEmail)
+            }
+        })
+    }
+
+    /**
+     * Store the complete set of listings of one book, dropping cached ones
+     * the server no longer returns.
+     */
+    @Transaction
+    open suspend fun replaceListingsForBook(bookId: String, rows: List<ListingEntity>) {
+        deleteListingsForBookExcept(bookId, rows.map { it.id })
+        upsertListings(rows)
+    }
+
+    @Query("DELETE FROM listings WHERE cachedAt < :cutoff")
+    abstract suspend fun deleteListingsOlderThan(cutoff: Long)
+
+    @Query("DELETE FROM books WHERE cachedAt < :cutoff")
+    abstract suspend fun deleteBooksOlderThan(cutoff: Long)
+
+    @Query(
+        "DELETE FROM listings WHERE id NOT IN " +
+            "(SELECT id FROM listings ORDER BY cachedAt DESC LIMIT :maxRows)"
+    )
+    abstract suspend fun trimListings(maxRows: Int)
+
+    @Query(
+        "DELETE FROM books WHERE id NOT IN " +
+            "(SELECT id FROM books ORDER BY cachedAt DESC LIMIT :maxRows)"
+    )
+    abstract suspend fun trimBooks(maxRows: Int)
+
+    // Authors are small; they go once no cached book points at them
+    @Query("DELETE FROM authors WHERE id NOT IN (SELECT authorId FROM books WHERE authorId IS NOT NULL)")
+    abstract suspend fun deleteOrphanAuthors()
+
+    @Transaction
+    open suspend fun evict(cutoff: Long, maxRows: Int) {
+        deleteListingsOlderThan(cutoff)
+        deleteBooksOlderThan(cutoff)
+        trimListings(maxRows)
+        trimBooks(maxRows)
+        deleteOrphanAuthors()
+    }
+}
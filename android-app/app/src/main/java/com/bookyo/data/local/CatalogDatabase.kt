@@ -0,0 +1,50 @@
+package com.bookyo.data.local
+
+import android.content.Context
+import androidx.room.Database
+import androidx.room.Room
+import androidx.room.RoomDatabase
+import androidx.room.TypeConverter
+import androidx.room.TypeConverters
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+
+class CatalogConverters {
+    @TypeConverter
+    fun fromStringList(value: List<String>): String = Json.encodeToString(value)
+
+    @TypeConverter
+    fun toStringList(value: String): List<String> = Json.decodeFromString(value)
+}
+
+/**
+ * Local copy of the catalog. It only caches server data, so a schema change
+ * simply drops it and it is refilled from the network.
+ */
+@Database(
+    entities = [AuthorEntity::class, BookEntity::class, ListingEntity::class],
+    version = 1,
+    exportSchema = false
+)
+@TypeConverters(CatalogConverters::class)
+abstract class CatalogDatabase : RoomDatabase() {
+    abstract fun catalogDao(): CatalogDao
+
+    companion object {
+        @Volatile
+        private var INSTANCE: CatalogDatabase? = null
+
+        fun getInstance(context: Context): CatalogDatabase {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: Room.databaseBuilder(
+                    context.applicationContext,
+                    CatalogDatabase::class.java,
+                    "catalog.db"
+                )
+                    .fallbackToDestructiveMigration()
+                    .build()
+                    .also { INSTANCE = it }
+            }
+        }
+    }
+}
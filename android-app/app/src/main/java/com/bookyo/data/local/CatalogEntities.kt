@@ -0,0 +1,64 @@
+package com.bookyo.data.local
+
+import androidx.room.Embedded
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+import androidx.room.Relation
+
+/**
+ * Cached rows of the catalog models. [updatedAt] is the server's updatedAt
+ * (millis, 0 when unknown) and decides which write wins; [cachedAt] is when
+ * the row was last written locally and drives eviction.
+ */
+@Entity(
+    tableName = "authors",
+    indices = [Index("cachedAt")]
+)
+data class AuthorEntity(
+    @PrimaryKey val id: String,
+    val name: String,
+    val updatedAt: Long,
+    val cachedAt: Long
+)
+
+@Entity(
+    tableName = "books",
+    indices = [Index("authorId"), Index("cachedAt")]
+)
+data class BookEntity(
+    @PrimaryKey val id: String,
+    val title: String,
+    val isbn: String,
+    val thumbnail: String?,
+    val authorId: String?,
+    val updatedAt: Long,
+    val cachedAt: Long
+)
+
+@Entity(
+    tableName = "listings",
+    indices = [Index("bookId"), Index("cachedAt")]
+)
+data class ListingEntity(
+    @PrimaryKey val id: String,
+    val bookId: String?,
+    val sellerEmail: String?,
+    val price: Double,
+    val status: String?,
+    val photos: List<String>,
+    val updatedAt: Long,
+    val cachedAt: Long
+)
+
+data class BookWithAuthor(
+    @Embedded val book: BookEntity,
+    @Relation(parentColumn = "authorId", entityColumn = "id")
+    val author: AuthorEntity?
+)
+
+data class ListingWithBook(
+    @Embedded val listing: ListingEntity,
+    @Relation(entity = BookEntity::class, parentColumn = "bookId", entityColumn = "id")
+    val book: BookWithAuthor?
+)
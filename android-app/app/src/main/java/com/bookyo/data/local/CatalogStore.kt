@@ -0,0 +1,183 @@
+package com.bookyo.data.local
+
+import android.content.Context
+import android.util.Log
+import androidx.room.withTransaction
+import com.amplifyframework.core.model.LoadedModelReference
+import com.amplifyframework.core.model.temporal.Temporal
+import com.amplifyframework.datastore.generated.model.Author
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.ListingStatus
+import com.amplifyframework.datastore.generated.model.User
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.TimeUnit
+
+/**
+ * Offline-first cache of books, authors and listings. Screens read from it
+ * first and then write what the network returns back through it
+ * (stale-while-revalidate). Reads and writes use the generated models, so
+ * callers never see the Room entities.
+ *
+ * Writes go through one lock in arrival order, and each row keeps the newest
+ * server version it has seen. Rows older than [MAX_AGE_MS] or beyond
+ * [MAX_ROWS] per table are evicted after writes.
+ */
+class CatalogStore private constructor(private val database: CatalogDatabase) {
+    companion object {
+        private const val TAG = "CatalogStore"
+
+        const val MAX_ROWS = 500
+        val MAX_AGE_MS = TimeUnit.DAYS.toMillis(7)
+        private val EVICTION_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5)
+
+        @Volatile
+        private var INSTANCE: CatalogStore? = null
+
+        fun getInstance(context: Context): CatalogStore {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: CatalogStore(CatalogDatabase.getInstance(context)).also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val dao = database.catalogDao()
+    private val writeLock = Mutex()
+
+    @Volatile
+    private var lastEviction = 0L
+
+    suspend fun books(limit: Int): List<Book> = dao.books(limit).map { it.toModel() }
+
+    fun observeBooks(limit: Int): Flow<List<Book>> {
+        return dao.observeBooks(limit).map { rows -> rows.map { it.toModel() } }
+    }
+
+    suspend fun book(id: String): Book? = dao.book(id)?.toModel()
+
+    suspend fun listings(limit: Int): List<Listing> = dao.listings(limit).map { it.toModel() }
+
+    suspend fun listingsForBook(bookId: String): List<Listing> {
+        return dao.listingsForBook(bookId).map { it.toModel() }
+    }
+
+    /**
+     * Write through books from the network, with their loaded authors
+     */
+    suspend fun saveBooks(books: List<Book>) {
+        if (books.isEmpty()) return
+        write {
+            val now = System.currentTimeMillis()
+            dao.upsertAuthors(books.mapNotNull { it.loadedAuthor()?.toEntity(now) }.distinctBy { it.id })
+            dao.upsertBooks(books.map { it.toEntity(now) })
+        }
+    }
+
+    /**
+     * Write through listings from the network, with their loaded books
+     */
+    suspend fun saveListings(listings: List<Listing>) {
+        if (listings.isEmpty()) return
+        write {
+            val now = System.currentTimeMillis()
+            saveListingBooks(listings, now)
+            dao.upsertListings(listings.map { it.toEntity(now) })
+        }
+    }
+
+    /**
+     * Write through the complete set of listings of [bookId]
+     */
+    suspend fun replaceListingsForBook(bookId: String, listings: List<Listing>) {
+        write {
+            val now = System.currentTimeMillis()
+            saveListingBooks(listings, now)
+            dao.replaceListingsForBook(bookId, listings.map { it.toEntity(now) })
+        }
+    }
+
+    private suspend fun saveListingBooks(listings: List<Listing>, now: Long) {
+        val books = listings.mapNotNull { it.loadedBook() }.distinctBy { it.id }
+        dao.upsertAuthors(books.mapNotNull { it.loadedAuthor()?.toEntity(now) }.distinctBy { it.id })
+        dao.upsertBooks(books.map { it.toEntity(now) })
+    }
+
+    private suspend fun write(block: suspend () -> Unit) {
+        writeLock.withLock {
+            database.withTransaction { block() }
+            evictIfDue()
+        }
+    }
+
+    private suspend fun evictIfDue() {
+        val now = System.currentTimeMillis()
+        if (now - lastEviction < EVICTION_INTERVAL_MS) return
+        lastEviction = now
+
+        try {
+            dao.evict(cutoff = now - MAX_AGE_MS, maxRows = MAX_ROWS)
+        } catch (e: Exception) {
+            Log.e(TAG, "Error evicting cached catalog rows", e)
+        }
+    }
+
+    private fun Book.loadedAuthor(): Author? = (author as? LoadedModelReference<Author>)?.value
+
+    private fun Listing.loadedBook(): Book? = (book as? LoadedModelReference<Book>)?.value
+
+    private fun Temporal.DateTime?.toMillis(): Long = this?.toDate()?.time ?: 0L
+
+    private fun Author.toEntity(now: Long) = AuthorEntity(
+        id = id,
+        name = name,
+        updatedAt = updatedAt.toMillis(),
+        cachedAt = now
+    )
+
+    private fun Book.toEntity(now: Long) = BookEntity(
+        id = id,
+        title = title,
+        isbn = isbn,
+        thumbnail = thumbnail,
+        authorId = loadedAuthor()?.id,
+        updatedAt = updatedAt.toMillis(),
+        cachedAt = now
+    )
+
+    private fun Listing.toEntity(now: Long) = ListingEntity(
+        id = id,
+        bookId = loadedBook()?.id,
+        sellerEmail = (user as? LoadedModelReference<User>)?.value?.email,
+        price = price,
+        status = status?.name,
+        photos = photos ?: emptyList(),
+        updatedAt = updatedAt.toMillis(),
+        cachedAt = now
+    )
+
+    private fun BookWithAuthor.toModel(): Book {
+        val builder = Book.builder()
+            .title(book.title)
+            .isbn(book.isbn)
+            .id(book.id)
+            .thumbnail(book.thumbnail)
+        author?.let { builder.author(Author.builder().name(it.name).id(it.id).build()) }
+        return builder.build()
+    }
+
+    private fun ListingWithBook.toModel(): Listing {
+        val builder = Listing.builder()
+            .price(listing.price)
+            .photos(listing.photos)
+            .id(listing.id)
+        book?.let { builder.book(it.toModel()) }
+        listing.sellerEmail?.let { builder.user(User.builder().email(it).build()) }
+        listing.status?.let { status ->
+            ListingStatus.values().firstOrNull { it.name == status }?.let { builder.status(it) }
+        }
+        return builder.build()
+    }
+}
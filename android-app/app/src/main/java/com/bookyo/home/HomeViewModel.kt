@@ -1,20 +1,28 @@
 package com.bookyo.home
 
 
-import androidx.lifecycle.ViewModel
+import android.app.Application
+import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import com.amplifyframework.api.graphql.model.ModelPagination
 import com.amplifyframework.api.graphql.model.ModelQuery
 import com.amplifyframework.datastore.generated.model.Book
 import com.amplifyframework.kotlin.core.Amplify
 import com.bookyo.analytics.BookyoAnalytics
+import com.bookyo.data.EntityCache
+import com.bookyo.data.local.CatalogStore
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.supervisorScope
 
-class HomeViewModel() : ViewModel() {
+class HomeViewModel(application: Application) : AndroidViewModel(application) {
+    companion object {
+        private const val BOOKS_LIMIT = 5
+    }
+
+    private val catalogStore = CatalogStore.getInstance(application)
 
     //Usar state flows
     private val _books = MutableStateFlow<List<Book>>(emptyList())
@@ -24,20 +32,30 @@ class HomeViewModel() : ViewModel() {
         loadBooks()
     }
 
+    /**
+     * Show the cached books right away, then replace them with fresh ones
+     */
     private fun loadBooks() {
         viewModelScope.launch {
-            val books = fetchBooks()
+            val cached = catalogStore.books(BOOKS_LIMIT)
+            if (cached.isNotEmpty() && _books.value.isEmpty()) {
+                _books.value = cached
+            }
+
+            val books = fetchBooks() ?: return@launch
             _books.value = books
+            EntityCache.getInstance().putAll(books)
+            catalogStore.saveBooks(books)
         }
     }
 
-    private suspend fun fetchBooks(): List<Book> = supervisorScope {
+    // Null when the request failed, so the cached books stay on screen
+    private suspend fun fetchBooks(): List<Book>? = supervisorScope {
         val start = System.currentTimeMillis()
         try {
-            val limit = 5
             val response = Amplify.API.query(
                 ModelQuery.list(Book::class.java,
-                    ModelPagination.limit(limit))
+                    ModelPagination.limit(BOOKS_LIMIT))
             )
             val duration1 = System.currentTimeMillis() - start
             BookyoAnalytics.trackApiCall("loadBooks", true, duration1,
@@ -47,7 +65,7 @@ class HomeViewModel() : ViewModel() {
             val duration2 = System.currentTimeMillis() - start
             BookyoAnalytics.trackApiCall("loadBooks", false, duration2,
                 e.javaClass.simpleName, e.message, null)
-            emptyList()
+            null
         }
     }
 }
\ No newline at end of file
@@ -403,7 +403,12 @@ fun CreateListingScreen(
 
                     // Create Listing Button
                     BookyoButton(
-                        text = if (uiState.isSubmitting) "Creating..." else "Create Listing",
+                        text = when {
+                            uiState.uploadProgress != null ->
+                                "Uploading ${(uiState.uploadProgress!! * 100).toInt()}%..."
+                            uiState.isSubmitting -> "Creating..."
+                            else -> "Create Listing"
+                        },
                         onClick = { viewModel.createListing() },
                         enabled = !uiState.isSubmitting,
                         isPrimary = true,
@@ -0,0 +1,110 @@
+package com.bookyo.listing
+
+import android.util.Log
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.ListingStatus
+import com.amplifyframework.datastore.generated.model.NotificationType
+import com.amplifyframework.datastore.generated.model.User
+import com.bookyo.data.CatalogApi
+import com.bookyo.outbox.OutboxMutation
+import kotlinx.coroutines.CancellationException
+
+/**
+ * Creates a listing for the signed-in user from already uploaded photos.
+ * Shared by the create listing screen and the outbox drain.
+ */
+class CreateListingUseCase(
+    private val api: CatalogApi,
+    private val queueNotification: suspend (OutboxMutation.CreateNotification) -> Unit
+) {
+    companion object {
+        private const val TAG = "CreateListingUseCase"
+    }
+
+    /**
+     * The book being listed and the seller, checked before any photo is
+     * uploaded for the listing
+     */
+    class Target(val book: Book, val user: User)
+
+    /**
+     * Look up the book and the signed-in seller, failing if either is missing
+     */
+    suspend fun resolveTarget(bookId: String): Target {
+        val userEmail = api.currentUserEmail()
+        Log.d(TAG, "Creating listing for book: $bookId, user: $userEmail")
+
+        val book = api.getBook(bookId) ?: throw Exception("Book not found with ID: $bookId")
+
+        // User model uses email as identifier
+        val user = api.getUser(userEmail) ?: throw Exception("User not found with email: $userEmail")
+
+        return Target(book, user)
+    }
+
+    /**
+     * @param listingId id for the new listing; the outbox passes its
+     * idempotency key so a replayed create does not duplicate the listing
+     */
+    suspend operator fun invoke(
+        bookId: String,
+        price: Double,
+        imageKeys: List<String>,
+        listingId: String? = null
+    ): Listing {
+        checkImages(imageKeys)
+        return invoke(resolveTarget(bookId), price, imageKeys, listingId)
+    }
+
+    /**
+     * Create the listing for a [target] already resolved with [resolveTarget]
+     */
+    suspend operator fun invoke(
+        target: Target,
+        price: Double,
+        imageKeys: List<String>,
+        listingId: String? = null
+    ): Listing {
+        checkImages(imageKeys)
+        val book = target.book
+        val bookId = book.id
+
+        val listing = Listing.builder()
+            .price(price)
+            .photos(imageKeys)
+            .book(book)
+            .user(target.user)
+            .status(ListingStatus.available)
+            .apply { listingId?.let { id(it) } }
+            .build()
+
+        Log.d(TAG, "Attempting to create listing with price: $price, photos: ${imageKeys.size}")
+        val created = api.createListing(listing)
+        Log.d(TAG, "Successfully created listing for book $bookId")
+
+        // Queued rather than sent, so a failure is retried without failing the listing
+        try {
+            queueNotification(
+                OutboxMutation.CreateNotification(
+                    title = "New Book Listing",
+                    body = "\"${book.title}\" is now available for $${String.format("%.2f", price)}!",
+                    recipient = "*", // Broadcast to all users
+                    type = NotificationType.NEW_BOOK.name // Reusing the existing type
+                )
+            )
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to queue listing notification", e)
+        }
+
+        return created
+    }
+
+    private fun checkImages(imageKeys: List<String>) {
+        if (imageKeys.isEmpty()) {
+            throw Exception("Failed to upload images or no images provided")
+        }
+    }
+}
@@ -5,31 +5,27 @@ import android.net.Uri
 import android.util.Log
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
-import com.amplifyframework.api.graphql.model.ModelMutation
 import com.amplifyframework.api.graphql.model.ModelQuery
 import com.amplifyframework.core.model.LoadedModelReference
 import com.amplifyframework.datastore.generated.model.Author
 import com.amplifyframework.datastore.generated.model.Book
-import com.amplifyframework.datastore.generated.model.Listing
-import com.amplifyframework.datastore.generated.model.ListingStatus
-import com.amplifyframework.datastore.generated.model.Notification
-import com.amplifyframework.datastore.generated.model.NotificationType
-import com.amplifyframework.datastore.generated.model.User
 import com.amplifyframework.kotlin.core.Amplify
-import com.amplifyframework.storage.StoragePath
 import com.bookyo.analytics.BookyoAnalytics
+import com.bookyo.data.AmplifyCatalogApi
+import com.bookyo.data.EntityCache
+import com.bookyo.data.local.CatalogStore
+import com.bookyo.media.ImageUploader
+import com.bookyo.outbox.OutboxStore
+import com.bookyo.outbox.OutboxWorker
 import com.bookyo.utils.ConnectivityChecker
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.ExperimentalCoroutinesApi
-import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.NonCancellable
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import java.io.File
-import java.util.UUID
 
 data class CreateListingUIState(
     val isLoading: Boolean = true,
@@ -47,12 +43,15 @@ data class CreateListingUIState(
     val errorMessage: String? = null,
     val successMessage: String? = null,
     val listingCreated: Boolean = false,
-    val isConnected: Boolean = true
+    val isConnected: Boolean = true,
+    val uploadProgress: Float? = null
 )
 
 class CreateListingViewModel(application: Application) : AndroidViewModel(application) {
     companion object {
         private const val TAG = "CreateListingViewModel"
+
+        private const val FRESH_FOR_MS = 60_000L
     }
 
     private val _uiState = MutableStateFlow(CreateListingUIState())
@@ -64,6 +63,16 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
     // Repository for pending listings
     private val pendingListingRepository = PendingListingRepository(application)
 
+    private val catalogStore = CatalogStore.getInstance(application)
+
+    // Resizes, strips EXIF and uploads full + thumbnail variants
+    private val imageUploader = ImageUploader(application)
+
+    private val createListingUseCase = CreateListingUseCase(AmplifyCatalogApi()) { notification ->
+        OutboxStore.getInstance(application).enqueue(notification)
+        OutboxWorker.enqueueWork(application)
+    }
+
     init {
         // Observe connectivity changes
         viewModelScope.launch {
@@ -97,12 +106,13 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
         val pendingCount = pendingListingRepository.getPendingListings().size
         if (pendingCount > 0) {
             Log.d(TAG, "Connectivity restored with $pendingCount pending listings")
-            PendingListingWorker.enqueueWork(getApplication())
+            OutboxWorker.enqueueWork(getApplication())
         }
     }
 
     /**
-     * Initialize the ViewModel with a book ID
+     * Initialize the ViewModel with a book ID. A cached copy of the book is
+     * shown right away while the fresh one loads.
      */
     fun initialize(bookId: String) {
         viewModelScope.launch {
@@ -111,6 +121,17 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
                 bookId = bookId
             )}
 
+            // Just loaded by another screen: no need to ask the server again
+            val fresh = EntityCache.getInstance().getFresh(Book::class.java, bookId, FRESH_FOR_MS)
+            if (fresh != null) {
+                showBook(fresh)
+                trackScreenView(bookId, fresh.title)
+                return@launch
+            }
+
+            val cached = catalogStore.book(bookId)
+            if (cached != null) showBook(cached)
+
             try {
                 // Load book details
                 val response = Amplify.API.query(
@@ -122,39 +143,48 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
                 }
 
                 val book = response.data
+                showBook(book)
+                EntityCache.getInstance().put(book)
+                catalogStore.saveBooks(listOf(book))
 
-                // Extract author info
-                val author = (book.author as? LoadedModelReference<Author>)?.value
-                val authorName = author?.name ?: "Unknown Author"
-
-                // Update UI state
-                _uiState.update { it.copy(
-                    isLoading = false,
-                    bookTitle = book.title,
-                    bookIsbn = book.isbn,
-                    bookThumbnail = book.thumbnail,
-                    authorName = authorName
-                )}
-
-                // Track screen view
-                BookyoAnalytics.recordAppEvent(
-                    eventName = "screen_view_create_listing",
-                    properties = mapOf(
-                        "book_id" to bookId,
-                        "book_title" to book.title
-                    )
-                )
+                trackScreenView(bookId, book.title)
 
             } catch (e: Exception) {
                 Log.e(TAG, "Error loading book", e)
-                _uiState.update { it.copy(
-                    isLoading = false,
-                    errorMessage = "Failed to load book details: ${e.localizedMessage}"
-                )}
+                // Offline with a cached copy: keep going with it
+                if (cached == null) {
+                    _uiState.update { it.copy(
+                        isLoading = false,
+                        errorMessage = "Failed to load book details: ${e.localizedMessage}"
+                    )}
+                }
             }
         }
     }
 
+    private fun trackScreenView(bookId: String, bookTitle: String) {
+        BookyoAnalytics.recordAppEvent(
+            eventName = "screen_view_create_listing",
+            properties = mapOf(
+                "book_id" to bookId,
+                "book_title" to bookTitle
+            )
+        )
+    }
+
+    private fun showBook(book: Book) {
+        // Extract author info
+        val author = (book.author as? LoadedModelReference<Author>)?.value
+
+        _uiState.update { it.copy(
+            isLoading = false,
+            bookTitle = book.title,
+            bookIsbn = book.isbn,
+            bookThumbnail = book.thumbnail,
+            authorName = author?.name ?: it.authorName.ifEmpty { "Unknown Author" }
+        )}
+    }
+
     /**
      * Update the price value with validation
      */
@@ -291,10 +321,8 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
             )
 
             // Enqueue work to process when internet is available
-            PendingListingWorker.enqueueSpecificWork(
-                getApplication(),
-                pendingListingData.id
-            )
+            OutboxWorker.enqueueWork(getApplication())
+            Log.d(TAG, "Queued pending listing ${pendingListingData.id}")
 
             // Update UI state
             _uiState.update { it.copy(
@@ -322,7 +350,6 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
 
     /**
      * Synchronously create a listing
-     * This method can be called from the PendingListingWorker
      */
     suspend fun createListingSync(): Boolean {
         return withContext(Dispatchers.IO) {
@@ -340,64 +367,20 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
             val startTime = System.currentTimeMillis()
 
             try {
-                // First get the current user
-                val authUserEmail = Amplify.Auth.fetchUserAttributes().first()
+                // Check the book and seller before spending time on uploads
+                val target = createListingUseCase.resolveTarget(bookId)
 
-                val userEmail = authUserEmail.value
-
-                Log.d(TAG, "Creating listing for book: $bookId, user: $userEmail")
-
-                // Get the Book entity
-                val bookResponse = Amplify.API.query(ModelQuery[Book::class.java, bookId])
-                if (bookResponse.hasErrors()) {
-                    throw Exception("Failed to get book: ${bookResponse.errors.first().message}")
-                }
-                val book = bookResponse.data
-                if (book == null) {
-                    throw Exception("Book not found with ID: $bookId")
-                }
-
-                // Get the User entity by email (User model uses email as identifier)
-                val userResponse = Amplify.API.query(ModelQuery[User::class.java, userEmail])
-                if (userResponse.hasErrors()) {
-                    throw Exception("Failed to get user: ${userResponse.errors.first().message}")
-                }
-                val user = userResponse.data
-                if (user == null) {
-                    throw Exception("User not found with email: $userEmail")
-                }
-
-                // Upload images first
                 val imageKeys = uploadListingImages(images)
-                if (imageKeys.isEmpty()) {
-                    throw Exception("Failed to upload images or no images provided")
-                }
-
                 Log.d(TAG, "Successfully uploaded ${imageKeys.size} images")
 
-                // Create the listing using the correct builder pattern
-                val listing = Listing.builder()
-                    .price(price)
-                    .photos(imageKeys)
-                    .book(book)
-                    .user(user)
-                    .status(ListingStatus.available)
-                    .build()
-
-                Log.d(TAG, "Attempting to create listing with price: $price, photos: ${imageKeys.size}")
-
-                val result = Amplify.API.mutate(ModelMutation.create(listing))
-
-                if (result.hasErrors()) {
-                    val errorMessage = result.errors.joinToString(", ") { it.message }
-                    throw Exception("GraphQL errors: $errorMessage")
+                try {
+                    createListingUseCase(target, price = price, imageKeys = imageKeys)
+                } catch (e: Exception) {
+                    // The photos belong to no listing now
+                    withContext(NonCancellable) { imageUploader.removeUploaded(imageKeys) }
+                    throw e
                 }
 
-                Log.d(TAG, "Successfully created listing for book $bookId")
-
-                // Create notification about the new listing
-                createListingNotification(bookId, price)
-
                 // Track API call success
                 BookyoAnalytics.trackApiCall(
                     endpoint = "createListing",
@@ -424,80 +407,21 @@ class CreateListingViewModel(application: Application) : AndroidViewModel(applic
     }
 
     /**
-     * Upload listing images to S3 storage
+     * Upload listing images to S3 storage, several at a time, reporting
+     * combined progress to the UI state
      */
-    @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
     private suspend fun uploadListingImages(images: List<Uri>): List<String> {
-        val imageKeys = mutableListOf<String>()
-
-        for (uri in images) {
-            try {
-                val contentResolver = getApplication<Application>().contentResolver
-                val key = "listing-${UUID.randomUUID()}.jpg"
-
-                val tempFile = File.createTempFile("upload", ".jpg").apply {
-                    deleteOnExit()
-                }
-
-                contentResolver.openInputStream(uri)?.use { input ->
-                    tempFile.outputStream().use { output ->
-                        input.copyTo(output)
-                    }
-                } ?: throw Exception("Failed to read image content")
-
-                val upload = Amplify.Storage.uploadFile(
-                    StoragePath.fromString("images/$key"), tempFile
-                )
-
-                upload.result()
-                tempFile.delete()
-
-                imageKeys.add(key)
-                Log.d(TAG, "Successfully uploaded listing image: $key")
-
-            } catch (e: Exception) {
-                Log.e(TAG, "Failed to upload image", e)
-                throw e
-            }
-        }
-
-        return imageKeys
-    }
-
-    /**
-     * Create a notification for the new listing
-     */
-    private suspend fun createListingNotification(bookId: String, price: Double) {
-        try {
-            // Get book details for the notification
-            val bookResponse = Amplify.API.query(ModelQuery[Book::class.java, bookId])
-
-            if (bookResponse.hasErrors()) {
-                Log.e(TAG, "Error fetching book for notification: ${bookResponse.errors.first().message}")
-                return
-            }
-
-            val book = bookResponse.data
-            val title = book.title
-
-            // Create a broadcast notification about the new listing
-            val notification = Notification.builder()
-                .title("New Book Listing")
-                .body("\"$title\" is now available for $${String.format("%.2f", price)}!")
-                .recipient("*") // Broadcast to all users
-                .read(false)
-                .type(NotificationType.NEW_BOOK) // Reusing the existing type
-                .build()
-
-            val createNotificationResult = Amplify.API.mutate(ModelMutation.create(notification))
-            if (createNotificationResult.hasErrors()) {
-                Log.e(TAG, "Error creating notification: ${createNotificationResult.errors.first().message}")
-            } else {
-                Log.d(TAG, "Created notification about new listing")
+        return try {
+            imageUploader.uploadAll(images, keyPrefix = "listing-") { progress ->
+                _uiState.update { it.copy(uploadProgress = progress.fraction) }
+            }.also { keys ->
+                Log.d(TAG, "Successfully uploaded listing images: $keys")
             }
         } catch (e: Exception) {
-            // Just log the error - don't fail the listing creation
-            Log.e(TAG, "Failed to create listing notification", e)
+            Log.e(TAG, "Failed to upload image", e)
+            throw e
+        } finally {
+            _uiState.update { it.copy(uploadProgress = null) }
         }
     }
 
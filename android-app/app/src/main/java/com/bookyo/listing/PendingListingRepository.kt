@@ -3,26 +3,14 @@ package com.bookyo.listing
 import android.content.Context
 import android.net.Uri
 import android.util.Log
-import androidx.datastore.core.DataStore
-import androidx.datastore.preferences.core.Preferences
-import androidx.datastore.preferences.core.edit
-import androidx.datastore.preferences.core.stringPreferencesKey
-import androidx.datastore.preferences.preferencesDataStore
-import kotlinx.coroutines.flow.first
-import kotlinx.coroutines.flow.map
+import com.bookyo.outbox.OutboxItem
+import com.bookyo.outbox.OutboxMutation
+import com.bookyo.outbox.OutboxState
+import com.bookyo.outbox.OutboxStore
 import kotlinx.serialization.Serializable
-import kotlinx.serialization.encodeToString
-import kotlinx.serialization.json.Json
 import java.io.File
-import java.io.FileOutputStream
-import java.io.IOException
 import java.util.UUID
 
-// Extension function to create a DataStore in the Context
-private val Context.pendingListingDataStore: DataStore<Preferences> by preferencesDataStore(
-    name = "pending_listing_requests"
-)
-
 /**
  * Serializable data class to hold pending listing data
  */
@@ -32,17 +20,18 @@ data class PendingListingData(
     val bookId: String,
     val price: Double,
     val imagePaths: List<String> = emptyList(),
-    val timestamp: Long = System.currentTimeMillis()
+    val timestamp: Long = System.currentTimeMillis(),
+    val state: OutboxState = OutboxState.QUEUED
 )
 
 /**
- * Repository for handling pending listing requests when offline
+ * Repository for handling pending listing requests when offline.
+ * Requests are stored as [OutboxMutation.CreateListing] items of the outbox.
  */
-class PendingListingRepository(private val context: Context) {
+class PendingListingRepository(context: Context) {
     private val TAG = "PendingListingRepo"
 
-    // Keys for DataStore
-    private val PENDING_LISTING_KEY = stringPreferencesKey("pending_listing_requests")
+    private val outbox = OutboxStore.getInstance(context)
 
     /**
      * Save a pending listing request
@@ -57,42 +46,24 @@ class PendingListingRepository(private val context: Context) {
             saveImageLocally(uri)
         }
 
-        // Create the pending listing data
-        val pendingListing = PendingListingData(
-            bookId = bookId,
-            price = price,
-            imagePaths = localImagePaths
+        val item = outbox.enqueue(
+            OutboxMutation.CreateListing(
+                bookId = bookId,
+                price = price,
+                imagePaths = localImagePaths
+            )
         )
 
-        // Retrieve current pending list
-        val currentPendingList = getPendingListings().toMutableList()
-
-        // Add the new request
-        currentPendingList.add(pendingListing)
-
-        // Save the updated list
-        context.pendingListingDataStore.edit { preferences ->
-            preferences[PENDING_LISTING_KEY] = Json.encodeToString(currentPendingList)
-        }
-
         Log.d(TAG, "Saved pending listing request for book: $bookId")
-        return pendingListing
+        return item.toPendingListing()!!
     }
 
     /**
-     * Get all pending listing requests
+     * Get all pending listing requests, newest first
      */
     suspend fun getPendingListings(): List<PendingListingData> {
         return try {
-            context.pendingListingDataStore.data.map { preferences ->
-                val pendingListingJson = preferences[PENDING_LISTING_KEY] ?: return@map emptyList()
-                Json.decodeFromString<List<PendingListingData>>(pendingListingJson)
-            }.map { it.sortedByDescending { listing -> listing.timestamp } }
-                .map { it.filter { listing ->
-                    // Verify that all images still exist
-                    listing.imagePaths.all { imagePath -> File(imagePath).exists() }
-                }}
-                .first()
+            outbox.items().mapNotNull { it.toPendingListing() }.asReversed()
         } catch (e: Exception) {
             Log.e(TAG, "Error getting pending listings", e)
             emptyList()
@@ -103,54 +74,25 @@ class PendingListingRepository(private val context: Context) {
      * Get a specific pending listing by ID
      */
     suspend fun getPendingListingById(id: String): PendingListingData? {
-        return getPendingListings().find { it.id == id }
+        return outbox.get(id)?.toPendingListing()
     }
 
     /**
-     * Remove a pending listing request after it's successfully processed
+     * Remove a pending listing request, deleting its images
      */
     suspend fun removePendingListing(id: String) {
-        val currentList = getPendingListings().toMutableList()
-        val itemToRemove = currentList.find { it.id == id }
-
-        if (itemToRemove != null) {
-            // Delete the image files if they exist
-            itemToRemove.imagePaths.forEach { File(it).delete() }
-
-            // Remove from the list
-            currentList.remove(itemToRemove)
-
-            // Save the updated list
-            context.pendingListingDataStore.edit { preferences ->
-                preferences[PENDING_LISTING_KEY] = Json.encodeToString(currentList)
-            }
-
-            Log.d(TAG, "Removed pending listing with ID: $id")
-        }
+        outbox.remove(id)
+        Log.d(TAG, "Removed pending listing with ID: $id")
     }
 
     /**
-     * Save an image locally for later upload
+     * Save an image locally for later upload, already transcoded for upload
      */
-    private fun saveImageLocally(uri: Uri): String? {
+    private suspend fun saveImageLocally(uri: Uri): String? {
         return try {
-            // Create a directory for cached images
-            val cacheDir = File(context.cacheDir, "pending_listing_images").apply {
-                if (!exists()) mkdirs()
+            outbox.saveImage(uri).also { path ->
+                Log.d(TAG, "Saved image locally at: $path")
             }
-
-            // Create a file for the image
-            val imageFile = File(cacheDir, "img_${System.currentTimeMillis()}.jpg")
-
-            // Copy the content from the URI to the file
-            context.contentResolver.openInputStream(uri)?.use { input ->
-                FileOutputStream(imageFile).use { output ->
-                    input.copyTo(output)
-                }
-            } ?: throw IOException("Could not open input stream")
-
-            Log.d(TAG, "Saved image locally at: ${imageFile.absolutePath}")
-            imageFile.absolutePath
         } catch (e: Exception) {
             Log.e(TAG, "Error saving image locally", e)
             null
@@ -169,4 +111,16 @@ class PendingListingRepository(private val context: Context) {
             null
         }
     }
-}
\ No newline at end of file
+
+    private fun OutboxItem.toPendingListing(): PendingListingData? {
+        val listing = mutation as? OutboxMutation.CreateListing ?: return null
+        return PendingListingData(
+            id = id,
+            bookId = listing.bookId,
+            price = listing.price,
+            imagePaths = listing.imagePaths,
+            timestamp = createdAt,
+            state = state
+        )
+    }
+}
@@ -0,0 +1,108 @@
+package com.bookyo.media
+
+import android.util.Log
+import com.amplifyframework.core.Amplify
+import com.amplifyframework.storage.StoragePath
+import com.amplifyframework.storage.TransferState
+import com.amplifyframework.storage.operation.StorageUploadFileOperation
+import com.amplifyframework.storage.options.StorageUploadFileOptions
+import kotlinx.coroutines.suspendCancellableCoroutine
+import java.io.File
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * [UploadStorage] backed by the Amplify S3 plugin.
+ *
+ * The plugin persists its transfers (including multipart part state) in its
+ * own database, keyed by transfer id. We record that id in the checkpoint
+ * and, on the next run, look the transfer up with getTransfer and resume it,
+ * unless it already finished, failed or was cancelled.
+ * When the coroutine is cancelled (e.g. WorkManager stops the job) the
+ * transfer is paused rather than cancelled so it stays resumable.
+ */
+class AmplifyUploadStorage : UploadStorage {
+    companion object {
+        private const val TAG = "AmplifyUploadStorage"
+    }
+
+    override suspend fun upload(
+        path: String,
+        file: File,
+        checkpoint: UploadCheckpoint?,
+        onCheckpoint: (UploadCheckpoint) -> Unit
+    ) {
+        val existing = checkpoint?.transferId?.let { findUploadOperation(it) }
+        when (existing?.transferState) {
+            null -> startUpload(path, file, onCheckpoint)
+            // Finished after the last checkpoint was saved; resume() would never call back
+            TransferState.COMPLETED -> {
+                Log.d(TAG, "Upload of $path already completed")
+                onCheckpoint(UploadCheckpoint(path, existing.transferId, file.length(), file.length()))
+            }
+            TransferState.FAILED, TransferState.CANCELED -> {
+                Log.d(TAG, "Transfer for $path ended as ${existing.transferState}, starting over")
+                startUpload(path, file, onCheckpoint)
+            }
+            else -> {
+                Log.d(TAG, "Resuming upload of $path from ${checkpoint?.bytesTransferred} bytes")
+                resumeUpload(existing, path, onCheckpoint)
+            }
+        }
+    }
+
+    private suspend fun findUploadOperation(transferId: String): StorageUploadFileOperation<*>? =
+        suspendCancellableCoroutine { continuation ->
+            Amplify.Storage.getTransfer(
+                transferId,
+                { operation ->
+                    if (continuation.isActive) continuation.resume(operation as? StorageUploadFileOperation<*>)
+                },
+                { error ->
+                    Log.d(TAG, "Transfer $transferId not found, starting over", error)
+                    if (continuation.isActive) continuation.resume(null)
+                }
+            )
+        }
+
+    private suspend fun startUpload(
+        path: String,
+        file: File,
+        onCheckpoint: (UploadCheckpoint) -> Unit
+    ) = suspendCancellableCoroutine<Unit> { continuation ->
+        var transferId: String? = null
+
+        val operation = Amplify.Storage.uploadFile(
+            StoragePath.fromString(path),
+            file,
+            StorageUploadFileOptions.defaultInstance(),
+            { progress ->
+                onCheckpoint(UploadCheckpoint(path, transferId, progress.currentBytes, progress.totalBytes))
+            },
+            { if (continuation.isActive) continuation.resume(Unit) },
+            { error -> if (continuation.isActive) continuation.resumeWithException(error) }
+        )
+
+        transferId = operation.transferId
+        onCheckpoint(UploadCheckpoint(path, transferId, 0, file.length()))
+
+        continuation.invokeOnCancellation { operation.pause() }
+    }
+
+    private suspend fun resumeUpload(
+        operation: StorageUploadFileOperation<*>,
+        path: String,
+        onCheckpoint: (UploadCheckpoint) -> Unit
+    ) = suspendCancellableCoroutine<Unit> { continuation ->
+        val transferId = operation.transferId
+
+        operation.setOnProgress { progress ->
+            onCheckpoint(UploadCheckpoint(path, transferId, progress.currentBytes, progress.totalBytes))
+        }
+        operation.setOnSuccess { if (continuation.isActive) continuation.resume(Unit) }
+        operation.setOnError { error -> if (continuation.isActive) continuation.resumeWithException(error) }
+        operation.resume()
+
+        continuation.invokeOnCancellation { operation.pause() }
+    }
+}
@@ -0,0 +1,118 @@
+package com.bookyo.media
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Matrix
+import android.media.ExifInterface
+import android.net.Uri
+import com.bookyo.services.DecodeSizing
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Result of transcoding one photo: the full-size upload and its feed thumbnail
+ */
+class TranscodedImage(
+    val full: ByteArray,
+    val thumbnail: ByteArray,
+    val format: ImageFormat
+)
+
+/**
+ * Resizes, orients and re-encodes camera/gallery photos before upload.
+ *
+ * Re-encoding from a decoded bitmap writes no metadata, so EXIF (location,
+ * device, timestamps) is stripped; the orientation tag is applied to the
+ * pixels first so the image still displays upright.
+ */
+class ImageTranscoder(
+    private val context: Context,
+    private val options: TranscodeOptions = TranscodeOptions()
+) {
+    val format: ImageFormat get() = options.format
+
+    fun transcode(uri: Uri): TranscodedImage {
+        val resolver = context.contentResolver
+        return transcode { resolver.openInputStream(uri) ?: throw IOException("Could not open $uri") }
+    }
+
+    /**
+     * Transcode from a stream source. [openStream] is called more than once
+     * (bounds, orientation, pixels), so it must return a fresh stream each time.
+     */
+    fun transcode(openStream: () -> InputStream): TranscodedImage {
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        openStream().use { BitmapFactory.decodeStream(it, null, bounds) }
+
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw IOException("Unsupported or corrupt image")
+        }
+
+        val rotation = openStream().use { readRotationDegrees(it) }
+
+        // Decode no larger than needed, then scale down to the exact max edge
+        val decodeOptions = BitmapFactory.Options().apply {
+            inSampleSize = DecodeSizing.calculateInSampleSize(
+                bounds.outWidth, bounds.outHeight, options.maxEdgePx, options.maxEdgePx
+            )
+        }
+        val decoded = openStream().use { BitmapFactory.decodeStream(it, null, decodeOptions) }
+            ?: throw IOException("Failed to decode image")
+
+        val full = scaleAndRotate(decoded, options.maxEdgePx, rotation, recycleSource = true)
+        val thumbnail = scaleAndRotate(full, options.thumbnailEdgePx, 0, recycleSource = false)
+
+        try {
+            return TranscodedImage(
+                full = encode(full, options.quality),
+                thumbnail = encode(thumbnail, options.thumbnailQuality),
+                format = options.format
+            )
+        } finally {
+            if (thumbnail !== full) thumbnail.recycle()
+            full.recycle()
+            if (!decoded.isRecycled) decoded.recycle()
+        }
+    }
+
+    private fun readRotationDegrees(input: InputStream): Int {
+        return try {
+            when (ExifInterface(input).getAttributeInt(
+                ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL
+            )) {
+                ExifInterface.ORIENTATION_ROTATE_90 -> 90
+                ExifInterface.ORIENTATION_ROTATE_180 -> 180
+                ExifInterface.ORIENTATION_ROTATE_270 -> 270
+                else -> 0
+            }
+        } catch (e: Exception) {
+            // Not every format carries EXIF; treat as upright
+            0
+        }
+    }
+
+    private fun scaleAndRotate(source: Bitmap, maxEdge: Int, rotation: Int, recycleSource: Boolean): Bitmap {
+        val longestEdge = maxOf(source.width, source.height)
+        val scale = if (longestEdge > maxEdge) maxEdge.toFloat() / longestEdge else 1f
+
+        if (scale == 1f && rotation == 0) return source
+
+        val matrix = Matrix().apply {
+            postScale(scale, scale)
+            if (rotation != 0) postRotate(rotation.toFloat())
+        }
+        val result = Bitmap.createBitmap(source, 0, 0, source.width, source.height, matrix, true)
+        if (recycleSource && result !== source) source.recycle()
+        return result
+    }
+
+    private fun encode(bitmap: Bitmap, quality: Int): ByteArray {
+        val output = ByteArrayOutputStream()
+        if (!bitmap.compress(options.format.compressFormat(), quality, output)) {
+            throw IOException("Failed to encode image as ${options.format}")
+        }
+        return output.toByteArray()
+    }
+}
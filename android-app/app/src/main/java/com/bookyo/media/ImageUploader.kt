@@ -0,0 +1,186 @@
+package com.bookyo.media
+
+import android.content.Context
+import android.net.Uri
+import android.util.Log
+import com.amplifyframework.kotlin.core.Amplify
+import com.amplifyframework.storage.StoragePath
+import com.amplifyframework.storage.options.StorageUploadInputStreamOptions
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import kotlinx.coroutines.withContext
+import java.io.ByteArrayInputStream
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Combined byte progress across all images of one upload batch
+ */
+data class UploadProgress(
+    val bytesSent: Long,
+    val totalBytes: Long
+) {
+    val fraction: Float
+        get() = if (totalBytes <= 0) 0f else (bytesSent.toFloat() / totalBytes).coerceIn(0f, 1f)
+}
+
+/**
+ * Upload pipeline shared by the publish and listing flows: transcode the
+ * photo, then upload the full image to images/<key> and a small variant
+ * to images/thumb/<key>.
+ */
+class ImageUploader(
+    context: Context,
+    private val transcoder: ImageTranscoder = ImageTranscoder(context)
+) {
+    companion object {
+        private const val TAG = "ImageUploader"
+        const val DEFAULT_MAX_CONCURRENCY = 3
+        private const val MAX_ATTEMPTS = 2
+
+        fun fullPath(key: String): String = "images/$key"
+
+        fun thumbnailPath(key: String): String = "images/thumb/$key"
+    }
+
+    /**
+     * Transcode and upload one photo. Returns the generated key, which is what
+     * gets stored on the Book/Listing.
+     */
+    suspend fun upload(uri: Uri, keyPrefix: String = ""): String {
+        return uploadAll(listOf(uri), keyPrefix).single()
+    }
+
+    /**
+     * Transcode and upload several photos, at most [maxConcurrency] at a time.
+     * Keys are returned in the same order as [uris].
+     *
+     * If one image fails after retrying, the remaining uploads are cancelled,
+     * objects already uploaded for this batch are removed, and the error is rethrown.
+     */
+    suspend fun uploadAll(
+        uris: List<Uri>,
+        keyPrefix: String = "",
+        maxConcurrency: Int = DEFAULT_MAX_CONCURRENCY,
+        onProgress: (UploadProgress) -> Unit = {}
+    ): List<String> {
+        if (uris.isEmpty()) return emptyList()
+
+        val semaphore = Semaphore(maxConcurrency.coerceAtLeast(1))
+
+        // Transcode first so the total byte count is known before any bytes are sent
+        val images = coroutineScope {
+            uris.map { uri ->
+                // Reading the picked photo is blocking ContentResolver and file I/O
+                async(Dispatchers.IO) {
+                    semaphore.withPermit { transcoder.transcode(uri) }
+                }
+            }.awaitAll()
+        }
+
+        val keys = images.map { "$keyPrefix${UUID.randomUUID()}.${it.format.extension}" }
+        val totalBytes = images.sumOf { (it.full.size + it.thumbnail.size).toLong() }
+        val sentPerImage = AtomicLongArray(images.size)
+        val completed = mutableListOf<String>()
+
+        fun reportProgress() {
+            var sent = 0L
+            for (i in 0 until sentPerImage.length()) sent += sentPerImage.get(i)
+            onProgress(UploadProgress(sent, totalBytes))
+        }
+
+        reportProgress()
+
+        try {
+            coroutineScope {
+                images.forEachIndexed { index, image ->
+                    launch {
+                        semaphore.withPermit {
+                            val key = keys[index]
+                            uploadBytes(fullPath(key), image.full, image.format) { sent ->
+                                sentPerImage.set(index, sent)
+                                reportProgress()
+                            }
+                            uploadBytes(thumbnailPath(key), image.thumbnail, image.format) { sent ->
+                                sentPerImage.set(index, image.full.size + sent)
+                                reportProgress()
+                            }
+                            synchronized(completed) { completed.add(key) }
+                            Log.d(TAG, "Uploaded $key (${image.full.size} bytes, thumbnail ${image.thumbnail.size} bytes)")
+                        }
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            withContext(NonCancellable) { removeUploaded(synchronized(completed) { completed.toList() }) }
+            throw e
+        }
+
+        return keys
+    }
+
+    @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
+    private suspend fun uploadBytes(
+        path: String,
+        bytes: ByteArray,
+        format: ImageFormat,
+        onBytesSent: (Long) -> Unit
+    ) {
+        val options = StorageUploadInputStreamOptions.builder()
+            .contentType(format.mimeType)
+            .build()
+
+        var attempt = 1
+        while (true) {
+            val upload = Amplify.Storage.uploadInputStream(
+                StoragePath.fromString(path),
+                ByteArrayInputStream(bytes),
+                options
+            )
+            try {
+                coroutineScope {
+                    val progressJob = launch {
+                        upload.progress().collect { onBytesSent(it.currentBytes) }
+                    }
+                    upload.result()
+                    progressJob.cancel()
+                }
+                onBytesSent(bytes.size.toLong())
+                return
+            } catch (e: CancellationException) {
+                upload.cancel()
+                throw e
+            } catch (e: Exception) {
+                if (attempt >= MAX_ATTEMPTS) throw e
+                Log.w(TAG, "Upload of $path failed (attempt $attempt), retrying", e)
+                onBytesSent(0)
+                attempt++
+            }
+        }
+    }
+
+    /**
+     * Best-effort cleanup of uploaded images (full and thumbnail) that no
+     * record will reference, e.g. from a batch that did not complete
+     */
+    suspend fun removeUploaded(keys: List<String>) {
+        for (key in keys) {
+            for (path in listOf(fullPath(key), thumbnailPath(key))) {
+                try {
+                    Amplify.Storage.remove(StoragePath.fromString(path))
+                } catch (e: Exception) {
+                    Log.w(TAG, "Failed to remove orphaned upload $path", e)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.bookyo.media
+
+import android.content.Context
+import android.net.Uri
+import java.io.File
+
+/**
+ * Writes photos for offline queues already transcoded, so the queued file
+ * is exactly what gets uploaded later. That keeps queued storage small and
+ * lets an interrupted upload be resumed against an unchanged file.
+ */
+class PendingImageWriter(
+    context: Context,
+    private val transcoder: ImageTranscoder = ImageTranscoder(context)
+) {
+    companion object {
+        /**
+         * The thumbnail variant stored next to a pending image file
+         */
+        fun thumbnailFileFor(file: File): File {
+            return File(file.parentFile, "${file.nameWithoutExtension}.thumb.${file.extension}")
+        }
+    }
+
+    /**
+     * Transcode [uri] into [directory] and return the full-size file. The
+     * thumbnail is written alongside it (see [thumbnailFileFor]).
+     */
+    fun write(uri: Uri, directory: File): File {
+        directory.mkdirs()
+        val image = transcoder.transcode(uri)
+
+        val file = File(directory, "img_${System.nanoTime()}.${image.format.extension}")
+        file.writeBytes(image.full)
+        thumbnailFileFor(file).writeBytes(image.thumbnail)
+        return file
+    }
+
+    /**
+     * Delete a pending image and its thumbnail
+     */
+    fun delete(path: String) {
+        val file = File(path)
+        thumbnailFileFor(file).delete()
+        file.delete()
+    }
+}
@@ -0,0 +1,124 @@
+package com.bookyo.media
+
+import android.util.Log
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import java.io.File
+import java.util.UUID
+
+/**
+ * Uploads the images of a queued (offline) record so that a retried job
+ * continues where the previous one stopped:
+ * - each local file gets its S3 key once, and the key is persisted;
+ * - objects already uploaded are skipped;
+ * - partially uploaded objects are resumed from their transfer checkpoint.
+ */
+class ResumableUploader(
+    private val storage: UploadStorage,
+    private val checkpoints: UploadCheckpointStore
+) {
+    companion object {
+        private const val TAG = "ResumableUploader"
+
+        // Persist progress at most every this many bytes, plus on id change and completion
+        private const val CHECKPOINT_INTERVAL_BYTES = 256L * 1024
+    }
+
+    /**
+     * Upload every file in [images] (and its thumbnail sibling, when present)
+     * for record [recordId], at most [maxConcurrency] images at a time.
+     * Returns the S3 keys in the same order as [images].
+     */
+    suspend fun uploadAll(
+        recordId: String,
+        images: List<File>,
+        keyPrefix: String = "",
+        maxConcurrency: Int = ImageUploader.DEFAULT_MAX_CONCURRENCY
+    ): List<String> {
+        var state = checkpoints.load(recordId)
+
+        // Assign keys up front so retries upload to the same objects
+        val missingKeys = images.filter { it.absolutePath !in state.keys }
+        if (missingKeys.isNotEmpty()) {
+            state = state.copy(keys = state.keys + missingKeys.associate { file ->
+                file.absolutePath to "$keyPrefix${UUID.randomUUID()}.${file.extension}"
+            })
+            checkpoints.save(recordId, state)
+        }
+
+        val keys = images.map { state.keys.getValue(it.absolutePath) }
+        val progress = RecordProgress(recordId, state)
+        val semaphore = Semaphore(maxConcurrency.coerceAtLeast(1))
+
+        coroutineScope {
+            images.forEachIndexed { index, file ->
+                launch {
+                    semaphore.withPermit {
+                        val key = keys[index]
+                        uploadOne(progress, ImageUploader.fullPath(key), file)
+
+                        val thumbnail = PendingImageWriter.thumbnailFileFor(file)
+                        if (thumbnail.exists()) {
+                            uploadOne(progress, ImageUploader.thumbnailPath(key), thumbnail)
+                        }
+                    }
+                }
+            }
+        }
+
+        return keys
+    }
+
+    /**
+     * Forget the upload state of a record, once it has been committed or deleted
+     */
+    fun clear(recordId: String) {
+        checkpoints.delete(recordId)
+    }
+
+    /**
+     * Upload state of one record, shared by its concurrent uploads so none
+     * of them saves over another's progress
+     */
+    private inner class RecordProgress(private val recordId: String, private var state: RecordUploadState) {
+        @Synchronized
+        fun checkpoint(path: String): UploadCheckpoint? = state.checkpoints[path]
+
+        @Synchronized
+        fun put(path: String, checkpoint: UploadCheckpoint, save: Boolean) {
+            state = state.copy(checkpoints = state.checkpoints + (path to checkpoint))
+            if (save) checkpoints.save(recordId, state)
+        }
+    }
+
+    private suspend fun uploadOne(progress: RecordProgress, path: String, file: File) {
+        val previous = progress.checkpoint(path)
+        if (previous?.completed == true) {
+            Log.d(TAG, "Skipping $path, already uploaded")
+            return
+        }
+
+        var lastSaved = previous
+
+        storage.upload(path, file, previous) { checkpoint ->
+            synchronized(progress) {
+                val saved = lastSaved
+                val shouldSave = saved == null ||
+                        checkpoint.transferId != saved.transferId ||
+                        checkpoint.bytesTransferred - saved.bytesTransferred >= CHECKPOINT_INTERVAL_BYTES
+
+                progress.put(path, checkpoint, shouldSave)
+                if (shouldSave) lastSaved = checkpoint
+            }
+        }
+
+        val done = (progress.checkpoint(path) ?: UploadCheckpoint(path)).copy(
+            bytesTransferred = file.length(),
+            totalBytes = file.length(),
+            completed = true
+        )
+        progress.put(path, done, save = true)
+    }
+}
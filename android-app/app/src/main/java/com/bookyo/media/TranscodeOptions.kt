@@ -0,0 +1,35 @@
+package com.bookyo.media
+
+import android.graphics.Bitmap
+import android.os.Build
+
+/**
+ * Output encodings supported by the upload pipeline
+ */
+enum class ImageFormat(val extension: String, val mimeType: String) {
+    JPEG("jpg", "image/jpeg"),
+    WEBP("webp", "image/webp");
+
+    @Suppress("DEPRECATION")
+    fun compressFormat(): Bitmap.CompressFormat {
+        return when (this) {
+            JPEG -> Bitmap.CompressFormat.JPEG
+            WEBP -> if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                Bitmap.CompressFormat.WEBP_LOSSY
+            } else {
+                Bitmap.CompressFormat.WEBP
+            }
+        }
+    }
+}
+
+/**
+ * Settings for re-encoding photos before they are uploaded
+ */
+data class TranscodeOptions(
+    val maxEdgePx: Int = 1600,
+    val thumbnailEdgePx: Int = 480,
+    val quality: Int = 80,
+    val thumbnailQuality: Int = 70,
+    val format: ImageFormat = ImageFormat.WEBP
+)
@@ -0,0 +1,55 @@
+package com.bookyo.media
+
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.Json
+import java.io.File
+
+/**
+ * Upload state for one pending record: the S3 key assigned to each local
+ * image file, and a checkpoint per remote object path.
+ */
+@Serializable
+data class RecordUploadState(
+    val keys: Map<String, String> = emptyMap(),
+    val checkpoints: Map<String, UploadCheckpoint> = emptyMap()
+)
+
+/**
+ * Stores [RecordUploadState] as a small JSON file per record, in the same
+ * directory as the record's pending images.
+ */
+class UploadCheckpointStore(private val directory: File) {
+    private val json = Json { ignoreUnknownKeys = true }
+
+    @Synchronized
+    fun load(recordId: String): RecordUploadState {
+        val file = fileFor(recordId)
+        if (!file.exists()) return RecordUploadState()
+        return try {
+            json.decodeFromString<RecordUploadState>(file.readText())
+        } catch (e: Exception) {
+            // A corrupt checkpoint only costs a restart from byte zero
+            RecordUploadState()
+        }
+    }
+
+    @Synchronized
+    fun save(recordId: String, state: RecordUploadState) {
+        directory.mkdirs()
+        val target = fileFor(recordId)
+        val temp = File(directory, "${target.name}.tmp")
+        temp.writeText(json.encodeToString(state))
+        if (!temp.renameTo(target)) {
+            temp.copyTo(target, overwrite = true)
+            temp.delete()
+        }
+    }
+
+    @Synchronized
+    fun delete(recordId: String) {
+        fileFor(recordId).delete()
+    }
+
+    private fun fileFor(recordId: String): File = File(directory, "$recordId.uploads.json")
+}
@@ -0,0 +1,35 @@
+package com.bookyo.media
+
+import kotlinx.serialization.Serializable
+import java.io.File
+
+/**
+ * How far one file upload got. Persisted next to the pending record so a
+ * retried job can pick the transfer back up instead of starting from zero.
+ */
+@Serializable
+data class UploadCheckpoint(
+    val path: String,
+    val transferId: String? = null,
+    val bytesTransferred: Long = 0,
+    val totalBytes: Long = 0,
+    val completed: Boolean = false
+)
+
+/**
+ * Minimal storage backend used by [ResumableUploader]. Production uses
+ * [AmplifyUploadStorage]; tests use an in-memory fake.
+ */
+interface UploadStorage {
+    /**
+     * Upload [file] to [path]. When [checkpoint] carries a transfer id the
+     * backend should try to resume that transfer. [onCheckpoint] is called
+     * whenever the transfer id or transferred byte count changes.
+     */
+    suspend fun upload(
+        path: String,
+        file: File,
+        checkpoint: UploadCheckpoint?,
+        onCheckpoint: (UploadCheckpoint) -> Unit
+    )
+}
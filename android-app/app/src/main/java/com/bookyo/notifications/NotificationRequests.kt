@@ -0,0 +1,102 @@
+package com.bookyo.notifications
+
+import com.amplifyframework.api.aws.GsonVariablesSerializer
+import com.amplifyframework.api.graphql.GraphQLRequest
+import com.amplifyframework.api.graphql.SimpleGraphQLRequest
+import com.amplifyframework.datastore.generated.model.Notification
+
+/**
+ * GraphQL requests for notifications that the model request builders
+ * cannot express
+ */
+object NotificationRequests {
+    // Recipient of notifications meant for every user
+    const val BROADCAST = UnreadCounter.BROADCAST
+
+    const val UNREAD_IDS_FIELD = "listNotifications"
+
+    // Rows scanned per page; the filter is applied after the scan, so pages
+    // of ids can be large and still cheap
+    private const val ID_PAGE_SIZE = 1000
+
+    // Updates sent as aliases of one mutation document
+    const val MAX_READS_PER_REQUEST = 100
+
+    private const val NOTIFICATION_FIELDS = "id title body recipient read type createdAt updatedAt"
+
+    /**
+     * New notifications addressed to [recipient]. The filter is applied by
+     * the server, so other users' notifications are never sent to this
+     * device.
+     */
+    fun onCreateFor(recipient: String): GraphQLRequest<Notification> {
+        return SimpleGraphQLRequest(
+            """
+            subscription OnCreateNotification(${'$'}filter: ModelSubscriptionNotificationFilterInput) {
+              onCreateNotification(filter: ${'$'}filter) { $NOTIFICATION_FIELDS }
+            }
+            """.trimIndent(),
+            mapOf("filter" to mapOf("recipient" to mapOf("eq" to recipient))),
+            Notification::class.java,
+            GsonVariablesSerializer()
+        )
+    }
+
+    /**
+     * One page of the ids of unread notifications for [recipient] and of
+     * broadcasts created at or after [broadcastsSince], all created at or
+     * after [since] when given. Selects only what [UnreadCounter] needs; the
+     * response data is returned raw, for [UnreadCounter.parsePage] with
+     * [UNREAD_IDS_FIELD].
+     */
+    fun unreadIds(recipient: String, since: String?, broadcastsSince: String, nextToken: String?): GraphQLRequest<String> {
+        val filter = mutableMapOf<String, Any>(
+            "read" to mapOf("eq" to false),
+            "or" to listOf(
+                mapOf("recipient" to mapOf("eq" to recipient)),
+                mapOf(
+                    "and" to listOf(
+                        mapOf("recipient" to mapOf("eq" to BROADCAST)),
+                        mapOf("createdAt" to mapOf("ge" to broadcastsSince))
+                    )
+                )
+            )
+        )
+        if (since != null) filter["createdAt"] = mapOf("ge" to since)
+
+        val variables = mutableMapOf<String, Any>("filter" to filter, "limit" to ID_PAGE_SIZE)
+        if (nextToken != null) variables["nextToken"] = nextToken
+
+        return SimpleGraphQLRequest(
+            """
+            query UnreadNotificationIds(${'$'}filter: ModelNotificationFilterInput, ${'$'}limit: Int, ${'$'}nextToken: String) {
+              $UNREAD_IDS_FIELD(filter: ${'$'}filter, limit: ${'$'}limit, nextToken: ${'$'}nextToken) {
+                items { id recipient read createdAt }
+                nextToken
+              }
+            }
+            """.trimIndent(),
+            variables,
+            String::class.java,
+            GsonVariablesSerializer()
+        )
+    }
+
+    /**
+     * Mark the notifications with [ids] as read in a single request, one
+     * aliased updateNotification per id
+     */
+    fun markRead(ids: List<String>): GraphQLRequest<String> {
+        require(ids.size in 1..MAX_READS_PER_REQUEST) { "Cannot mark ${ids.size} notifications read at once" }
+        val parameters = ids.indices.joinToString(", ") { "${'$'}input$it: UpdateNotificationInput!" }
+        val updates = ids.indices.joinToString("\n") { "  read$it: updateNotification(input: ${'$'}input$it) { id }" }
+        val variables = ids.withIndex().associate { (i, id) -> "input$i" to mapOf("id" to id, "read" to true) }
+
+        return SimpleGraphQLRequest(
+            "mutation MarkNotificationsRead($parameters) {\n$updates\n}",
+            variables,
+            String::class.java,
+            GsonVariablesSerializer()
+        )
+    }
+}
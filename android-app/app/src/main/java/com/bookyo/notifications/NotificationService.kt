@@ -1,54 +1,80 @@
 package com.bookyo.notifications
 
+import android.content.Context
 import android.util.Log
-import com.amplifyframework.api.graphql.model.ModelPagination
-import com.amplifyframework.api.graphql.model.ModelQuery
-import com.amplifyframework.api.graphql.model.ModelSubscription
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.ProcessLifecycleOwner
 import com.amplifyframework.auth.AuthUser
 import com.amplifyframework.datastore.generated.model.Notification
 import com.amplifyframework.kotlin.core.Amplify
+import com.bookyo.outbox.OutboxMutation
+import com.bookyo.outbox.OutboxStore
+import com.bookyo.outbox.OutboxWorker
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.ExperimentalCoroutinesApi
-import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.filter
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.flow.mapNotNull
+import kotlinx.coroutines.flow.merge
 import kotlinx.coroutines.launch
-import java.util.Timer
-import java.util.TimerTask
+import kotlinx.coroutines.withContext
+import java.io.File
 
 /**
- * Service to manage notifications throughout the app
+ * Service to manage notifications throughout the app.
+ *
+ * While the app is in the foreground, new notifications arrive through the
+ * realtime subscription; the unread count is only reconciled when it
+ * (re)connects, or polled with backoff while it is down. See [RealtimeSync].
+ * The count itself is kept by a per-user [UnreadCounter].
+ *
+ * Reads update the count at once and reach the server later: they are
+ * coalesced by [PendingReads] into one outbox item per burst.
  */
-class NotificationService() {
+class NotificationService private constructor(context: Context) {
     companion object {
         private const val TAG = "NotificationService"
-        private const val POLL_INTERVAL_MS = 60000L // 1 minute
 
         // Singleton instance
         @Volatile
         private var INSTANCE: NotificationService? = null
 
-        fun getInstance(): NotificationService {
+        fun getInstance(context: Context): NotificationService {
             return INSTANCE ?: synchronized(this) {
-                val instance = NotificationService()
+                val instance = INSTANCE ?: NotificationService(context.applicationContext)
                 INSTANCE = instance
                 instance
             }
         }
     }
 
+    private val appContext = context.applicationContext
+
     // Coroutine scope for background operations
-    private val serviceScope = CoroutineScope(Dispatchers.IO + Job())
+    private val serviceScope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
     // Track unread notification count
     private val _unreadCount = MutableStateFlow(0)
     val unreadCount: StateFlow<Int> = _unreadCount.asStateFlow()
 
-    // Timer for polling
-    private var pollingTimer: Timer? = null
+    private var syncJob: Job? = null
+
+    // Counter of the signed-in user, once the service has started
+    @Volatile
+    private var counter: UnreadCounter? = null
+
+    // Reads of the signed-in user's own notifications not queued for the server yet
+    @Volatile
+    private var pendingReads: PendingReads? = null
 
     // Current user
     private var currentUser: AuthUser? = null
@@ -56,115 +82,171 @@ class NotificationService() {
     /**
      * Start the notification service
      */
+    @Synchronized
     fun start() {
         // If already running, don't start again
-        if (pollingTimer != null) {
+        if (syncJob?.isActive == true) {
             Log.d(TAG, "Notification service already running")
             return
         }
 
         Log.d(TAG, "Starting notification service")
 
-        serviceScope.launch {
+        syncJob = serviceScope.launch {
             try {
                 currentUser = Amplify.Auth.getCurrentUser()
                 Log.d(TAG, "Current user: ${currentUser?.username}")
-
-                if (currentUser != null) {
-                    // Start polling for notifications
-                    startPolling()
-
-                    // Set up subscription if possible
-                    setupSubscription()
-                } else {
-                    Log.w(TAG, "Cannot start notification service - no current user")
-                }
             } catch (e: Exception) {
                 Log.e(TAG, "Error starting notification service", e)
+                return@launch
+            }
+            val userId = currentUser?.userId ?: return@launch
+
+            val userCounter = UnreadCounter(File(appContext.filesDir, "notifications/unread-$userId.json"))
+            counter = userCounter
+            launch { userCounter.count.collect { _unreadCount.value = it } }
+
+            val userReads = PendingReads(
+                File(appContext.filesDir, "notifications/pending-reads-$userId.log"),
+                serviceScope,
+                onError = { e -> Log.e(TAG, "Error queueing notification reads", e) }
+            ) { ids -> queueReads(ids) }
+            pendingReads = userReads
+            // Reads left by a process that died before queueing them
+            launch {
+                try {
+                    userReads.flushNow()
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error queueing notification reads", e)
+                }
             }
+
+            RealtimeSync(
+                subscribe = { subscribe(userId) },
+                catchUp = { reconcileUnread(userId, userCounter) },
+                onEvent = { notification ->
+                    Log.d(TAG, "New notification received: ${notification.title}")
+                    userCounter.onCreated(
+                        UnreadCounter.Entry(
+                            notification.id,
+                            notification.read == true,
+                            notification.createdAt?.format(),
+                            notification.recipient
+                        )
+                    )
+                },
+                onError = { step, e -> Log.e(TAG, "Notification sync failed at $step", e) }
+            ).run(appInForeground())
         }
     }
 
     /**
      * Stop the notification service
      */
+    @Synchronized
     fun stop() {
         Log.d(TAG, "Stopping notification service")
-        pollingTimer?.cancel()
-        pollingTimer = null
+        syncJob?.cancel()
+        syncJob = null
+        counter = null
+        pendingReads = null
+        _unreadCount.value = 0
     }
 
     /**
-     * Set up a subscription for real-time notifications
+     * Take [notifications] off the unread count now and write the reads to
+     * the server shortly after, together with other reads made meanwhile.
+     * Broadcasts are only marked on this device: their read flag on the
+     * server is shared by every user.
      */
-    @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
-    private fun setupSubscription() {
-        serviceScope.launch {
-            try {
-                val userId = currentUser?.userId ?: return@launch
-
-                // Subscribe to notifications for this user
-                Amplify.API.subscribe(ModelSubscription.onCreate(Notification::class.java))
-                    .collect { response ->
-                        if (response.hasData()) {
-                            val notification = response.data
-
-                            // Check if this notification is for the current user
-                            if (notification.recipient == userId || notification.recipient == "*") {
-                                Log.d(TAG, "New notification received: ${notification.title}")
-
-                                // Update unread count
-                                _unreadCount.value = _unreadCount.value + 1
-                            }
-                        } else if (response.hasErrors()) {
-                            Log.e(TAG, "Subscription error: ${response.errors.first().message}")
-                        }
-                    }
-            } catch (e: Exception) {
-                Log.e(TAG, "Error setting up subscription", e)
-            }
-        }
+    suspend fun markRead(notifications: Collection<InboxItem>) {
+        counter?.markRead(notifications.map { it.id })
+        queueOwnReads(notifications)
     }
 
     /**
-     * Start polling for notifications
+     * Clear the unread count, including notifications not synced to this
+     * device yet, and write the reads of [notifications] to the server
      */
-    private fun startPolling() {
-        pollingTimer?.cancel()
-
-        pollingTimer = Timer().apply {
-            schedule(object : TimerTask() {
-                override fun run() {
-                    serviceScope.launch {
-                        fetchUnreadCount()
-                    }
-                }
-            }, 0, POLL_INTERVAL_MS)
-        }
+    suspend fun markAllRead(notifications: Collection<InboxItem>) {
+        counter?.markAllRead()
+        queueOwnReads(notifications)
+    }
+
+    private suspend fun queueOwnReads(notifications: Collection<InboxItem>) {
+        val userId = currentUser?.userId ?: return
+        pendingReads?.add(notifications.filter { it.recipient == userId }.map { it.id })
+    }
+
+    private suspend fun queueReads(ids: List<String>) {
+        OutboxStore.getInstance(appContext).enqueue(OutboxMutation.MarkNotificationsRead(ids))
+        OutboxWorker.enqueueWork(appContext)
     }
 
     /**
-     * Fetch the unread notification count
+     * Whether any activity of the app is started
      */
-    private suspend fun fetchUnreadCount() {
-        try {
-            val userId = currentUser?.userId ?: return
-
-            val response = Amplify.API.query(
-                ModelQuery.list(
-                    Notification::class.java,
-                    Notification.READ.eq(false)
-                        .and(Notification.RECIPIENT.eq(userId).or(Notification.RECIPIENT.eq("*"))),
-                    ModelPagination.limit(100)
-                )
-            )
-
-            val count = response.data.items.count()
-            _unreadCount.value = count
-
-            Log.d(TAG, "Unread notification count: $count")
+    private fun appInForeground(): Flow<Boolean> {
+        return ProcessLifecycleOwner.get().lifecycle.currentStateFlow
+            .map { it.isAtLeast(Lifecycle.State.STARTED) }
+    }
+
+    /**
+     * New notifications for the current user and broadcasts, once both
+     * subscriptions are up. The server filters by recipient, so only these
+     * are sent to the device.
+     */
+    private suspend fun subscribe(userId: String): Flow<Notification> {
+        val own = Amplify.API.subscribe(NotificationRequests.onCreateFor(userId))
+        val broadcast = try {
+            Amplify.API.subscribe(NotificationRequests.onCreateFor(NotificationRequests.BROADCAST))
         } catch (e: Exception) {
-            Log.e(TAG, "Error fetching unread count", e)
+            withContext(NonCancellable) { close(own) }
+            throw e
+        }
+
+        return merge(own, broadcast)
+            .mapNotNull { response ->
+                if (response.hasErrors()) {
+                    Log.e(TAG, "Subscription error: ${response.errors.first().message}")
+                }
+                if (response.hasData()) response.data else null
+            }
+            // Guard in case the server filter is ever missing
+            .filter { it.recipient == userId || it.recipient == NotificationRequests.BROADCAST }
+    }
+
+    /**
+     * End an established subscription that will not be used: cancelling its
+     * collection cancels the operation
+     */
+    private suspend fun close(subscription: Flow<*>) {
+        coroutineScope {
+            launch(start = CoroutineStart.UNDISPATCHED) { subscription.collect {} }.cancel()
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Bring the unread count up to date with id-only queries: everything
+     * unread on a full reconciliation, otherwise only what is newer than
+     * the last one. Broadcasts past their retention are never fetched.
+     */
+    private suspend fun reconcileUnread(userId: String, counter: UnreadCounter) {
+        val since = counter.beginReconcile()
+        val broadcastsSince = counter.broadcastCutoff()
+        val fetched = mutableListOf<UnreadCounter.Entry>()
+        var nextToken: String? = null
+        do {
+            val response = Amplify.API.query(NotificationRequests.unreadIds(userId, since, broadcastsSince, nextToken))
+            if (response.hasErrors()) {
+                throw Exception("Unread ids query failed: ${response.errors.first().message}")
+            }
+            val page = UnreadCounter.parsePage(response.data, NotificationRequests.UNREAD_IDS_FIELD)
+            fetched += page.items
+            nextToken = page.nextToken
+        } while (nextToken != null)
+
+        counter.reconcile(since, fetched)
+        Log.d(TAG, "Unread notification count: ${counter.count.value}")
+    }
+}
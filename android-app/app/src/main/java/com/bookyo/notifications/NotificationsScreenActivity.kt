@@ -17,10 +17,12 @@ import androidx.compose.foundation.layout.size
 import androidx.compose.foundation.layout.width
 import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.foundation.lazy.items
+import androidx.compose.foundation.lazy.rememberLazyListState
 import androidx.compose.foundation.shape.RoundedCornerShape
 import androidx.compose.material.Icon
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.Close
+import androidx.compose.material.icons.filled.Done
 import androidx.compose.material.icons.filled.Info
 import androidx.compose.material.icons.filled.Refresh
 import androidx.compose.material3.Card
@@ -36,11 +38,13 @@ import androidx.compose.material3.Surface
 import androidx.compose.material3.Text
 import androidx.compose.material3.TopAppBarDefaults
 import androidx.compose.runtime.Composable
+import androidx.compose.runtime.LaunchedEffect
 import androidx.compose.runtime.collectAsState
 import androidx.compose.runtime.getValue
 import androidx.compose.runtime.mutableIntStateOf
 import androidx.compose.runtime.remember
 import androidx.compose.runtime.setValue
+import androidx.compose.runtime.snapshotFlow
 import androidx.compose.ui.Alignment
 import androidx.compose.ui.Modifier
 import androidx.compose.ui.draw.clip
@@ -48,7 +52,6 @@ import androidx.compose.ui.res.painterResource
 import androidx.compose.ui.text.font.FontWeight
 import androidx.compose.ui.text.style.TextAlign
 import androidx.compose.ui.unit.dp
-import com.amplifyframework.datastore.generated.model.Notification
 import com.bookyo.R
 import com.bookyo.components.BookyoButton
 import com.bookyo.components.BottomNavigationBar
@@ -57,6 +60,7 @@ import com.bookyo.components.rememberToastState
 import com.bookyo.ui.BookyoTheme
 import com.bookyo.ui.blue
 import com.bookyo.ui.lightGray
+import kotlinx.coroutines.flow.distinctUntilChanged
 
 class NotificationsScreenActivity : ComponentActivity() {
 
@@ -81,6 +85,9 @@ class NotificationsScreenActivity : ComponentActivity() {
     }
 }
 
+// Rows from the end of the list at which the next page is shown
+private const val LOAD_MORE_THRESHOLD = 5
+
 @OptIn(ExperimentalMaterial3Api::class)
 @Composable
 fun NotificationsScreen(
@@ -89,6 +96,8 @@ fun NotificationsScreen(
     val toastState = rememberToastState()
     val notifications by viewModel.notifications.collectAsState()
     val isLoading by viewModel.isLoading.collectAsState()
+    val canLoadMore by viewModel.canLoadMore.collectAsState()
+    val readIds by viewModel.readIds.collectAsState()
     val errorMessage by viewModel.errorMessage.collectAsState()
     var currentScreenIndex by remember { mutableIntStateOf(3) }
 
@@ -111,6 +120,13 @@ fun NotificationsScreen(
                     containerColor = MaterialTheme.colorScheme.surface
                 ),
                 actions = {
+                    IconButton(onClick = { viewModel.markAllRead() }) {
+                        Icon(
+                            imageVector = Icons.Default.Done,
+                            contentDescription = "Mark all as read",
+                            tint = MaterialTheme.colorScheme.onSurface
+                        )
+                    }
                     IconButton(
                         onClick = {
                             // Shopping cart action
@@ -189,19 +205,48 @@ fun NotificationsScreen(
                     }
                 }
             } else {
+                val listState = rememberLazyListState()
+
+                // Show the next stored page before the end is reached
+                LaunchedEffect(listState) {
+                    snapshotFlow {
+                        val layoutInfo = listState.layoutInfo
+                        (layoutInfo.visibleItemsInfo.lastOrNull()?.index ?: 0) to layoutInfo.totalItemsCount
+                    }
+                        .distinctUntilChanged()
+                        .collect { (last, total) ->
+                            if (total > 0 && last >= total - LOAD_MORE_THRESHOLD) viewModel.loadMore()
+                        }
+                }
+
                 // Show notifications list
                 LazyColumn(
+                    state = listState,
                     modifier = Modifier
                         .fillMaxWidth()
                         .padding(horizontal = 16.dp)
                 ) {
-                    items(notifications) { notification ->
+                    items(notifications, key = { it.id }) { notification ->
                         NotificationCard(
                             notification = notification,
+                            unread = !notification.read && notification.id !in readIds,
                             onDismiss = { viewModel.markAsRead(notification) }
                         )
                         Spacer(modifier = Modifier.height(12.dp))
                     }
+
+                    if (canLoadMore) {
+                        item(key = "loading") {
+                            Box(
+                                modifier = Modifier
+                                    .fillMaxWidth()
+                                    .padding(vertical = 8.dp),
+                                contentAlignment = Alignment.Center
+                            ) {
+                                CircularProgressIndicator(color = blue)
+                            }
+                        }
+                    }
                 }
             }
 
@@ -212,11 +257,11 @@ fun NotificationsScreen(
 
 @Composable
 fun NotificationCard(
-    notification: Notification,
+    notification: InboxItem,
+    unread: Boolean,
     onDismiss: () -> Unit
 ) {
     val toastState = rememberToastState()
-    val unread = !notification.read
 
     Card(
         modifier = Modifier
@@ -242,7 +287,7 @@ fun NotificationCard(
                 modifier = Modifier.fillMaxWidth()
             ) {
                 // Show different icons based on notification type
-                when (notification.type?.toString()) {
+                when (notification.type) {
                     "NEW_BOOK" -> {
                         androidx.compose.material3.Icon(
                             painter = painterResource(id = R.drawable.ic_home),
@@ -298,7 +343,7 @@ fun NotificationCard(
                 modifier = Modifier.padding(start = 32.dp, top = 4.dp, bottom = 8.dp)
             )
 
-            if (notification.type?.toString() == "NEW_BOOK") {
+            if (notification.type == "NEW_BOOK") {
                 Box(
                     modifier = Modifier.padding(start = 32.dp),
                     contentAlignment = Alignment.CenterStart
@@ -4,35 +4,60 @@ import android.app.Application
 import android.util.Log
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
-import com.amplifyframework.api.graphql.model.ModelMutation
+import com.amplifyframework.api.graphql.GraphQLRequest
+import com.amplifyframework.api.graphql.PaginatedResult
 import com.amplifyframework.api.graphql.model.ModelPagination
 import com.amplifyframework.api.graphql.model.ModelQuery
 import com.amplifyframework.auth.AuthUser
+import com.amplifyframework.core.model.query.predicate.QueryField
 import com.amplifyframework.datastore.generated.model.Notification
 import com.amplifyframework.kotlin.core.Amplify
 import com.bookyo.analytics.BookyoAnalytics
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.supervisorScope
+import java.io.File
 
 class NotificationsViewModel(application: Application) : AndroidViewModel(application) {
     companion object {
         private const val TAG = "NotificationsViewModel"
+
+        // Notifications shown per step while scrolling
+        private const val PAGE_SIZE = 30
+
+        // Rows scanned per request when syncing
+        private const val SYNC_PAGE_SIZE = 100
+
+        private val CREATED_AT = QueryField.field("Notification", "createdAt")
     }
 
     private val _isLoading = MutableStateFlow(false)
     val isLoading: StateFlow<Boolean> = _isLoading.asStateFlow()
 
-    private val _notifications = MutableStateFlow<List<Notification>>(emptyList())
-    val notifications: StateFlow<List<Notification>> = _notifications.asStateFlow()
+    private val _notifications = MutableStateFlow<List<InboxItem>>(emptyList())
+    val notifications: StateFlow<List<InboxItem>> = _notifications.asStateFlow()
+
+    // Ids read on this screen, shown read right away without copying the
+    // list; the stored items catch up in the background
+    private val _readIds = MutableStateFlow<Set<String>>(emptySet())
+    val readIds: StateFlow<Set<String>> = _readIds.asStateFlow()
+
+    private val _canLoadMore = MutableStateFlow(false)
+    val canLoadMore: StateFlow<Boolean> = _canLoadMore.asStateFlow()
 
     private val _errorMessage = MutableStateFlow<String?>(null)
     val errorMessage: StateFlow<String?> = _errorMessage.asStateFlow()
 
     private var currentUser: AuthUser? = null
 
+    // Local copy of the user's notifications, once signed in
+    private var inbox: NotificationInbox? = null
+
+    private var visibleCount = PAGE_SIZE
+
     init {
         fetchCurrentUser()
     }
@@ -40,7 +65,13 @@ class NotificationsViewModel(application: Application) : AndroidViewModel(applic
     private fun fetchCurrentUser() {
         viewModelScope.launch {
             try {
-                currentUser = Amplify.Auth.getCurrentUser()
+                val user = Amplify.Auth.getCurrentUser()
+                currentUser = user
+                inbox = NotificationInbox(
+                    File(getApplication<Application>().filesDir, "notifications/inbox-${user.userId}.log")
+                )
+                // Show what is stored right away, then fetch what is new
+                publish()
                 fetchNotifications()
             } catch (e: Exception) {
                 Log.e(TAG, "Error fetching current user", e)
@@ -49,14 +80,16 @@ class NotificationsViewModel(application: Application) : AndroidViewModel(applic
         }
     }
 
+    /**
+     * Fetch notifications newer than the newest stored one
+     */
     fun fetchNotifications() {
         viewModelScope.launch {
             _isLoading.value = true
             _errorMessage.value = null
 
             try {
-                val notifications = loadNotifications()
-                _notifications.value = notifications
+                syncNotifications()
             } catch (e: Exception) {
                 Log.e(TAG, "Error fetching notifications", e)
                 _errorMessage.value = "Failed to load notifications"
@@ -66,19 +99,47 @@ class NotificationsViewModel(application: Application) : AndroidViewModel(applic
         }
     }
 
-    private suspend fun loadNotifications(): List<Notification> = supervisorScope {
+    /**
+     * Show the next page of stored notifications
+     */
+    fun loadMore() {
+        if (!_canLoadMore.value) return
+        visibleCount += PAGE_SIZE
+        viewModelScope.launch { publish() }
+    }
+
+    private suspend fun publish() {
+        val (items, total) = inbox?.top(visibleCount) ?: return
+        _notifications.value = items
+        _canLoadMore.value = items.size < total
+    }
+
+    private suspend fun syncNotifications() = supervisorScope {
         val start = System.currentTimeMillis()
 
         try {
             val userId = currentUser?.userId ?: throw Exception("User not authenticated")
-
-            val response = Amplify.API.query(
-                ModelQuery.list(
-                    Notification::class.java,
-                    Notification.RECIPIENT.eq(userId).or(Notification.RECIPIENT.eq("*")),
-                    ModelPagination.limit(50)
+            val inbox = inbox ?: throw Exception("User not authenticated")
+
+            // Inclusive, so notifications created in the same instant are not
+            // missed; the inbox skips the ones it already has
+            val since = inbox.newest()
+            var predicate = Notification.RECIPIENT.eq(userId).or(Notification.RECIPIENT.eq(NotificationRequests.BROADCAST))
+            if (since != null) predicate = predicate.and(CREATED_AT.ge(since))
+
+            var request: GraphQLRequest<PaginatedResult<Notification>>? = null
+            var fetched = 0
+            do {
+                val response = Amplify.API.query(
+                    request ?: ModelQuery.list(Notification::class.java, predicate, ModelPagination.limit(SYNC_PAGE_SIZE))
                 )
-            )
+                val page = response.data
+                inbox.merge(page.items.map { it.toInboxItem() })
+                fetched += page.items.count()
+                // Each page shows up as it arrives
+                publish()
+                request = if (page.hasNextResult()) page.requestForNextResult else null
+            } while (request != null)
 
             val duration = System.currentTimeMillis() - start
             BookyoAnalytics.trackApiCall(
@@ -89,10 +150,7 @@ class NotificationsViewModel(application: Application) : AndroidViewModel(applic
                 null,
                 null
             )
-
-            return@supervisorScope response.data.items.toList().sortedByDescending {
-                if (!it.read) 1 else 0
-            }
+            Log.d(TAG, "Synced $fetched notifications since $since")
         } catch (e: Exception) {
             val duration = System.currentTimeMillis() - start
             BookyoAnalytics.trackApiCall(
@@ -107,28 +165,50 @@ class NotificationsViewModel(application: Application) : AndroidViewModel(applic
         }
     }
 
-    fun markAsRead(notification: Notification) {
-        viewModelScope.launch {
-            try {
-                val updatedNotification = notification.copyOfBuilder()
-                    .read(true)
-                    .build()
+    private fun Notification.toInboxItem(): InboxItem {
+        return InboxItem(
+            id = id,
+            title = title,
+            body = body,
+            recipient = recipient,
+            type = type?.toString(),
+            read = read == true,
+            createdAt = createdAt?.format()
+        )
+    }
 
-                Amplify.API.mutate(ModelMutation.update(updatedNotification))
+    fun markAsRead(item: InboxItem) {
+        if (item.read || item.id in _readIds.value) return
+        _readIds.update { it + item.id }
+        persistReads { inbox ->
+            inbox.markRead(listOf(item.id))
+            notificationService().markRead(listOf(item))
+        }
+    }
 
-                val currentList = _notifications.value.toMutableList()
-                val index = currentList.indexOfFirst { it.id == notification.id }
-                if (index >= 0) {
-                    currentList[index] = updatedNotification
-                    _notifications.value = currentList
-                }
+    /**
+     * Mark every stored notification read; the server gets a single write
+     */
+    fun markAllRead() {
+        _readIds.update { ids -> ids + _notifications.value.filter { !it.read }.map { it.id } }
+        persistReads { inbox ->
+            val unread = inbox.unread()
+            inbox.markRead(unread.map { it.id })
+            notificationService().markAllRead(unread)
+        }
+    }
 
-                Log.d(TAG, "Marked notification as read: ${notification.id}")
+    private fun persistReads(block: suspend (NotificationInbox) -> Unit) {
+        val inbox = inbox ?: return
+        viewModelScope.launch {
+            try {
+                block(inbox)
             } catch (e: Exception) {
-                Log.e(TAG, "Error marking notification as read", e)
+                Log.e(TAG, "Error marking notifications as read", e)
                 _errorMessage.value = "Failed to update notification"
             }
         }
     }
 
+    private fun notificationService() = NotificationService.getInstance(getApplication())
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.bookyo.outbox
+
+import com.amplifyframework.api.graphql.model.ModelMutation
+import com.amplifyframework.api.graphql.model.ModelQuery
+import com.amplifyframework.core.model.Model
+import com.amplifyframework.kotlin.core.Amplify
+import com.bookyo.data.EntityCache
+
+/**
+ * Create [model], treating "a record with this id already exists" as
+ * success. Callers pass a model whose id is an outbox idempotency key, so a
+ * replayed create whose first attempt did reach the server (but whose
+ * response was lost) does not create a duplicate.
+ *
+ * The model as sent is written through to [EntityCache]: it still holds the
+ * related models the caller loaded, which the response only references.
+ */
+suspend fun <T : Model> createIdempotent(model: T): T {
+    val response = Amplify.API.mutate(ModelMutation.create(model))
+    if (!response.hasErrors()) {
+        EntityCache.getInstance().put(model)
+        return response.data
+    }
+
+    // The create failed its condition on the id: check whether it is ours
+    val existing = Amplify.API.query(ModelQuery[model.javaClass, model.primaryKeyString]).data
+        ?: throw Exception("Error creating ${model.javaClass.simpleName}: ${response.errors.first().message}")
+    EntityCache.getInstance().put(model)
+    return existing
+}
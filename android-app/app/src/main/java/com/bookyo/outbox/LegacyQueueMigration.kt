@@ -0,0 +1,151 @@
+package com.bookyo.outbox
+
+import android.content.Context
+import android.util.Log
+import androidx.datastore.core.DataStore
+import androidx.datastore.preferences.core.Preferences
+import androidx.datastore.preferences.core.edit
+import androidx.datastore.preferences.core.stringPreferencesKey
+import androidx.datastore.preferences.preferencesDataStore
+import com.bookyo.listing.PendingListingData
+import com.bookyo.publish.PendingPublishData
+import com.bookyo.queue.QueueStore
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.json.Json
+import java.io.File
+
+// Stores used by older versions for the per-feature offline queues
+private val Context.pendingPublishDataStore: DataStore<Preferences> by preferencesDataStore(
+    name = "pending_publish_requests"
+)
+private val Context.pendingListingDataStore: DataStore<Preferences> by preferencesDataStore(
+    name = "pending_listing_requests"
+)
+
+/**
+ * Moves requests queued by older versions into the outbox, once. Legacy ids
+ * are kept and ids already in the outbox are skipped, so a crash halfway
+ * through only repeats the migration. Requests whose cached images are gone
+ * (older versions hid those) are dropped.
+ *
+ * Older versions kept the images in the cache directory, which the OS may
+ * clear; they are copied into [imagesDir] with the outbox's own images and
+ * the cached copies deleted once the legacy queues are gone.
+ */
+internal class LegacyQueueMigration(
+    private val context: Context,
+    private val imagesDir: File
+) {
+    companion object {
+        private const val TAG = "LegacyQueueMigration"
+
+        private val PENDING_PUBLISH_KEY = stringPreferencesKey("pending_publish_requests")
+        private val PENDING_LISTING_KEY = stringPreferencesKey("pending_listing_requests")
+    }
+
+    private val json = Json { ignoreUnknownKeys = true }
+
+    suspend fun migrateInto(outbox: QueueStore<OutboxItem>) {
+        try {
+            val publishes = readPublishLog() + readDataStoreList<PendingPublishData>(
+                context.pendingPublishDataStore,
+                PENDING_PUBLISH_KEY
+            )
+            val listings = readDataStoreList<PendingListingData>(
+                context.pendingListingDataStore,
+                PENDING_LISTING_KEY
+            )
+            if (publishes.isEmpty() && listings.isEmpty()) return
+
+            val items = publishes.map { pending ->
+                OutboxItem(
+                    id = pending.id,
+                    mutation = OutboxMutation.CreateBook(
+                        title = pending.title,
+                        isbn = pending.isbn,
+                        authorName = pending.authorName,
+                        imagePath = pending.imagePath
+                    ),
+                    createdAt = pending.timestamp
+                )
+            } + listings.map { pending ->
+                OutboxItem(
+                    id = pending.id,
+                    mutation = OutboxMutation.CreateListing(
+                        bookId = pending.bookId,
+                        price = pending.price,
+                        imagePaths = pending.imagePaths
+                    ),
+                    createdAt = pending.timestamp
+                )
+            }
+
+            val toMigrate = items
+                .filter { item -> item.mutation.imagePaths.all { File(it).exists() } }
+                .filter { outbox.get(it.id) == null }
+                .sortedBy { it.createdAt }
+            val adopted = withContext(Dispatchers.IO) { toMigrate.map { adoptImages(it) } }
+            outbox.enqueueAll(adopted)
+
+            // Only forget the legacy copies once the outbox has them
+            context.pendingPublishDataStore.edit { it.remove(PENDING_PUBLISH_KEY) }
+            context.pendingListingDataStore.edit { it.remove(PENDING_LISTING_KEY) }
+            publishLogFile().delete()
+            withContext(Dispatchers.IO) {
+                items.flatMap { it.mutation.imagePaths }
+                    .map { File(it) }
+                    .filter { it.parentFile != imagesDir }
+                    .forEach { it.delete() }
+            }
+
+            Log.d(TAG, "Migrated ${toMigrate.size} legacy requests into the outbox")
+        } catch (e: Exception) {
+            // Legacy data stays in place; retried on the next start
+            Log.e(TAG, "Error migrating legacy queues", e)
+        }
+    }
+
+    /**
+     * Copy the item's images out of the cache into [imagesDir]. Names are
+     * derived from the item, so a repeated migration overwrites its own
+     * earlier copies.
+     */
+    private fun adoptImages(item: OutboxItem): OutboxItem {
+        val paths = item.mutation.imagePaths
+        if (paths.isEmpty()) return item
+
+        imagesDir.mkdirs()
+        val adopted = paths.mapIndexed { index, path ->
+            val source = File(path)
+            if (source.parentFile == imagesDir) return@mapIndexed path
+            val target = File(imagesDir, "legacy-${item.id}-$index-${source.name}")
+            source.copyTo(target, overwrite = true)
+            target.absolutePath
+        }
+
+        val mutation = when (val legacy = item.mutation) {
+            is OutboxMutation.CreateBook -> legacy.copy(imagePath = adopted.single())
+            is OutboxMutation.CreateListing -> legacy.copy(imagePaths = adopted)
+            else -> legacy
+        }
+        return item.copy(mutation = mutation)
+    }
+
+    private fun publishLogFile() = File(context.filesDir, "queues/pending_publish.log")
+
+    private suspend fun readPublishLog(): List<PendingPublishData> {
+        val file = publishLogFile()
+        if (!file.exists()) return emptyList()
+        return QueueStore(file, PendingPublishData.serializer()) { it.id }.snapshot()
+    }
+
+    private suspend inline fun <reified T> readDataStoreList(
+        store: DataStore<Preferences>,
+        key: Preferences.Key<String>
+    ): List<T> {
+        val value = store.data.first()[key] ?: return emptyList()
+        return json.decodeFromString<List<T>>(value)
+    }
+}
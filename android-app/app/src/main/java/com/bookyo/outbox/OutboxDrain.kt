@@ -0,0 +1,118 @@
+package com.bookyo.outbox
+
+import android.util.Log
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+
+/**
+ * The outbox operations a drain needs, implemented by [OutboxStore]
+ */
+interface OutboxQueue {
+    /**
+     * All items, oldest first
+     */
+    suspend fun items(): List<OutboxItem>
+
+    suspend fun update(id: String, transform: (OutboxItem) -> OutboxItem): OutboxItem?
+
+    suspend fun remove(id: String)
+}
+
+/**
+ * Runs queued items through [execute], bookkeeping attempts and failures.
+ * Independent items run concurrently; items sharing an ordering key run in
+ * enqueue order, and once one of them fails the rest of the key waits for
+ * the next drain, including items queued while draining.
+ */
+class OutboxDrain(
+    private val queue: OutboxQueue,
+    private val maxConcurrency: Int,
+    private val beforeBatch: suspend (List<OutboxItem>) -> Unit = {},
+    private val execute: suspend (OutboxItem) -> Unit
+) {
+    companion object {
+        private const val TAG = "OutboxDrain"
+
+        const val MAX_ATTEMPTS = 5
+    }
+
+    /**
+     * Apply every queued item, including items queued while draining.
+     * Returns true when some item failed but may succeed on a later run.
+     */
+    suspend fun drain(): Boolean {
+        val attempted = HashSet<String>()
+        val blockedKeys = HashSet<String>()
+        var needsRetry = false
+        val semaphore = Semaphore(maxConcurrency)
+
+        while (true) {
+            val batch = queue.items().filter {
+                it.state != OutboxState.FAILED && it.id !in attempted && orderingKey(it) !in blockedKeys
+            }
+            if (batch.isEmpty()) break
+            batch.mapTo(attempted) { it.id }
+
+            Log.d(TAG, "Draining ${batch.size} outbox items")
+            beforeBatch(batch)
+
+            val groups = batch.groupBy { orderingKey(it) }
+            val failedKeys = coroutineScope {
+                groups.map { (key, group) ->
+                    async { semaphore.withPermit { if (processInOrder(group)) null else key } }
+                }.awaitAll()
+            }.filterNotNull()
+
+            if (failedKeys.isNotEmpty()) {
+                blockedKeys += failedKeys
+                needsRetry = true
+            }
+        }
+
+        return needsRetry
+    }
+
+    private fun orderingKey(item: OutboxItem): String = item.mutation.orderingKey ?: item.id
+
+    /**
+     * Returns false when an item must be retried; later items of the group
+     * are then left queued so they never overtake it.
+     */
+    private suspend fun processInOrder(group: List<OutboxItem>): Boolean {
+        for (item in group) {
+            if (!process(item)) return false
+        }
+        return true
+    }
+
+    private suspend fun process(item: OutboxItem): Boolean {
+        return try {
+            execute(item)
+            queue.remove(item.id)
+            true
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            val attempts = item.attempts + 1
+            val permanent = e is PermanentOutboxException || attempts >= MAX_ATTEMPTS
+            Log.e(TAG, "Outbox item ${item.id} failed (attempt $attempts)", e)
+
+            if (permanent && item.mutation.discardOnFailure) {
+                queue.remove(item.id)
+                return true
+            }
+            queue.update(item.id) {
+                it.copy(
+                    state = if (permanent) OutboxState.FAILED else OutboxState.QUEUED,
+                    attempts = attempts,
+                    lastError = e.message
+                )
+            }
+            permanent
+        }
+    }
+}
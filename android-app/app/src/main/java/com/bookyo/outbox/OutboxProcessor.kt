@@ -0,0 +1,193 @@
+package com.bookyo.outbox
+
+import android.content.Context
+import android.util.Log
+import com.amplifyframework.api.graphql.model.ModelMutation
+import com.amplifyframework.api.graphql.model.ModelQuery
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.BookWishlist
+import com.amplifyframework.datastore.generated.model.Notification
+import com.amplifyframework.datastore.generated.model.NotificationType
+import com.amplifyframework.datastore.generated.model.Wishlist
+import com.amplifyframework.kotlin.core.Amplify
+import com.bookyo.data.AmplifyCatalogApi
+import com.bookyo.data.AuthorResolver
+import com.bookyo.data.CatalogApi
+import com.bookyo.data.DataStoreAuthorNameStore
+import com.bookyo.listing.CreateListingUseCase
+import com.bookyo.media.ResumableUploader
+import com.bookyo.notifications.NotificationRequests
+import com.bookyo.publish.PublishBookUseCase
+import kotlinx.coroutines.CancellationException
+import java.io.File
+
+/**
+ * Raised by a handler when retrying cannot help (e.g. a queued image is
+ * gone). The item goes straight to FAILED.
+ */
+class PermanentOutboxException(message: String) : Exception(message)
+
+/**
+ * Applies outbox items against the backend, scheduled by an [OutboxDrain]
+ */
+class OutboxProcessor(
+    context: Context,
+    private val store: OutboxStore = OutboxStore.getInstance(context),
+    private val uploader: ResumableUploader = store.createResumableUploader(),
+    api: CatalogApi = AmplifyCatalogApi(),
+    maxConcurrency: Int = DEFAULT_MAX_CONCURRENCY
+) {
+    companion object {
+        private const val TAG = "OutboxProcessor"
+
+        const val DEFAULT_MAX_CONCURRENCY = 3
+    }
+
+    private val authorResolver = AuthorResolver(api, DataStoreAuthorNameStore(context))
+
+    // Notifications are queued in this same outbox and sent later in the drain
+    private val publishBookUseCase = PublishBookUseCase(api, authorResolver) { store.enqueue(it) }
+    private val createListingUseCase = CreateListingUseCase(api) { store.enqueue(it) }
+
+    private val outboxDrain = OutboxDrain(store, maxConcurrency, ::prefetchAuthors, ::execute)
+
+    /**
+     * Apply every queued item, including items queued while draining.
+     * Returns true when some item failed but may succeed on a later run.
+     */
+    suspend fun drain(): Boolean = outboxDrain.drain()
+
+    /**
+     * Resolve the authors of every queued book with one lookup instead of
+     * one per book. A failure here is left to the books themselves.
+     */
+    private suspend fun prefetchAuthors(batch: List<OutboxItem>) {
+        val names = batch.mapNotNull { (it.mutation as? OutboxMutation.CreateBook)?.authorName }
+        if (names.isEmpty()) return
+
+        try {
+            authorResolver.prefetch(names)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Error prefetching authors", e)
+        }
+    }
+
+    private suspend fun execute(item: OutboxItem) {
+        when (val mutation = item.mutation) {
+            is OutboxMutation.CreateBook -> createBook(item, mutation)
+            is OutboxMutation.CreateListing -> createListing(item, mutation)
+            is OutboxMutation.CreateNotification -> createNotification(item, mutation)
+            is OutboxMutation.MarkNotificationsRead -> markNotificationsRead(mutation)
+            is OutboxMutation.AddToWishlist -> addToWishlist(item, mutation)
+            is OutboxMutation.RemoveFromWishlist -> removeFromWishlist(mutation)
+        }
+    }
+
+    private suspend fun createBook(item: OutboxItem, mutation: OutboxMutation.CreateBook) {
+        val imageKey = uploadImages(item, keyPrefix = "").firstOrNull()
+        markState(item, OutboxState.COMMITTING)
+
+        publishBookUseCase(
+            title = mutation.title,
+            isbn = mutation.isbn,
+            authorName = mutation.authorName,
+            imageKey = imageKey,
+            bookId = item.idempotencyKey
+        )
+    }
+
+    private suspend fun createListing(item: OutboxItem, mutation: OutboxMutation.CreateListing) {
+        val imageKeys = uploadImages(item, keyPrefix = "listing-")
+        markState(item, OutboxState.COMMITTING)
+
+        createListingUseCase(
+            bookId = mutation.bookId,
+            price = mutation.price,
+            imageKeys = imageKeys,
+            listingId = item.idempotencyKey
+        )
+    }
+
+    private suspend fun createNotification(item: OutboxItem, mutation: OutboxMutation.CreateNotification) {
+        markState(item, OutboxState.COMMITTING)
+        val notification = Notification.builder()
+            .title(mutation.title)
+            .body(mutation.body)
+            .recipient(mutation.recipient)
+            .read(false)
+            .type(NotificationType.valueOf(mutation.type))
+            .id(item.idempotencyKey)
+            .build()
+        createIdempotent(notification)
+    }
+
+    /**
+     * One request per [NotificationRequests.MAX_READS_PER_REQUEST] reads.
+     * Marking read again is harmless, so a partly applied item is simply
+     * retried.
+     */
+    private suspend fun markNotificationsRead(mutation: OutboxMutation.MarkNotificationsRead) {
+        mutation.notificationIds.chunked(NotificationRequests.MAX_READS_PER_REQUEST).forEach { ids ->
+            val response = Amplify.API.mutate(NotificationRequests.markRead(ids))
+            if (response.hasErrors()) {
+                val message = response.errors.first().message
+                // The read is already kept on the device; retrying a rejected update cannot help
+                if (response.errors.any { it.message.contains("Unauthorized", ignoreCase = true) }) {
+                    throw PermanentOutboxException("Not allowed to mark notifications read: $message")
+                }
+                throw Exception("Error marking notifications read: $message")
+            }
+        }
+    }
+
+    private suspend fun addToWishlist(item: OutboxItem, mutation: OutboxMutation.AddToWishlist) {
+        markState(item, OutboxState.COMMITTING)
+        val bookWishlist = BookWishlist.builder()
+            .book(Book.justId(mutation.bookId))
+            .list(Wishlist.justId(mutation.wishlistId))
+            .id(item.idempotencyKey)
+            .build()
+        createIdempotent(bookWishlist)
+    }
+
+    private suspend fun removeFromWishlist(mutation: OutboxMutation.RemoveFromWishlist) {
+        val response = Amplify.API.query(
+            ModelQuery.list(
+                BookWishlist::class.java,
+                BookWishlist.BOOK.eq(mutation.bookId).and(BookWishlist.LIST.eq(mutation.wishlistId))
+            )
+        )
+        if (response.hasErrors()) {
+            throw Exception("Error finding wishlist entry: ${response.errors.first().message}")
+        }
+
+        // Deleting nothing is fine: the entry is already gone
+        response.data.items.forEach { entry ->
+            val result = Amplify.API.mutate(ModelMutation.delete(entry))
+            if (result.hasErrors()) {
+                throw Exception("Error removing wishlist entry: ${result.errors.first().message}")
+            }
+        }
+    }
+
+    /**
+     * Upload the item's images, resuming earlier partial uploads
+     */
+    private suspend fun uploadImages(item: OutboxItem, keyPrefix: String): List<String> {
+        val files = item.mutation.imagePaths.map { File(it) }
+        if (files.isEmpty()) return emptyList()
+
+        files.firstOrNull { !it.exists() }?.let { missing ->
+            throw PermanentOutboxException("Queued image is missing: ${missing.path}")
+        }
+
+        markState(item, OutboxState.UPLOADING)
+        return uploader.uploadAll(item.id, files, keyPrefix)
+    }
+
+    private suspend fun markState(item: OutboxItem, state: OutboxState) {
+        store.update(item.id) { it.copy(state = state) }
+    }
+}
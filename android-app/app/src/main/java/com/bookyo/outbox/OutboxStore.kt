@@ -0,0 +1,130 @@
+package com.bookyo.outbox
+
+import android.content.Context
+import android.net.Uri
+import android.util.Log
+import com.bookyo.media.AmplifyUploadStorage
+import com.bookyo.media.PendingImageWriter
+import com.bookyo.media.ResumableUploader
+import com.bookyo.media.UploadCheckpointStore
+import com.bookyo.media.UploadStorage
+import com.bookyo.queue.QueueStore
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.emitAll
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.File
+
+/**
+ * Durable outbox shared by every offline-capable mutation. Items live in a
+ * single [QueueStore] log; their images and upload checkpoints live in one
+ * directory under filesDir, so the OS does not clear them like the cache.
+ */
+class OutboxStore private constructor(context: Context) : OutboxQueue {
+    companion object {
+        private const val TAG = "OutboxStore"
+
+        @Volatile
+        private var INSTANCE: OutboxStore? = null
+
+        fun getInstance(context: Context): OutboxStore {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: OutboxStore(context.applicationContext).also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val appContext = context.applicationContext
+
+    private val imagesDir = File(appContext.filesDir, "outbox_images")
+    private val imageWriter = PendingImageWriter(appContext)
+    private val checkpointStore = UploadCheckpointStore(imagesDir)
+
+    private val queue = QueueStore(
+        File(appContext.filesDir, "queues/outbox.log"),
+        OutboxItem.serializer()
+    ) { it.id }
+
+    private val openLock = Mutex()
+
+    @Volatile
+    private var migrated = false
+
+    /**
+     * Queue [mutation]. The caller schedules [OutboxWorker] afterwards.
+     */
+    suspend fun enqueue(mutation: OutboxMutation): OutboxItem {
+        val item = OutboxItem(mutation = mutation)
+        openQueue().enqueue(item)
+        Log.d(TAG, "Queued ${mutation::class.simpleName} ${item.id}")
+        return item
+    }
+
+    /**
+     * Copy a picked photo into the outbox, already transcoded for upload.
+     * Returns the local path to reference from a mutation.
+     */
+    suspend fun saveImage(uri: Uri): String {
+        return withContext(Dispatchers.Default) {
+            imageWriter.write(uri, imagesDir).absolutePath
+        }
+    }
+
+    suspend fun get(id: String): OutboxItem? = openQueue().get(id)
+
+    /**
+     * All items, oldest first
+     */
+    override suspend fun items(): List<OutboxItem> = openQueue().snapshot()
+
+    /**
+     * All items, oldest first, re-emitted on every change
+     */
+    fun observe(): Flow<List<OutboxItem>> = flow { emitAll(openQueue().observe()) }
+
+    override suspend fun update(id: String, transform: (OutboxItem) -> OutboxItem): OutboxItem? {
+        return openQueue().update(id, transform)
+    }
+
+    /**
+     * Put a failed item back in the queue with a fresh attempt budget
+     */
+    suspend fun requeue(id: String): OutboxItem? {
+        return update(id) { it.copy(state = OutboxState.QUEUED, attempts = 0, lastError = null) }
+    }
+
+    /**
+     * Remove an item, either committed or discarded, with its local files
+     */
+    override suspend fun remove(id: String) {
+        val removed = openQueue().remove(id) ?: return
+        withContext(Dispatchers.IO) {
+            removed.mutation.imagePaths.forEach { imageWriter.delete(it) }
+            checkpointStore.delete(id)
+        }
+        Log.d(TAG, "Removed ${removed.mutation::class.simpleName} $id")
+    }
+
+    /**
+     * Uploader that records progress next to the outbox images, so an
+     * interrupted drain resumes instead of restarting
+     */
+    fun createResumableUploader(storage: UploadStorage = AmplifyUploadStorage()): ResumableUploader {
+        return ResumableUploader(storage, checkpointStore)
+    }
+
+    private suspend fun openQueue(): QueueStore<OutboxItem> {
+        if (!migrated) {
+            openLock.withLock {
+                if (!migrated) {
+                    LegacyQueueMigration(appContext, imagesDir).migrateInto(queue)
+                    migrated = true
+                }
+            }
+        }
+        return queue
+    }
+}
@@ -0,0 +1,73 @@
+package com.bookyo.outbox
+
+import android.content.Context
+import android.util.Log
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import com.bookyo.utils.ConnectivityChecker
+import java.util.concurrent.TimeUnit
+
+/**
+ * The single WorkManager job that drains the outbox when internet is
+ * available. Every offline-capable mutation schedules this same job.
+ */
+class OutboxWorker(
+    context: Context,
+    params: WorkerParameters
+) : CoroutineWorker(context, params) {
+    companion object {
+        private const val TAG = "OutboxWorker"
+        private const val UNIQUE_WORK_NAME = "outbox_drain"
+
+        /**
+         * Schedule a drain. A drain already pending picks up everything
+         * queued before it starts; one already running may have read the
+         * outbox for the last time, so the new drain runs after it.
+         */
+        fun enqueueWork(context: Context) {
+            val constraints = Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build()
+
+            val workRequest = OneTimeWorkRequestBuilder<OutboxWorker>()
+                .setConstraints(constraints)
+                .setBackoffCriteria(
+                    BackoffPolicy.EXPONENTIAL,
+                    15,
+                    TimeUnit.SECONDS
+                )
+                .build()
+
+            WorkManager.getInstance(context).enqueueUniqueWork(
+                UNIQUE_WORK_NAME,
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                workRequest
+            )
+
+            Log.d(TAG, "Enqueued outbox drain")
+        }
+    }
+
+    override suspend fun doWork(): Result {
+        Log.d(TAG, "Starting outbox drain")
+
+        if (!ConnectivityChecker(applicationContext).isConnected()) {
+            Log.d(TAG, "No internet connection, retrying later")
+            return Result.retry()
+        }
+
+        return try {
+            val needsRetry = OutboxProcessor(applicationContext).drain()
+            if (needsRetry) Result.retry() else Result.success()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error draining outbox", e)
+            Result.retry()
+        }
+    }
+}
@@ -3,27 +3,17 @@ package com.bookyo.publish
 import android.content.Context
 import android.net.Uri
 import android.util.Log
-import androidx.datastore.core.DataStore
-import androidx.datastore.preferences.core.Preferences
-import androidx.datastore.preferences.core.edit
-import androidx.datastore.preferences.core.stringPreferencesKey
-import androidx.datastore.preferences.preferencesDataStore
+import com.bookyo.outbox.OutboxItem
+import com.bookyo.outbox.OutboxMutation
+import com.bookyo.outbox.OutboxState
+import com.bookyo.outbox.OutboxStore
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.catch
 import kotlinx.coroutines.flow.map
 import kotlinx.serialization.Serializable
-import kotlinx.serialization.encodeToString
-import kotlinx.serialization.json.Json
 import java.io.File
-import java.io.FileOutputStream
-import java.io.IOException
 import java.util.UUID
 
-// Extension function to create a DataStore in the Context
-private val Context.pendingPublishDataStore: DataStore<Preferences> by preferencesDataStore(
-    name = "pending_publish_requests"
-)
-
 /**
  * Serializable data class to hold pending publish data
  */
@@ -34,17 +24,18 @@ data class PendingPublishData(
     val isbn: String,
     val authorName: String,
     val imagePath: String? = null,
-    val timestamp: Long = System.currentTimeMillis()
+    val timestamp: Long = System.currentTimeMillis(),
+    val state: OutboxState = OutboxState.QUEUED
 )
 
 /**
- * Repository for handling pending book publish requests when offline
+ * Repository for handling pending book publish requests when offline.
+ * Requests are stored as [OutboxMutation.CreateBook] items of the outbox.
  */
-class PendingPublishRepository(private val context: Context) {
+class PendingPublishRepository(context: Context) {
     private val TAG = "PendingPublishRepo"
 
-    // Keys for DataStore
-    private val PENDING_PUBLISH_KEY = stringPreferencesKey("pending_publish_requests")
+    private val outbox = OutboxStore.getInstance(context)
 
     /**
      * Save a pending publish request
@@ -58,43 +49,25 @@ class PendingPublishRepository(private val context: Context) {
         // First save the image locally if it exists
         val localImagePath = imageUri?.let { saveImageLocally(it) }
 
-        // Create the pending publish data
-        val pendingPublish = PendingPublishData(
-            title = title,
-            isbn = isbn,
-            authorName = authorName,
-            imagePath = localImagePath
+        val item = outbox.enqueue(
+            OutboxMutation.CreateBook(
+                title = title,
+                isbn = isbn,
+                authorName = authorName,
+                imagePath = localImagePath
+            )
         )
 
-        // Retrieve current pending list
-        val currentPendingList = getPendingPublishes().toMutableList()
-
-        // Add the new request
-        currentPendingList.add(pendingPublish)
-
-        // Save the updated list
-        context.pendingPublishDataStore.edit { preferences ->
-            preferences[PENDING_PUBLISH_KEY] = Json.encodeToString(currentPendingList)
-        }
-
         Log.d(TAG, "Saved pending publish request: $title")
-        return pendingPublish
+        return item.toPendingPublish()!!
     }
 
     /**
-     * Get all pending publish requests
+     * Get all pending publish requests, newest first
      */
     suspend fun getPendingPublishes(): List<PendingPublishData> {
         return try {
-            context.pendingPublishDataStore.data.map { preferences ->
-                val pendingPublishJson = preferences[PENDING_PUBLISH_KEY] ?: return@map emptyList()
-                Json.decodeFromString<List<PendingPublishData>>(pendingPublishJson)
-            }.map { it.sortedByDescending { publish -> publish.timestamp } }
-                .map { it.filter { publish ->
-                    // Verify that the image still exists
-                    publish.imagePath == null || File(publish.imagePath).exists()
-                }}
-                .first()
+            outbox.items().mapNotNull { it.toPendingPublish() }.asReversed()
         } catch (e: Exception) {
             Log.e(TAG, "Error getting pending publishes", e)
             emptyList()
@@ -102,74 +75,47 @@ class PendingPublishRepository(private val context: Context) {
     }
 
     /**
-     * Get a flow of pending publish requests
+     * Get a flow of pending publish requests, newest first
      */
     fun getPendingPublishesFlow(): Flow<List<PendingPublishData>> {
-        return context.pendingPublishDataStore.data.map { preferences ->
-            try {
-                val pendingPublishJson = preferences[PENDING_PUBLISH_KEY] ?: return@map emptyList()
-                Json.decodeFromString<List<PendingPublishData>>(pendingPublishJson)
-                    .sortedByDescending { it.timestamp }
-                    .filter { it.imagePath == null || File(it.imagePath).exists() }
-            } catch (e: Exception) {
+        return outbox.observe()
+            .map { items -> items.mapNotNull { it.toPendingPublish() }.asReversed() }
+            .catch { e ->
                 Log.e(TAG, "Error observing pending publishes", e)
-                emptyList()
+                emit(emptyList())
             }
-        }
     }
 
     /**
      * Get a specific pending publish by ID
      */
     suspend fun getPendingPublishById(id: String): PendingPublishData? {
-        return getPendingPublishes().find { it.id == id }
+        return outbox.get(id)?.toPendingPublish()
     }
 
     /**
-     * Remove a pending publish request after it's successfully processed
+     * Put a failed publish back in the queue
      */
-    suspend fun removePendingPublish(id: String) {
-        val currentList = getPendingPublishes().toMutableList()
-        val itemToRemove = currentList.find { it.id == id }
-
-        if (itemToRemove != null) {
-            // Delete the image file if it exists
-            itemToRemove.imagePath?.let { File(it).delete() }
-
-            // Remove from the list
-            currentList.remove(itemToRemove)
-
-            // Save the updated list
-            context.pendingPublishDataStore.edit { preferences ->
-                preferences[PENDING_PUBLISH_KEY] = Json.encodeToString(currentList)
-            }
+    suspend fun retryPendingPublish(id: String) {
+        outbox.requeue(id)
+    }
 
-            Log.d(TAG, "Removed pending publish with ID: $id")
-        }
+    /**
+     * Remove a pending publish request, deleting its image
+     */
+    suspend fun removePendingPublish(id: String) {
+        outbox.remove(id)
+        Log.d(TAG, "Removed pending publish with ID: $id")
     }
 
     /**
-     * Save an image locally for later upload
+     * Save an image locally for later upload, already transcoded for upload
      */
-    private fun saveImageLocally(uri: Uri): String? {
+    private suspend fun saveImageLocally(uri: Uri): String? {
         return try {
-            // Create a directory for cached images
-            val cacheDir = File(context.cacheDir, "pending_images").apply {
-                if (!exists()) mkdirs()
+            outbox.saveImage(uri).also { path ->
+                Log.d(TAG, "Saved image locally at: $path")
             }
-
-            // Create a file for the image
-            val imageFile = File(cacheDir, "img_${System.currentTimeMillis()}.jpg")
-
-            // Copy the content from the URI to the file
-            context.contentResolver.openInputStream(uri)?.use { input ->
-                FileOutputStream(imageFile).use { output ->
-                    input.copyTo(output)
-                }
-            } ?: throw IOException("Could not open input stream")
-
-            Log.d(TAG, "Saved image locally at: ${imageFile.absolutePath}")
-            imageFile.absolutePath
         } catch (e: Exception) {
             Log.e(TAG, "Error saving image locally", e)
             null
@@ -188,4 +134,17 @@ class PendingPublishRepository(private val context: Context) {
             null
         }
     }
-}
\ No newline at end of file
+
+    private fun OutboxItem.toPendingPublish(): PendingPublishData? {
+        val book = mutation as? OutboxMutation.CreateBook ?: return null
+        return PendingPublishData(
+            id = id,
+            title = book.title,
+            isbn = book.isbn,
+            authorName = book.authorName,
+            imagePath = book.imagePath,
+            timestamp = createdAt,
+            state = state
+        )
+    }
+}
@@ -0,0 +1,70 @@
+package com.bookyo.publish
+
+import android.util.Log
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.NotificationType
+import com.bookyo.data.AuthorResolver
+import com.bookyo.data.CatalogApi
+import com.bookyo.outbox.OutboxMutation
+import kotlinx.coroutines.CancellationException
+
+/**
+ * Creates a book (and its author when new) from already uploaded data.
+ * Shared by the publish screen and the outbox drain.
+ */
+class PublishBookUseCase(
+    private val api: CatalogApi,
+    private val authorResolver: AuthorResolver = AuthorResolver(api),
+    private val queueNotification: suspend (OutboxMutation.CreateNotification) -> Unit
+) {
+    companion object {
+        private const val TAG = "PublishBookUseCase"
+    }
+
+    /**
+     * @param imageKey storage key of the already uploaded cover, if any
+     * @param bookId id for the new book; the outbox passes its idempotency
+     * key so a replayed publish does not create a second book
+     */
+    suspend operator fun invoke(
+        title: String,
+        isbn: String,
+        authorName: String,
+        imageKey: String? = null,
+        bookId: String? = null
+    ): Book {
+        val author = try {
+            authorResolver.resolve(authorName)
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            throw Exception("Failed to process author: ${e.message}", e)
+        }
+
+        val book = Book.builder().title(title).isbn(isbn).author(author).apply {
+            imageKey?.let { thumbnail(it) }
+            bookId?.let { id(it) }
+        }.build()
+
+        val created = api.createBook(book)
+        Log.d(TAG, "Successfully created book: ${book.title}")
+
+        // Queued rather than sent, so a failure is retried without failing the book
+        try {
+            queueNotification(
+                OutboxMutation.CreateNotification(
+                    title = "New Book Available",
+                    body = "\"${book.title}\" by ${author.name} is now available!",
+                    recipient = "*", // Broadcast to all users
+                    type = NotificationType.NEW_BOOK.name
+                )
+            )
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            Log.e(TAG, "Failed to queue notification", e)
+        }
+
+        return created
+    }
+}
@@ -86,6 +86,7 @@ import com.bookyo.components.BottomNavigationBar
 import com.bookyo.components.ToastHandler
 import com.bookyo.components.rememberToastState
 import com.bookyo.home.HomeScreenActivity
+import com.bookyo.outbox.OutboxState
 import com.bookyo.ui.BookyoTheme
 import com.bookyo.ui.lightGray
 import com.bookyo.ui.orange
@@ -494,7 +495,7 @@ fun PendingPublishItem(
                     Spacer(modifier = Modifier.width(4.dp))
 
                     Text(
-                        text = "Pending",
+                        text = if (pendingPublish.state == OutboxState.FAILED) "Failed" else "Pending",
                         style = MaterialTheme.typography.bodySmall,
                         color = orange,
                         fontWeight = FontWeight.Bold
@@ -8,26 +8,20 @@ import androidx.compose.runtime.mutableStateOf
 import androidx.compose.runtime.setValue
 import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
-import com.amplifyframework.api.graphql.model.ModelMutation
-import com.amplifyframework.api.graphql.model.ModelQuery
-import com.amplifyframework.datastore.generated.model.Author
-import com.amplifyframework.datastore.generated.model.Book
-import com.amplifyframework.datastore.generated.model.Notification
-import com.amplifyframework.datastore.generated.model.NotificationType
-import com.amplifyframework.kotlin.core.Amplify
-import com.amplifyframework.storage.StoragePath
 import com.bookyo.analytics.BookyoAnalytics
+import com.bookyo.data.AmplifyCatalogApi
+import com.bookyo.data.AuthorResolver
+import com.bookyo.data.DataStoreAuthorNameStore
+import com.bookyo.media.ImageUploader
+import com.bookyo.outbox.OutboxStore
+import com.bookyo.outbox.OutboxWorker
 import com.bookyo.utils.ConnectivityChecker
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.ExperimentalCoroutinesApi
-import kotlinx.coroutines.FlowPreview
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
-import java.io.File
-import java.util.UUID
 
 enum class PublishState {
     IDLE,
@@ -67,6 +61,19 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
     // Connectivity checker
     private val connectivityChecker = ConnectivityChecker(application)
 
+    // Resizes, strips EXIF and uploads full + thumbnail variants
+    private val imageUploader = ImageUploader(application)
+
+    private val catalogApi = AmplifyCatalogApi()
+
+    private val publishBookUseCase = PublishBookUseCase(
+        catalogApi,
+        AuthorResolver(catalogApi, DataStoreAuthorNameStore(application))
+    ) { notification ->
+        OutboxStore.getInstance(application).enqueue(notification)
+        OutboxWorker.enqueueWork(application)
+    }
+
     init {
         // Observe connectivity changes
         viewModelScope.launch {
@@ -81,7 +88,7 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
                         val pendingCount = pendingPublishRepository.getPendingPublishes().size
                         if (pendingCount > 0) {
                             Log.d(TAG, "Connectivity restored with $pendingCount pending publishes")
-                            PendingPublishWorker.enqueueWork(getApplication())
+                            OutboxWorker.enqueueWork(getApplication())
                         }
                     }
                 }
@@ -190,10 +197,8 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
             )
 
             // Enqueue work to process when internet is available
-            PendingPublishWorker.enqueueSpecificWork(
-                getApplication(),
-                pendingPublishData.id
-            )
+            OutboxWorker.enqueueWork(getApplication())
+            Log.d(TAG, "Queued pending publish ${pendingPublishData.id}")
 
             // Update UI state
             _uiState.value = _uiState.value.copy(
@@ -215,7 +220,7 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
     }
 
     /**
-     * Synchronous version of publishBook that can be called from the worker
+     * Synchronous version of publishBook
      * Returns true if successful, false otherwise
      */
     suspend fun publishBookSync(): Boolean {
@@ -232,8 +237,7 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
             try {
                 val imageKey = selectedImageUri?.let { uri ->
                     try {
-                        "${UUID.randomUUID()}.jpg".also { key ->
-                            uploadImage(key, uri)
+                        uploadImage(uri).also {
                             Log.d(TAG, "Uploaded Image successfully")
                         }
                     } catch (e: Exception) {
@@ -242,48 +246,12 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
                     }
                 }
 
-                val authorEntity = try {
-                    checkAuthorByName(authorName) ?: run {
-                        val newAuthor = Author.builder().name(authorName).build()
-                        Amplify.API.mutate(ModelMutation.create(newAuthor)).data.also {
-                            Log.d(TAG, "Created new author: ${it.name}")
-                        }
-                    }
-                } catch (e: Exception) {
-                    throw Exception("Failed to process author: ${e.message}")
-                }
-
-                val book = Book.builder().title(title).isbn(isbn).author(authorEntity).apply {
-                    imageKey?.let { thumbnail(it) }
-                }.build()
-
-                val createBookResult = Amplify.API.mutate(ModelMutation.create(book))
-                if (createBookResult.hasErrors()) {
-                    throw Exception("Error creating book: ${createBookResult.errors.first().message}")
-                }
-
-                Log.d(TAG, "Successfully created book: ${book.title}")
-
-                // Create notification about the new book
-                try {
-                    val notification = Notification.builder()
-                        .title("New Book Available")
-                        .body("\"${book.title}\" by ${authorEntity.name} is now available!")
-                        .recipient("*") // Broadcast to all users
-                        .read(false)
-                        .type(NotificationType.NEW_BOOK)
-                        .build()
-
-                    val createNotificationResult = Amplify.API.mutate(ModelMutation.create(notification))
-                    if (createNotificationResult.hasErrors()) {
-                        Log.e(TAG, "Error creating notification: ${createNotificationResult.errors.first().message}")
-                    } else {
-                        Log.d(TAG, "Created notification about new book")
-                    }
-                } catch (e: Exception) {
-                    // Just log the error - don't fail the book creation
-                    Log.e(TAG, "Failed to create notification", e)
-                }
+                publishBookUseCase(
+                    title = title,
+                    isbn = isbn,
+                    authorName = authorName,
+                    imageKey = imageKey
+                )
 
                 BookyoAnalytics.trackApiCall(
                     endpoint = "createBook",
@@ -307,50 +275,9 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
         }
     }
 
-    private suspend fun checkAuthorByName(name: String): Author? {
-        try {
-            val res = Amplify.API.query(
-                ModelQuery.list(Author::class.java, Author.NAME.eq(name))
-            )
-
-            if (res.hasErrors()) {
-                throw Exception("Error querying authors: ${res.errors.first().message}")
-            }
-
-            return res.data.items.firstOrNull()?.let { author ->
-                Log.d(TAG, "Found author $name")
-                author
-            }
-        } catch (e: Exception) {
-            Log.e(TAG, "Failed to check author", e)
-            throw Exception("Failed to check author $name: ${e.message}")
-        }
-    }
-
-    @OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
-    private suspend fun uploadImage(key: String, uri: Uri): String {
+    private suspend fun uploadImage(uri: Uri): String {
         return try {
-            val contentResolver = getApplication<Application>().contentResolver
-
-            val tempFile = withContext(Dispatchers.IO) {
-                File.createTempFile("upload", ".jpg")
-            }.apply {
-                deleteOnExit()
-            }
-
-            contentResolver.openInputStream(uri)?.use { input ->
-                tempFile.outputStream().use { output ->
-                    input.copyTo(output)
-                }
-            } ?: throw Exception("Failed to read image content")
-
-            Amplify.Storage.uploadFile(
-                StoragePath.fromString("images/$key"), tempFile
-            )
-
-
-            tempFile.delete()
-
+            val key = imageUploader.upload(uri)
             Log.d(TAG, "Successfully uploaded image: $key")
             key
         } catch (e: Exception) {
@@ -372,8 +299,9 @@ class PublishViewModel(application: Application) : AndroidViewModel(application)
      */
     fun retryPendingPublish(pendingId: String) {
         viewModelScope.launch {
+            pendingPublishRepository.retryPendingPublish(pendingId)
             if (connectivityChecker.isConnected()) {
-                PendingPublishWorker.enqueueSpecificWork(getApplication(), pendingId)
+                OutboxWorker.enqueueWork(getApplication())
                 _uiState.value = _uiState.value.copy(
                     successMessage = "Retrying publish..."
                 )
@@ -0,0 +1,92 @@
+package com.bookyo.searchFeed
+
+import com.amplifyframework.core.model.LoadedModelReference
+import com.amplifyframework.datastore.generated.model.Author
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.User
+import com.bookyo.core.IncrementalMapper
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+
+/**
+ * Turns fetched and cached entities into feed UI models on
+ * [Dispatchers.Default]. Only entities that are new or changed since they
+ * were last mapped are converted; the rest keep their model.
+ */
+class FeedMapper {
+    private val bookMapper = IncrementalMapper<Book, BookUIModel>(
+        idOf = { it.id },
+        isCurrent = { book, model -> book.matches(model) },
+        convert = { it.toUiModel() }
+    )
+
+    private val listingMapper = IncrementalMapper<Listing, ListingUIModel>(
+        idOf = { it.id },
+        isCurrent = { listing, model -> listing.matches(model) },
+        convert = { it.toUiModel() }
+    )
+
+    suspend fun books(items: Iterable<Book>): List<BookUIModel> {
+        return withContext(Dispatchers.Default) { bookMapper.map(items) }
+    }
+
+    suspend fun listings(items: Iterable<Listing>): List<ListingUIModel> {
+        return withContext(Dispatchers.Default) { listingMapper.map(items) }
+    }
+
+    private fun Book.loadedAuthor(): Author? = (author as? LoadedModelReference<Author>)?.value
+
+    private fun Book.matches(model: BookUIModel): Boolean {
+        val loadedAuthor = loadedAuthor() ?: return false
+        return model.title == title &&
+            model.isbn == isbn &&
+            model.thumbnail == thumbnail &&
+            model.author.id == loadedAuthor.id &&
+            model.author.name == loadedAuthor.name
+    }
+
+    private fun Listing.matches(model: ListingUIModel): Boolean {
+        val loadedUser = (user as? LoadedModelReference<User>)?.value ?: return false
+        val loadedBook = (book as? LoadedModelReference<Book>)?.value ?: return false
+        return model.price == price &&
+            model.seller == loadedUser.email &&
+            loadedBook.id == model.book.id &&
+            loadedBook.matches(model.book)
+    }
+
+    private fun Book.toUiModel(): BookUIModel? {
+        return try {
+            val loadedAuthor = loadedAuthor() ?: return null
+            BookUIModel(
+                id = id,
+                title = title,
+                author = AuthorUIModel(
+                    id = loadedAuthor.id,
+                    name = loadedAuthor.name
+                ),
+                isbn = isbn,
+                thumbnail = thumbnail
+            )
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    private fun Listing.toUiModel(): ListingUIModel? {
+        return try {
+            val loadedUser = (user as? LoadedModelReference<User>)?.value ?: return null
+            val loadedBook = (book as? LoadedModelReference<Book>)?.value ?: return null
+            val bookModel = bookMapper.map(loadedBook)?.copy(isListed = true) ?: return null
+
+            ListingUIModel(
+                id = id,
+                book = bookModel,
+                seller = loadedUser.email,
+                price = price
+            )
+        } catch (e: Exception) {
+            null
+        }
+    }
+}
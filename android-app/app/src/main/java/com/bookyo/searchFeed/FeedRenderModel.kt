@@ -0,0 +1,64 @@
+package com.bookyo.searchFeed
+
+import androidx.compose.runtime.Immutable
+
+/**
+ * A book in the search results, with its cheapest listing if it has one
+ */
+@Immutable
+data class SearchResultRow(
+    val book: BookUIModel,
+    val listing: ListingUIModel?
+)
+
+/**
+ * Everything the feed lists draw, built off the main thread whenever the
+ * data changes, so composition only reads it.
+ *
+ * Rows that did not change keep their instance, which lets the lists skip
+ * them on recomposition.
+ */
+@Immutable
+data class FeedRenderModel(
+    val listings: List<ListingUIModel> = emptyList(),
+    val books: List<BookUIModel> = emptyList(),
+    // Null while no query is typed
+    val searchResults: List<SearchResultRow>? = null
+) {
+    companion object {
+        // Lazy list content types, so rows of one kind reuse each other's layout
+        const val LISTING_ROW = "listing"
+        const val BOOK_ROW = "book"
+        const val LOADING_ROW = "loading"
+
+        /**
+         * Rows for [books], [listings] and the current [searchResults], with
+         * books flagged as listed when their id is in [listedBookIds]
+         */
+        fun build(
+            books: List<BookUIModel>,
+            listings: List<ListingUIModel>,
+            listedBookIds: Set<String>,
+            searchResults: List<BookUIModel>?
+        ): FeedRenderModel {
+            val cheapestListing = HashMap<String, ListingUIModel>(listings.size)
+            for (listing in listings) {
+                val current = cheapestListing[listing.book.id]
+                if (current == null || listing.price < current.price) cheapestListing[listing.book.id] = listing
+            }
+
+            return FeedRenderModel(
+                listings = listings,
+                books = books.map { it.withListedFlag(listedBookIds) },
+                searchResults = searchResults?.map { book ->
+                    SearchResultRow(book.withListedFlag(listedBookIds), cheapestListing[book.id])
+                }
+            )
+        }
+
+        private fun BookUIModel.withListedFlag(listedBookIds: Set<String>): BookUIModel {
+            val isListed = id in listedBookIds
+            return if (this.isListed == isListed) this else copy(isListed = isListed)
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.bookyo.searchFeed
+
+/**
+ * Process-wide [SearchIndex] over every book the app has loaded, so text
+ * search answers each keystroke on-device and offline. Books are added as
+ * they sync; [rebuild] starts over from the local cache.
+ */
+class LocalBookSearch private constructor() {
+    companion object {
+        @Volatile
+        private var INSTANCE: LocalBookSearch? = null
+
+        fun getInstance(): LocalBookSearch {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: LocalBookSearch().also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val lock = Any()
+    private val index = SearchIndex()
+    private val books = HashMap<String, BookUIModel>()
+
+    val size: Int
+        get() = synchronized(lock) { index.size }
+
+    fun addAll(models: Collection<BookUIModel>) {
+        if (models.isEmpty()) return
+        synchronized(lock) {
+            for (book in models) {
+                books[book.id] = book
+                index.upsert(book.toDocument())
+            }
+        }
+    }
+
+    fun rebuild(models: Collection<BookUIModel>) {
+        synchronized(lock) {
+            books.clear()
+            models.associateByTo(books) { it.id }
+            index.rebuild(models.map { it.toDocument() })
+        }
+    }
+
+    /**
+     * Matching books, best first
+     */
+    fun search(query: String, limit: Int = SearchIndex.DEFAULT_LIMIT): List<BookUIModel> {
+        return synchronized(lock) {
+            index.search(query, limit).mapNotNull { books[it.id] }
+        }
+    }
+
+    private fun BookUIModel.toDocument() = SearchIndex.Document(
+        id = id,
+        title = title,
+        author = author.name,
+        isbn = isbn
+    )
+}
@@ -0,0 +1,134 @@
+package com.bookyo.searchFeed
+
+import kotlinx.coroutines.sync.Mutex
+
+/**
+ * One page from a cursor-paged source. [next] loads the following page,
+ * null when this is the last one.
+ */
+data class Page<C, T>(val items: List<T>, val next: C?)
+
+/**
+ * Cursor-based pager keeping a bounded window of pages in memory.
+ *
+ * Pages are appended with [loadNext]. Once more than [maxPages] are held,
+ * the oldest page is dropped and only its cursor is kept, so [loadPrevious]
+ * can bring it back when the user scrolls up again (dropping the newest
+ * page in turn). Items are mapped once, when their page loads; appending
+ * never re-maps what is already in the window.
+ *
+ * A load that is requested while another one runs is skipped, so scroll
+ * callbacks can call [loadNext] freely.
+ */
+class Pager<C, T>(
+    private val maxPages: Int = DEFAULT_MAX_PAGES,
+    private val load: suspend (cursor: C?) -> Page<C, T>
+) {
+    companion object {
+        const val DEFAULT_MAX_PAGES = 10
+    }
+
+    private class LoadedPage<C, T>(val cursor: C?, val items: List<T>, val next: C?)
+
+    private val mutex = Mutex()
+    private val pages = ArrayDeque<LoadedPage<C, T>>()
+
+    // Cursors of pages dropped from the front of the window, oldest first
+    private val droppedCursors = ArrayDeque<C?>()
+
+    private var loadedOnce = false
+
+    /**
+     * Items currently in the window, in order
+     */
+    var items: List<T> = emptyList()
+        private set
+
+    /**
+     * Whether the first page has been loaded
+     */
+    val isLoaded: Boolean
+        get() = loadedOnce
+
+    /**
+     * Whether there are pages after the window
+     */
+    val hasNext: Boolean
+        get() = !loadedOnce || pages.lastOrNull()?.next != null
+
+    /**
+     * Whether pages before the window were dropped and can be reloaded
+     */
+    val hasPrevious: Boolean
+        get() = droppedCursors.isNotEmpty()
+
+    /**
+     * Discard the window and load the first page
+     */
+    suspend fun refresh() {
+        mutex.lock()
+        try {
+            val first = load(null)
+            pages.clear()
+            droppedCursors.clear()
+            pages.addLast(LoadedPage(null, first.items, first.next))
+            loadedOnce = true
+            rebuildItems()
+        } finally {
+            mutex.unlock()
+        }
+    }
+
+    /**
+     * Append the next page. Returns false when nothing was loaded, either
+     * because the end was reached or another load is running.
+     */
+    suspend fun loadNext(): Boolean {
+        if (!loadedOnce) {
+            refresh()
+            return true
+        }
+        if (!mutex.tryLock()) return false
+        try {
+            val cursor = pages.lastOrNull()?.next ?: return false
+            val page = load(cursor)
+            pages.addLast(LoadedPage(cursor, page.items, page.next))
+
+            if (pages.size > maxPages) {
+                droppedCursors.addLast(pages.removeFirst().cursor)
+            }
+            rebuildItems()
+            return true
+        } finally {
+            mutex.unlock()
+        }
+    }
+
+    /**
+     * Reload the page just before the window. Returns false when nothing
+     * was loaded.
+     */
+    suspend fun loadPrevious(): Boolean {
+        if (!mutex.tryLock()) return false
+        try {
+            if (droppedCursors.isEmpty()) return false
+            val cursor = droppedCursors.last()
+            val page = load(cursor)
+            droppedCursors.removeLast()
+            pages.addFirst(LoadedPage(cursor, page.items, page.next))
+
+            // The new last page still points at the dropped one through its cursor
+            if (pages.size > maxPages) {
+                pages.removeLast()
+            }
+            rebuildItems()
+            return true
+        } finally {
+            mutex.unlock()
+        }
+    }
+
+    private fun rebuildItems() {
+        items = pages.flatMap { it.items }
+    }
+}
@@ -0,0 +1,152 @@
+package com.bookyo.searchFeed
+
+import com.amplifyframework.core.model.query.predicate.QueryPredicate
+import com.amplifyframework.core.model.query.predicate.QueryPredicateGroup
+import com.amplifyframework.datastore.generated.model.Book
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.debounce
+import kotlinx.coroutines.flow.distinctUntilChangedBy
+import kotlinx.coroutines.flow.flatMapLatest
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.flow.map
+import java.util.Locale
+
+/**
+ * Progress of the server search for one query
+ */
+sealed class RemoteSearchState {
+    data object Idle : RemoteSearchState()
+    data class Searching(val query: String) : RemoteSearchState()
+    data class Done(val query: String, val books: List<BookUIModel>) : RemoteSearchState()
+    data class Failed(val query: String, val error: Exception) : RemoteSearchState()
+}
+
+/**
+ * Server-side book search, for queries the on-device index cannot answer.
+ *
+ * Keystrokes are debounced, and a new query cancels the request still
+ * running for the previous one, so a fast typist sends one request per
+ * pause and stale results never replace newer ones. Results are kept for
+ * [ttlMs] per normalized query, so editing back to a recent query costs no
+ * request. Debouncing and requests run on [dispatcher].
+ */
+class RemoteBookSearch(
+    private val fetch: suspend (QueryPredicate) -> List<BookUIModel>,
+    private val debounceMs: Long = DEBOUNCE_MS,
+    private val ttlMs: Long = TTL_MS,
+    private val dispatcher: CoroutineDispatcher = Dispatchers.Default,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    companion object {
+        const val DEBOUNCE_MS = 300L
+        const val TTL_MS = 2 * 60 * 1000L
+
+        // Queries remembered at once
+        private const val MAX_CACHED_QUERIES = 32
+
+        private val WHITESPACE = Regex("\\s+")
+        private val ISBN_LIKE = Regex("[\\d\\s-]*\\d[\\d\\s-]*[xX]?")
+
+        /**
+         * Key under which results for [text] are cached
+         */
+        fun normalize(text: String): String = clean(text).lowercase(Locale.ROOT)
+
+        private fun clean(text: String): String = text.trim().replace(WHITESPACE, " ")
+
+        /**
+         * Filter for books matching [text]. ISBNs match by prefix, with or
+         * without hyphens. Titles match by substring; the backend compares
+         * case-sensitively, so the common casings are tried.
+         */
+        fun predicateFor(text: String): QueryPredicate {
+            val typed = clean(text)
+            val predicates: List<QueryPredicate> = if (typed.matches(ISBN_LIKE)) {
+                listOf(typed, typed.filter { it.isLetterOrDigit() })
+                    .distinct()
+                    .map { Book.ISBN.beginsWith(it) }
+            } else {
+                val capitalized = typed.split(' ').joinToString(" ") { word ->
+                    word.replaceFirstChar { it.titlecase(Locale.ROOT) }
+                }
+                listOf(typed, typed.lowercase(Locale.ROOT), capitalized)
+                    .distinct()
+                    .map { Book.TITLE.contains(it) }
+            }
+            return predicates.singleOrNull() ?: QueryPredicateGroup(QueryPredicateGroup.Type.OR, predicates)
+        }
+    }
+
+    private class Entry(val books: List<BookUIModel>, val fetchedAt: Long)
+
+    // Least recently used first
+    private val cache = object : LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>): Boolean {
+            return size > MAX_CACHED_QUERIES
+        }
+    }
+
+    /**
+     * Search state for each query of [queries]. A query is sent only if
+     * [shouldFetch] returns true for it once typing pauses; blank queries
+     * reset to [RemoteSearchState.Idle] at once.
+     */
+    @OptIn(FlowPreview::class, ExperimentalCoroutinesApi::class)
+    fun results(
+        queries: Flow<String>,
+        shouldFetch: suspend (String) -> Boolean = { true }
+    ): Flow<RemoteSearchState> {
+        return queries
+            .map { clean(it) }
+            .debounce { if (it.isEmpty()) 0L else debounceMs }
+            .distinctUntilChangedBy { normalize(it) }
+            .flatMapLatest { text -> search(text, shouldFetch) }
+            .flowOn(dispatcher)
+    }
+
+    private fun search(text: String, shouldFetch: suspend (String) -> Boolean): Flow<RemoteSearchState> = flow {
+        val key = normalize(text)
+        if (key.isEmpty()) {
+            emit(RemoteSearchState.Idle)
+            return@flow
+        }
+
+        cached(key)?.let {
+            emit(RemoteSearchState.Done(key, it))
+            return@flow
+        }
+        if (!shouldFetch(text)) {
+            emit(RemoteSearchState.Idle)
+            return@flow
+        }
+
+        emit(RemoteSearchState.Searching(key))
+        val books = try {
+            fetch(predicateFor(text))
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            emit(RemoteSearchState.Failed(key, e))
+            return@flow
+        }
+        synchronized(cache) { cache[key] = Entry(books, clock()) }
+        emit(RemoteSearchState.Done(key, books))
+    }
+
+    private fun cached(key: String): List<BookUIModel>? {
+        synchronized(cache) {
+            val entry = cache[key] ?: return null
+            if (clock() - entry.fetchedAt > ttlMs) {
+                cache.remove(key)
+                return null
+            }
+            return entry.books
+        }
+    }
+}
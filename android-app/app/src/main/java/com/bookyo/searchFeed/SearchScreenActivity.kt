@@ -11,6 +11,7 @@ import androidx.compose.ui.Modifier
 import androidx.compose.ui.res.painterResource
 import androidx.compose.ui.unit.dp
 import com.bookyo.R
+import com.bookyo.components.BookyoTextField
 import com.bookyo.components.BottomNavigationBar
 import com.bookyo.components.Navigation
 import com.bookyo.components.ToastHandler
@@ -20,7 +21,9 @@ import androidx.compose.ui.Alignment
 import androidx.compose.foundation.lazy.LazyColumn
 import androidx.compose.foundation.lazy.items
 import androidx.compose.foundation.lazy.rememberLazyListState
+import androidx.compose.runtime.saveable.rememberSaveable
 import com.bookyo.bookDetail.BookDetailActivity
+import kotlinx.coroutines.flow.distinctUntilChanged
 
 class SearchScreenActivity: ComponentActivity() {
 
@@ -48,6 +51,12 @@ fun SearchScreen(viewModel: SearchScreenViewModel) {
     val tabTitles = listOf("Listings", "Books")
     val tabIcons = listOf(R.drawable.ic_shopping_cart, R.drawable.ic_book)
 
+    // One scroll state per tab, so switching tabs keeps each position
+    val listingsListState = rememberLazyListState()
+    val booksListState = rememberLazyListState()
+
+    var queryText by rememberSaveable { mutableStateOf("") }
+
     Scaffold(
         topBar = {
             Column {
@@ -90,6 +99,25 @@ fun SearchScreen(viewModel: SearchScreenViewModel) {
                     }
                 )
 
+                // Search field
+                BookyoTextField(
+                    value = queryText,
+                    onValueChange = {
+                        queryText = it
+                        viewModel.onQueryChange(it)
+                    },
+                    label = "Search by title, author or ISBN",
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(horizontal = 16.dp, vertical = 8.dp),
+                    leadingIcon = {
+                        Icon(
+                            painter = painterResource(id = R.drawable.ic_search),
+                            contentDescription = "Search"
+                        )
+                    }
+                )
+
                 // Tab Row
                 TabRow(
                     selectedTabIndex = selectedTabIndex,
@@ -135,14 +163,46 @@ fun SearchScreen(viewModel: SearchScreenViewModel) {
 
                 is SearchScreenUIState.Success -> {
                     val successState = uiState as SearchScreenUIState.Success
-                    val listState = rememberLazyListState()
+                    val feed = successState.feed
+                    val searchResults = feed.searchResults
+                    val section = if (selectedTabIndex == 0) FeedSection.LISTINGS else FeedSection.BOOKS
+                    val paging = if (section == FeedSection.LISTINGS) successState.listingsPaging else successState.booksPaging
+                    val itemCount = if (section == FeedSection.LISTINGS) feed.listings.size else feed.books.size
+
+                    val listState = if (section == FeedSection.LISTINGS) listingsListState else booksListState
 
-                    // Check if we should display empty state
-                    val displayBooks = selectedTabIndex == 1 && successState.books.isNotEmpty()
-                    val displayListings = selectedTabIndex == 0 && successState.books.any { it.isListed } &&
-                            successState.listings != null && successState.listings.isNotEmpty()
+                    // Ask for more while scrolling, before the end is reached
+                    LaunchedEffect(listState, section) {
+                        snapshotFlow {
+                            val layoutInfo = listState.layoutInfo
+                            Triple(
+                                listState.firstVisibleItemIndex,
+                                layoutInfo.visibleItemsInfo.lastOrNull()?.index ?: 0,
+                                layoutInfo.totalItemsCount
+                            )
+                        }
+                            .distinctUntilChanged()
+                            .collect { (first, last, total) ->
+                                if (total > 0) viewModel.onScrollPosition(section, first, last, total)
+                            }
+                    }
 
-                    if (!displayBooks && !displayListings) {
+                    if (searchResults != null) {
+                        SearchResults(
+                            query = successState.query,
+                            results = searchResults,
+                            isSearching = successState.isSearchingRemotely,
+                            onBookClick = { book ->
+                                context.startActivity(BookDetailActivity.createIntent(context, book.id))
+                            }
+                        )
+                    } else if (itemCount == 0 && paging.isLoadingMore) {
+                        // First page of this tab is still loading
+                        CircularProgressIndicator(
+                            modifier = Modifier.align(Alignment.Center),
+                            color = MaterialTheme.colorScheme.primary
+                        )
+                    } else if (itemCount == 0) {
                         // Empty state for current tab
                         Column(
                             modifier = Modifier
@@ -167,27 +227,30 @@ fun SearchScreen(viewModel: SearchScreenViewModel) {
                             contentPadding = PaddingValues(vertical = 16.dp),
                             verticalArrangement = Arrangement.spacedBy(8.dp)
                         ) {
-                            if (selectedTabIndex == 0 && successState.listings != null) {
+                            if (section == FeedSection.LISTINGS) {
                                 // Listings tab
-                                val listedBooks = successState.books.filter { it.isListed }
-                                items(listedBooks) { book ->
-                                    // Find matching listing by ID
-                                    val listing = successState.listings.find { it.id == book.id }
-                                    if (listing != null) {
-                                        BookCard(
-                                            book = book,
-                                            listing = listing,
-                                            onClick = {
-                                                context.startActivity(
-                                                    BookDetailActivity.createIntent(context, book.id)
-                                                )
-                                            }
-                                        )
-                                    }
+                                items(
+                                    feed.listings,
+                                    key = { it.id },
+                                    contentType = { FeedRenderModel.LISTING_ROW }
+                                ) { listing ->
+                                    BookCard(
+                                        book = listing.book,
+                                        listing = listing,
+                                        onClick = {
+                                            context.startActivity(
+                                                BookDetailActivity.createIntent(context, listing.book.id)
+                                            )
+                                        }
+                                    )
                                 }
                             } else {
                                 // Books tab
-                                items(successState.books) { book ->
+                                items(
+                                    feed.books,
+                                    key = { it.id },
+                                    contentType = { FeedRenderModel.BOOK_ROW }
+                                ) { book ->
                                     BookCard(
                                         book = book,
                                         onClick = {
@@ -200,8 +263,8 @@ fun SearchScreen(viewModel: SearchScreenViewModel) {
                             }
 
                             // Loading more indicator
-                            if (successState.isLoadingMore) {
-                                item {
+                            if (paging.isLoadingMore) {
+                                item(key = "loading_more", contentType = FeedRenderModel.LOADING_ROW) {
                                     Box(
                                         modifier = Modifier
                                             .fillMaxWidth()
@@ -274,4 +337,73 @@ fun SearchScreen(viewModel: SearchScreenViewModel) {
             ToastHandler(toastState)
         }
     }
-}
\ No newline at end of file
+}
+
+@Composable
+private fun SearchResults(
+    query: String,
+    results: List<SearchResultRow>,
+    isSearching: Boolean,
+    onBookClick: (BookUIModel) -> Unit
+) {
+    if (results.isEmpty() && isSearching) {
+        Box(modifier = Modifier.fillMaxSize(), contentAlignment = Alignment.Center) {
+            CircularProgressIndicator(color = MaterialTheme.colorScheme.primary)
+        }
+        return
+    }
+
+    if (results.isEmpty()) {
+        Column(
+            modifier = Modifier
+                .fillMaxSize()
+                .padding(16.dp),
+            horizontalAlignment = Alignment.CenterHorizontally,
+            verticalArrangement = Arrangement.Center
+        ) {
+            Text(
+                text = "No books match \"$query\"",
+                style = MaterialTheme.typography.bodyLarge,
+                color = MaterialTheme.colorScheme.onSurfaceVariant
+            )
+        }
+        return
+    }
+
+    LazyColumn(
+        modifier = Modifier
+            .fillMaxSize()
+            .padding(horizontal = 16.dp),
+        contentPadding = PaddingValues(vertical = 16.dp),
+        verticalArrangement = Arrangement.spacedBy(8.dp)
+    ) {
+        items(
+            results,
+            key = { it.book.id },
+            contentType = { if (it.listing != null) FeedRenderModel.LISTING_ROW else FeedRenderModel.BOOK_ROW }
+        ) { row ->
+            BookCard(
+                book = row.book,
+                listing = row.listing,
+                onClick = { onBookClick(row.book) }
+            )
+        }
+
+        // More results may still come from the server
+        if (isSearching) {
+            item(key = "searching", contentType = FeedRenderModel.LOADING_ROW) {
+                Box(
+                    modifier = Modifier
+                        .fillMaxWidth()
+                        .padding(16.dp),
+                    contentAlignment = Alignment.Center
+                ) {
+                    CircularProgressIndicator(
+                        modifier = Modifier.size(24.dp),
+                        strokeWidth = 2.dp
+                    )
+                }
+            }
+        }
+    }
+}
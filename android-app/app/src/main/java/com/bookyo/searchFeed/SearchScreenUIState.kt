@@ -15,6 +15,7 @@ data class BookUIModel(
 @Immutable
 data class ListingUIModel(
     val id: String,
+    val book: BookUIModel,
     val seller: String,
     val price: Double
 )
@@ -24,13 +25,32 @@ data class AuthorUIModel(
     val id: String, val name: String
 )
 
+/**
+ * The independently paged lists of the feed, one per tab
+ */
+enum class FeedSection {
+    LISTINGS,
+    BOOKS
+}
+
+/**
+ * Paging status of one [FeedSection]
+ */
+@Immutable
+data class PagingState(
+    val isLoadingMore: Boolean = false,
+    val canLoadMore: Boolean = true,
+    val canLoadPrevious: Boolean = false
+)
+
 sealed class SearchScreenUIState {
     data object Loading : SearchScreenUIState()
     data class Success(
-        val books: List<BookUIModel>,
-        val listings: List<ListingUIModel>?,
-        val isLoadingMore: Boolean = false,
-        val canLoadMore: Boolean = true
+        val feed: FeedRenderModel,
+        val booksPaging: PagingState = PagingState(),
+        val listingsPaging: PagingState = PagingState(),
+        val query: String = "",
+        val isSearchingRemotely: Boolean = false
     ) : SearchScreenUIState()
     sealed class Error : SearchScreenUIState() {
         data class Network(val retry: () -> Unit) : Error()
@@ -38,4 +58,4 @@ sealed class SearchScreenUIState {
     }
 
     data object Empty : SearchScreenUIState()
-}
\ No newline at end of file
+}
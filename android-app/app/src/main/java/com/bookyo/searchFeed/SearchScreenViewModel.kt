@@ -1,54 +1,228 @@
 package com.bookyo.searchFeed
 
-import androidx.lifecycle.ViewModel
+import android.app.Application
+import androidx.lifecycle.AndroidViewModel
 import androidx.lifecycle.viewModelScope
 import com.amplifyframework.api.graphql.GraphQLRequest
 import com.amplifyframework.api.graphql.PaginatedResult
 import com.amplifyframework.api.graphql.model.ModelPagination
 import com.amplifyframework.api.graphql.model.ModelQuery
-import com.amplifyframework.core.model.LoadedModelReference
 import com.amplifyframework.core.model.includes
+import com.amplifyframework.core.model.query.predicate.QueryPredicate
 import com.amplifyframework.datastore.generated.model.Book
 import com.amplifyframework.datastore.generated.model.BookPath
 import com.amplifyframework.datastore.generated.model.Listing
 import com.amplifyframework.datastore.generated.model.ListingPath
 import com.amplifyframework.kotlin.core.Amplify
 import com.bookyo.analytics.BookyoAnalytics
+import com.bookyo.data.EntityCache
+import com.bookyo.data.local.CatalogStore
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.flow.update
 import kotlinx.coroutines.launch
-import kotlinx.coroutines.supervisorScope
+import kotlinx.coroutines.withContext
 import java.io.IOException
 
-class SearchScreenViewModel : ViewModel() {
+private typealias BookCursor = GraphQLRequest<PaginatedResult<Book>>
+private typealias ListingCursor = GraphQLRequest<PaginatedResult<Listing>>
+
+class SearchScreenViewModel(application: Application) : AndroidViewModel(application) {
+    companion object {
+        // Items per GraphQL page
+        private const val PAGE_SIZE = 20
+
+        // Start loading the next page when this close to the end of the list
+        const val PREFETCH_DISTANCE = 5
+
+        // Fewer local hits than this also asks the server
+        private const val MIN_LOCAL_HITS = 5
+
+        // The server filters each page after the limit, so search pages are
+        // larger and several may be read to fill the results
+        private const val SEARCH_PAGE_SIZE = 100
+        private const val MAX_SEARCH_PAGES = 5
+        private const val MAX_REMOTE_RESULTS = 20
+    }
 
     private val _uiState = MutableStateFlow<SearchScreenUIState>(SearchScreenUIState.Loading)
     val uiState: StateFlow<SearchScreenUIState> = _uiState.asStateFlow()
 
-    // Initial page size for pagination
-    private val pageSize = 10
+    // Each tab follows its own nextToken cursor
+    private val bookPager = Pager<BookCursor, BookUIModel> { cursor ->
+        fetchBooksPage(cursor ?: firstBooksRequest())
+    }
+    private val listingPager = Pager<ListingCursor, ListingUIModel> { cursor ->
+        fetchListingsPage(cursor ?: firstListingsRequest())
+    }
+
+    private val catalogStore = CatalogStore.getInstance(application)
+    private val entityCache = EntityCache.getInstance()
+    private val feedMapper = FeedMapper()
+
+    // Shown in a section until its pager has loaded from the network
+    private var cachedBooks: List<BookUIModel> = emptyList()
+    private var cachedListings: List<ListingUIModel> = emptyList()
+
+    // Books seen with a listing, to flag them in the books tab
+    private val listedBookIds = HashSet<String>()
+
+    private var initialLoadJob: Job? = null
+
+    // Counts publishes, so an older one still building is dropped
+    private var renderVersion = 0
+
+    private val localSearch = LocalBookSearch.getInstance()
+    private val query = MutableStateFlow("")
+
+    // Bumped when books are added to the index, to refresh open results
+    private val indexVersion = MutableStateFlow(0)
+    private var localResults: List<BookUIModel>? = null
+
+    private val remoteSearch = RemoteBookSearch(fetch = ::searchBooksRemotely)
+    private var remoteState: RemoteSearchState = RemoteSearchState.Idle
+
+    // First page of each section still on its way
+    private var booksLoading = false
+    private var listingsLoading = false
+
+    // Sections loading another page, kept here so a publish meanwhile keeps the flag
+    private val loadingMore = HashSet<FeedSection>()
 
     init {
         loadInitialData()
+        seedSearchIndex()
+
+        viewModelScope.launch {
+            combine(query, indexVersion) { text, _ -> text }.collectLatest { text ->
+                localResults = if (text.isBlank()) {
+                    null
+                } else {
+                    withContext(Dispatchers.Default) { localSearch.search(text) }
+                }
+                publishSearch()
+            }
+        }
+
+        viewModelScope.launch {
+            val needsServer: suspend (String) -> Boolean = { text ->
+                withContext(Dispatchers.Default) { localSearch.search(text, MIN_LOCAL_HITS).size < MIN_LOCAL_HITS }
+            }
+            remoteSearch.results(query, needsServer).collect { state ->
+                remoteState = state
+                if (state is RemoteSearchState.Done) addToSearchIndex(state.books)
+                publishSearch()
+            }
+        }
     }
 
-    fun loadInitialData() {
+    /**
+     * Search the books loaded so far, on-device, as the user types. When
+     * they match too few books, the server is searched too once typing
+     * pauses.
+     */
+    fun onQueryChange(text: String) {
+        query.value = text
+    }
+
+    /**
+     * Index every cached book, so search works before (or without) the
+     * network. The index is rebuilt from the cache only when empty;
+     * otherwise it already holds at least as much.
+     */
+    private fun seedSearchIndex() {
         viewModelScope.launch {
-            _uiState.value = SearchScreenUIState.Loading
             try {
-                val books = fetchBooksPageOne()
-                val listings = fetchListingsPageOne()
-
-                // After fetching data, map them to UI models
-                if (books != null && listings != null) {
-                    mapBooksToUiModels(books, listings)
-                } else if (books != null) {
-                    mapBooksToUiModels(books, null)
-                } else {
-                    _uiState.value = SearchScreenUIState.Empty
+                val cached = feedMapper.books(catalogStore.books(CatalogStore.MAX_ROWS))
+                withContext(Dispatchers.Default) {
+                    if (localSearch.size == 0) localSearch.rebuild(cached) else localSearch.addAll(cached)
                 }
+                indexVersion.update { it + 1 }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                trackFailure("seedSearchIndex", e)
+            }
+        }
+    }
+
+    // Before the first load there is no feed to show results in
+    private suspend fun publishSearch() {
+        if (_uiState.value is SearchScreenUIState.Success) publishState()
+    }
+
+    /**
+     * Local hits first, then server hits for the current query not among them
+     */
+    private fun searchResults(): List<BookUIModel>? {
+        val local = localResults ?: return null
+        val remote = (remoteState as? RemoteSearchState.Done)
+            ?.takeIf { it.query == RemoteBookSearch.normalize(query.value) }
+            ?.books
+            ?: return local
+        val shown = local.mapTo(HashSet()) { it.id }
+        return local + remote.filter { it.id !in shown }
+    }
 
+    private fun addToSearchIndex(books: List<BookUIModel>) {
+        if (books.isEmpty()) return
+        localSearch.addAll(books)
+        indexVersion.update { it + 1 }
+    }
+
+    /**
+     * Books and listings load at the same time. Whichever arrives first is
+     * shown right away; listing badges are merged into the books as soon as
+     * the listings land. Calling this again cancels a load still running.
+     *
+     * Cached rows are shown while the network loads, and stay on screen if
+     * it fails.
+     */
+    fun loadInitialData() {
+        initialLoadJob?.cancel()
+        initialLoadJob = viewModelScope.launch {
+            renderVersion++
+            _uiState.value = SearchScreenUIState.Loading
+            booksLoading = true
+            listingsLoading = true
+            try {
+                coroutineScope {
+                    val cacheLoad = launch { showCachedFeed() }
+
+                    launch {
+                        // Listings are optional: without them the books tab still works
+                        try {
+                            listingPager.refresh()
+                        } catch (e: CancellationException) {
+                            throw e
+                        } catch (e: Exception) {
+                            trackFailure("fetchListingsPageOne", e)
+                        }
+                        listingsLoading = false
+                        if (!booksLoading || _uiState.value is SearchScreenUIState.Success) publishState()
+                    }
+
+                    try {
+                        bookPager.refresh()
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        cacheLoad.join()
+                        if (cachedBooks.isEmpty()) throw e
+                        trackFailure("fetchBooksPageOne", e)
+                    }
+                    booksLoading = false
+                    publishState()
+                }
+            } catch (e: CancellationException) {
+                throw e
             } catch (e: IOException) {
                 _uiState.value = SearchScreenUIState.Error.Network(this@SearchScreenViewModel::loadInitialData)
             } catch (e: Exception) {
@@ -60,200 +234,215 @@ class SearchScreenViewModel : ViewModel() {
         }
     }
 
-    private suspend fun fetchBooksPageOne(): List<Book>? = supervisorScope {
+    private suspend fun showCachedFeed() {
+        val listings: List<ListingUIModel>
+        val books: List<BookUIModel>
         try {
-            val request = ModelQuery.list<Book, BookPath>(
-                Book::class.java,
-                ModelPagination.firstPage().withLimit(pageSize)
-            ) { bookPath ->
-                includes(bookPath.author)
-            }
-
-            return@supervisorScope fetchBooks(request)
+            listings = feedMapper.listings(catalogStore.listings(PAGE_SIZE))
+            listings.mapTo(listedBookIds) { it.book.id }
+            books = feedMapper.books(catalogStore.books(PAGE_SIZE))
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
-            BookyoAnalytics.trackApiCall(
-                endpoint = "fetchBooksPageOne",
-                isSuccess = false,
-                durationMs = 0L,
-                errorType = e.javaClass.simpleName,
-                errorMessage = e.message
-            )
-            null
+            // Without a cache the feed simply waits for the network
+            trackFailure("readCatalogCache", e)
+            return
         }
-    }
 
-    private suspend fun fetchBooks(request: GraphQLRequest<PaginatedResult<Book>>): List<Book>? = supervisorScope {
-        try {
-            val response = Amplify.API.query(request)
+        cachedListings = listings
+        cachedBooks = books
+        if (books.isNotEmpty() || listings.isNotEmpty()) publishState()
+    }
 
-            // Null safety check for the response data
-            if (response.data == null) {
-                BookyoAnalytics.trackApiCall(
-                    endpoint = "fetchBooks",
-                    isSuccess = false,
-                    durationMs = 0L,
-                    errorType = "NullDataResponse",
-                    errorMessage = "API returned null data"
-                )
-                return@supervisorScope null
-            }
+    /**
+     * Called by the list as it scrolls. Loads the next page when the last
+     * visible item is within [PREFETCH_DISTANCE] of the end of the window,
+     * and reloads a dropped page when the first visible item nears the top.
+     */
+    fun onScrollPosition(section: FeedSection, firstVisibleIndex: Int, lastVisibleIndex: Int, totalCount: Int) {
+        val pager = pagerFor(section)
+        when {
+            lastVisibleIndex >= totalCount - 1 - PREFETCH_DISTANCE && pager.hasNext -> loadPage(section) { it.loadNext() }
+            firstVisibleIndex <= PREFETCH_DISTANCE && pager.hasPrevious -> loadPage(section) { it.loadPrevious() }
+        }
+    }
 
-            // We don't handle pagination in this simplified version
-            // but you can use response.data.hasNextResult() and
-            // response.data.requestForNextResult to implement it
+    private fun loadPage(section: FeedSection, load: suspend (Pager<*, *>) -> Boolean) {
+        if (_uiState.value !is SearchScreenUIState.Success || !loadingMore.add(section)) return
 
-            BookyoAnalytics.trackApiCall(
-                endpoint = "fetchBooks",
-                isSuccess = true,
-                durationMs = 0L
-            )
-
-            return@supervisorScope response.data.items.toList()
-        } catch (e: Exception) {
-            BookyoAnalytics.trackApiCall(
-                endpoint = "fetchBooks",
-                isSuccess = false,
-                durationMs = 0L,
-                errorType = e.javaClass.simpleName,
-                errorMessage = e.message
-            )
-            null
+        setLoadingMore(section, true)
+        viewModelScope.launch {
+            try {
+                load(pagerFor(section))
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                // Keep what is shown; the next scroll event retries
+                trackFailure("loadMore${section.name.lowercase()}", e)
+            } finally {
+                loadingMore.remove(section)
+                publishState()
+            }
         }
     }
 
-    private suspend fun fetchListingsPageOne(): List<Listing>? = supervisorScope {
-        try {
-            val request = ModelQuery.list<Listing, ListingPath>(
-                Listing::class.java,
-                ModelPagination.firstPage().withLimit(pageSize)
-            ) { listingPath ->
-                includes(listingPath.user, listingPath.book)
-            }
+    private fun pagerFor(section: FeedSection): Pager<*, *> = when (section) {
+        FeedSection.BOOKS -> bookPager
+        FeedSection.LISTINGS -> listingPager
+    }
 
-            return@supervisorScope fetchListings(request)
-        } catch (e: Exception) {
-            BookyoAnalytics.trackApiCall(
-                endpoint = "fetchListingsPageOne",
-                isSuccess = false,
-                durationMs = 0L,
-                errorType = e.javaClass.simpleName,
-                errorMessage = e.message
-            )
-            null
+    private fun setLoadingMore(section: FeedSection, loading: Boolean) {
+        _uiState.update { state ->
+            if (state !is SearchScreenUIState.Success) return@update state
+            when (section) {
+                FeedSection.BOOKS -> state.copy(booksPaging = state.booksPaging.copy(isLoadingMore = loading))
+                FeedSection.LISTINGS -> state.copy(listingsPaging = state.listingsPaging.copy(isLoadingMore = loading))
+            }
         }
     }
 
-    private suspend fun fetchListings(request: GraphQLRequest<PaginatedResult<Listing>>): List<Listing>? = supervisorScope {
-        try {
-            val response = Amplify.API.query(request)
+    /**
+     * Expose the current pager windows. Page items were mapped when they
+     * loaded; the rows are built off the main thread, and only the latest
+     * publish reaches the screen.
+     */
+    private suspend fun publishState() {
+        val version = ++renderVersion
+        val books = if (bookPager.isLoaded) bookPager.items else cachedBooks
+        val listings = if (listingPager.isLoaded) listingPager.items else cachedListings
 
-            // Null safety check for the response data
-            if (response.data == null) {
-                BookyoAnalytics.trackApiCall(
-                    endpoint = "fetchListings",
-                    isSuccess = false,
-                    durationMs = 0L,
-                    errorType = "NullDataResponse",
-                    errorMessage = "API returned null data"
-                )
-                return@supervisorScope null
-            }
+        if (books.isEmpty() && listings.isEmpty() && !booksLoading && !listingsLoading) {
+            _uiState.value = SearchScreenUIState.Empty
+            return
+        }
 
-            BookyoAnalytics.trackApiCall(
-                endpoint = "fetchListings",
-                isSuccess = true,
-                durationMs = 0L
-            )
+        val listedIds = HashSet(listedBookIds)
+        val results = searchResults()
+        val feed = withContext(Dispatchers.Default) {
+            FeedRenderModel.build(books, listings, listedIds, results)
+        }
+        // A newer publish started while this one was building
+        if (version != renderVersion) return
 
-            return@supervisorScope response.data.items.toList()
-        } catch (e: Exception) {
-            BookyoAnalytics.trackApiCall(
-                endpoint = "fetchListings",
-                isSuccess = false,
-                durationMs = 0L,
-                errorType = e.javaClass.simpleName,
-                errorMessage = e.message
-            )
-            null
+        _uiState.value = SearchScreenUIState.Success(
+            feed = feed,
+            booksPaging = PagingState(
+                isLoadingMore = booksLoading || FeedSection.BOOKS in loadingMore,
+                canLoadMore = bookPager.hasNext,
+                canLoadPrevious = bookPager.hasPrevious
+            ),
+            listingsPaging = PagingState(
+                isLoadingMore = listingsLoading || FeedSection.LISTINGS in loadingMore,
+                canLoadMore = listingPager.hasNext,
+                canLoadPrevious = listingPager.hasPrevious
+            ),
+            query = query.value,
+            isSearchingRemotely = remoteState is RemoteSearchState.Searching
+        )
+    }
+
+    private fun firstBooksRequest(): BookCursor {
+        return ModelQuery.list<Book, BookPath>(
+            Book::class.java,
+            ModelPagination.firstPage().withLimit(PAGE_SIZE)
+        ) { bookPath ->
+            includes(bookPath.author)
         }
     }
 
-    private fun mapBooksToUiModels(books: List<Book>?, listings: List<Listing>?) {
-        // Check if we have valid book data
-        if (books.isNullOrEmpty()) {
-            _uiState.value = SearchScreenUIState.Empty
-            return
+    private fun firstListingsRequest(): ListingCursor {
+        return ModelQuery.list<Listing, ListingPath>(
+            Listing::class.java,
+            ModelPagination.firstPage().withLimit(PAGE_SIZE)
+        ) { listingPath ->
+            includes(listingPath.user, listingPath.book.author)
         }
+    }
 
-        // Create a map of book IDs to their listings
-        val bookIdToListings = listings?.groupBy { listing ->
-            try {
-                val loadedBook = (listing.book as? LoadedModelReference)?.value
-                loadedBook?.id
-            } catch (e: Exception) {
-                null
-            }
-        }?.filterKeys { it != null } ?: emptyMap()
+    private suspend fun fetchBooksPage(request: BookCursor): Page<BookCursor, BookUIModel> {
+        val result = query(request, "fetchBooks")
+        entityCache.putAll(result.items)
+        saveToCache { catalogStore.saveBooks(result.items.toList()) }
+        val books = feedMapper.books(result.items)
+        addToSearchIndex(books)
+        return Page(
+            items = books,
+            next = if (result.hasNextResult()) result.requestForNextResult else null
+        )
+    }
 
-        // Map books to UI models
-        val bookUIModels = books.mapNotNull { book ->
-            try {
-                book.author?.let { author ->
-                    val loadedAuthor = (author as? LoadedModelReference)?.value
-                    if (loadedAuthor != null) {
-                        // Check if this book has any listings
-                        val hasListings = bookIdToListings[book.id]?.isNotEmpty() == true
-
-                        BookUIModel(
-                            id = book.id,
-                            title = book.title,
-                            author = AuthorUIModel(
-                                id = loadedAuthor.id,
-                                name = loadedAuthor.name
-                            ),
-                            isbn = book.isbn,
-                            thumbnail = book.thumbnail,
-                            isListed = hasListings
-                        )
-                    } else null
-                }
-            } catch (e: Exception) {
-                null
-            }
+    private suspend fun fetchListingsPage(request: ListingCursor): Page<ListingCursor, ListingUIModel> {
+        val result = query(request, "fetchListings")
+        entityCache.putAll(result.items)
+        saveToCache { catalogStore.saveListings(result.items.toList()) }
+        val listings = feedMapper.listings(result.items)
+        listings.mapTo(listedBookIds) { it.book.id }
+        addToSearchIndex(listings.map { it.book })
+        return Page(
+            items = listings,
+            next = if (result.hasNextResult()) result.requestForNextResult else null
+        )
+    }
+
+    private suspend fun searchBooksRemotely(predicate: QueryPredicate): List<BookUIModel> {
+        val books = ArrayList<BookUIModel>()
+        var request: BookCursor? = ModelQuery.list<Book, BookPath>(
+            Book::class.java,
+            predicate,
+            ModelPagination.firstPage().withLimit(SEARCH_PAGE_SIZE)
+        ) { bookPath ->
+            includes(bookPath.author)
         }
+        var pages = 0
+        while (request != null && books.size < MAX_REMOTE_RESULTS && pages < MAX_SEARCH_PAGES) {
+            val result = query(request, "searchBooks")
+            entityCache.putAll(result.items)
+            saveToCache { catalogStore.saveBooks(result.items.toList()) }
+            books += feedMapper.books(result.items)
+            request = if (result.hasNextResult()) result.requestForNextResult else null
+            pages++
+        }
+        return books
+    }
 
-        // Map listings to UI models
-        val listingUIModels = listings?.mapNotNull { listing ->
+    // Cache writes do not hold back the page they came with
+    private fun saveToCache(write: suspend () -> Unit) {
+        viewModelScope.launch {
             try {
-                val loadedUser = listing.user?.let { user ->
-                    (user as? LoadedModelReference)?.value
-                }
-                val loadedBook = listing.book?.let { book ->
-                    (book as? LoadedModelReference)?.value
-                }
-
-                if (loadedUser != null && loadedBook != null) {
-                    ListingUIModel(
-                        id = loadedBook.id, // Use the book ID to match with BookUIModel
-                        seller = loadedUser.email,
-                        price = listing.price
-                    )
-                } else null
+                write()
             } catch (e: Exception) {
-                null
+                trackFailure("saveCatalogCache", e)
             }
         }
+    }
 
-        // Update UI state
-        if (bookUIModels.isEmpty()) {
-            _uiState.value = SearchScreenUIState.Empty
-        } else {
-            _uiState.value = SearchScreenUIState.Success(
-                books = bookUIModels,
-                isLoadingMore = false,
-                canLoadMore = bookUIModels.size >= pageSize,
-                listings = listingUIModels
+    private suspend fun <T> query(request: GraphQLRequest<PaginatedResult<T>>, endpoint: String): PaginatedResult<T> {
+        val start = System.currentTimeMillis()
+        try {
+            val response = Amplify.API.query(request)
+
+            // Null safety check for the response data
+            val data = response.data ?: throw IOException("API returned null data")
+
+            BookyoAnalytics.trackApiCall(
+                endpoint = endpoint,
+                isSuccess = true,
+                durationMs = System.currentTimeMillis() - start
             )
+            return data
+        } catch (e: Exception) {
+            trackFailure(endpoint, e)
+            throw e
         }
     }
-}
\ No newline at end of file
+
+    private fun trackFailure(endpoint: String, e: Exception) {
+        BookyoAnalytics.trackApiCall(
+            endpoint = endpoint,
+            isSuccess = false,
+            durationMs = 0L,
+            errorType = e.javaClass.simpleName,
+            errorMessage = e.message
+        )
+    }
+}
@@ -0,0 +1,51 @@
+package com.bookyo.services
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.os.Build
+import java.io.File
+import java.io.IOException
+
+/**
+ * Decodes image files downsampled to the size they will be displayed at,
+ * instead of at full camera resolution.
+ */
+object BitmapDecoder {
+
+    /**
+     * Decode [file] so that the result is no smaller than [reqWidth] x [reqHeight].
+     * Pass 0 for either dimension to leave it unconstrained.
+     */
+    fun decodeSampled(file: File, reqWidth: Int, reqHeight: Int): Bitmap {
+        // First pass: read only the header to learn the source size
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        BitmapFactory.decodeFile(file.absolutePath, bounds)
+
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw IOException("Unsupported or corrupt image: ${file.name}")
+        }
+
+        val options = BitmapFactory.Options().apply {
+            inSampleSize = DecodeSizing.calculateInSampleSize(
+                bounds.outWidth, bounds.outHeight, reqWidth, reqHeight
+            )
+            inPreferredConfig = preferredConfig(bounds.outMimeType)
+        }
+
+        return BitmapFactory.decodeFile(file.absolutePath, options)
+            ?: throw IOException("Failed to decode image: ${file.name}")
+    }
+
+    /**
+     * Hardware bitmaps keep pixel data off the Java heap and are safe here because
+     * thumbnails are only drawn, never read back. Before API 26 fall back to
+     * RGB_565 for JPEGs, which have no alpha channel anyway.
+     */
+    private fun preferredConfig(mimeType: String?): Bitmap.Config {
+        return when {
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.O -> Bitmap.Config.HARDWARE
+            mimeType == "image/jpeg" -> Bitmap.Config.RGB_565
+            else -> Bitmap.Config.ARGB_8888
+        }
+    }
+}
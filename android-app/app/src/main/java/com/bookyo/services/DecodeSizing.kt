@@ -0,0 +1,41 @@
+package com.bookyo.services
+
+/**
+ * Pure sizing math for downsampled decoding, kept free of Android types so
+ * it can be unit tested on the JVM.
+ */
+object DecodeSizing {
+
+    // Target sizes are rounded up to this step so near-identical layouts share cache entries
+    const val SIZE_BUCKET_PX = 64
+
+    /**
+     * Largest power-of-two sample size that keeps the decoded image at least
+     * as large as the requested size in both dimensions. A requested
+     * dimension of 0 or less means "no constraint" for that axis.
+     */
+    fun calculateInSampleSize(srcWidth: Int, srcHeight: Int, reqWidth: Int, reqHeight: Int): Int {
+        if (srcWidth <= 0 || srcHeight <= 0) return 1
+        if (reqWidth <= 0 && reqHeight <= 0) return 1
+
+        var sampleSize = 1
+        while (fits(srcWidth / (sampleSize * 2), reqWidth) &&
+            fits(srcHeight / (sampleSize * 2), reqHeight)
+        ) {
+            sampleSize *= 2
+        }
+        return sampleSize
+    }
+
+    /**
+     * Round a measured size in pixels up to the next bucket, or 0 if unknown
+     */
+    fun bucket(sizePx: Int): Int {
+        if (sizePx <= 0) return 0
+        return ((sizePx + SIZE_BUCKET_PX - 1) / SIZE_BUCKET_PX) * SIZE_BUCKET_PX
+    }
+
+    private fun fits(sampled: Int, required: Int): Boolean {
+        return if (required <= 0) sampled >= 1 else sampled >= required
+    }
+}
@@ -0,0 +1,193 @@
+package com.bookyo.services
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.util.Log
+import android.util.LruCache
+import java.io.File
+
+/**
+ * Two-tier cache for book thumbnails: decoded bitmaps in memory and
+ * downloaded files under cacheDir/images.
+ */
+class ImageCache private constructor(context: Context) {
+    companion object {
+        private const val TAG = "ImageCache"
+        private const val DISK_CACHE_MAX_BYTES = 50L * 1024 * 1024 // 50 MB
+
+        // Singleton instance
+        @Volatile
+        private var INSTANCE: ImageCache? = null
+
+        fun getInstance(context: Context): ImageCache {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: ImageCache(context.applicationContext).also { INSTANCE = it }
+            }
+        }
+
+        /**
+         * Memory cache key for a thumbnail decoded at a given target size
+         */
+        fun memoryKey(key: String, width: Int, height: Int): String = "$key@${width}x$height"
+    }
+
+    // Use an eighth of the available heap for decoded bitmaps
+    private val memoryCache = object : LruCache<String, Bitmap>(
+        (Runtime.getRuntime().maxMemory() / 8).coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+    ) {
+        override fun sizeOf(key: String, value: Bitmap): Int = value.allocationByteCount
+    }
+
+    val diskCache = DiskImageCache(File(context.cacheDir, "images"), DISK_CACHE_MAX_BYTES)
+
+    fun getBitmap(memoryKey: String): Bitmap? = memoryCache.get(memoryKey)
+
+    fun putBitmap(memoryKey: String, bitmap: Bitmap) {
+        memoryCache.put(memoryKey, bitmap)
+    }
+
+    /**
+     * Drop decoded bitmaps, e.g. when the system reports memory pressure
+     */
+    fun clearMemory() {
+        Log.d(TAG, "Clearing memory cache")
+        memoryCache.evictAll()
+    }
+}
+
+/**
+ * Size-bounded disk cache. Files are evicted least-recently-used first,
+ * using the file modification time as the access stamp. Files handed out by
+ * [acquire] are not evicted until they are released.
+ *
+ * Downloads in progress live in their own temp directory, cleared only when
+ * the cache is created (before any download can start), so leftovers of a
+ * killed process are removed without touching live downloads.
+ */
+class DiskImageCache(private val directory: File, private val maxBytes: Long) {
+    private val TAG = "DiskImageCache"
+
+    private val tempDirectory = File(directory.parentFile, "${directory.name}-tmp")
+
+    // Running total of cached bytes, computed lazily on first use
+    private var currentBytes = -1L
+
+    // Read count of files being read, which eviction skips
+    private val pins = HashMap<File, Int>()
+
+    init {
+        // Downloads interrupted by a previous process
+        tempDirectory.deleteRecursively()
+    }
+
+    /**
+     * Return the cached file for a key, or null if it has not been downloaded yet
+     */
+    @Synchronized
+    fun get(key: String): File? {
+        val file = fileFor(key)
+        if (!file.exists() || file.length() == 0L) return null
+
+        // Mark as recently used
+        file.setLastModified(System.currentTimeMillis())
+        return file
+    }
+
+    /**
+     * Like [get], but the file is kept from eviction until [release] is
+     * called with the same key
+     */
+    @Synchronized
+    fun acquire(key: String): File? {
+        val file = get(key) ?: return null
+        pins[file] = (pins[file] ?: 0) + 1
+        return file
+    }
+
+    @Synchronized
+    fun release(key: String) {
+        val file = fileFor(key)
+        val count = pins[file] ?: return
+        if (count > 1) pins[file] = count - 1 else pins.remove(file)
+    }
+
+    /**
+     * Temporary file to download into before [commit] moves it into place,
+     * so a partial download is never served as a cache hit
+     */
+    fun tempFileFor(key: String): File {
+        return File(tempDirectory, "${key.replace('/', '_')}.${System.nanoTime()}.tmp").apply {
+            parentFile?.mkdirs()
+        }
+    }
+
+    /**
+     * Move a fully downloaded file into the cache and evict old entries
+     */
+    @Synchronized
+    fun commit(key: String, downloaded: File): File {
+        val target = fileFor(key)
+        ensureSizeKnown()
+        target.parentFile?.mkdirs()
+
+        if (target.exists()) {
+            currentBytes -= target.length()
+            target.delete()
+        }
+
+        if (!downloaded.renameTo(target)) {
+            downloaded.copyTo(target, overwrite = true)
+            downloaded.delete()
+        }
+
+        currentBytes += target.length()
+        trimToSize()
+        return target
+    }
+
+    @Synchronized
+    fun remove(key: String) {
+        val file = fileFor(key)
+        if (file.exists()) {
+            ensureSizeKnown()
+            currentBytes -= file.length()
+            file.delete()
+        }
+    }
+
+    private fun fileFor(key: String): File = File(directory, key)
+
+    private fun cachedFiles(): List<File> {
+        return directory.walkTopDown()
+            .filter { it.isFile }
+            .toList()
+    }
+
+    private fun ensureSizeKnown() {
+        if (currentBytes >= 0) return
+        directory.mkdirs()
+
+        // Older versions downloaded next to the cached files; nothing writes
+        // temp files here any more, so these are all stale
+        directory.walkTopDown()
+            .filter { it.isFile && it.name.endsWith(".tmp") }
+            .forEach { it.delete() }
+
+        currentBytes = cachedFiles().sumOf { it.length() }
+    }
+
+    private fun trimToSize() {
+        if (currentBytes <= maxBytes) return
+
+        val files = cachedFiles().sortedBy { it.lastModified() }
+        for (file in files) {
+            if (currentBytes <= maxBytes) break
+            if (file in pins) continue
+            val length = file.length()
+            if (file.delete()) {
+                currentBytes -= length
+                Log.d(TAG, "Evicted ${file.name} ($length bytes)")
+            }
+        }
+    }
+}
@@ -2,48 +2,177 @@ package com.bookyo.services
 
 import android.content.Context
 import android.graphics.Bitmap
+import android.util.Log
 import androidx.compose.runtime.Composable
 import androidx.compose.runtime.remember
 import com.amplifyframework.kotlin.core.Amplify
 import com.amplifyframework.storage.StoragePath
-import com.bumptech.glide.Glide
+import com.bookyo.media.ImageUploader
+import com.bookyo.media.TranscodeOptions
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.FlowPreview
+import kotlinx.coroutines.SupervisorJob
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.flow
 import kotlinx.coroutines.withContext
 import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 
 
-class ImageLoader(private val context: Context) {
+/**
+ * Process-wide thumbnail loader. Concurrent loads of the same key share a
+ * single S3 download and a single decode.
+ */
+class ImageLoader private constructor(context: Context) {
+    companion object {
+        private const val TAG = "ImageLoader"
+        private const val THUMBNAIL_CACHE_PREFIX = "thumb/"
 
+        // Storage errors are wrapped a few levels deep at most
+        private const val MAX_CAUSE_DEPTH = 8
+
+        // Singleton instance
+        @Volatile
+        private var INSTANCE: ImageLoader? = null
+
+        fun getInstance(context: Context): ImageLoader {
+            return INSTANCE ?: synchronized(this) {
+                INSTANCE ?: ImageLoader(context.applicationContext).also { INSTANCE = it }
+            }
+        }
+    }
+
+    private val imageCache = ImageCache.getInstance(context)
+
+    // Scope for shared loads; a failing load must not cancel the others
+    private val loaderScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    // In-flight downloads keyed by S3 key, decodes keyed by key and size
+    private val downloads = SingleFlight<String, File>(loaderScope)
+    private val decodes = SingleFlight<String, Bitmap>(loaderScope)
+
+    // Keys known to have no thumbnail variant, so we don't ask S3 again
+    private val missingThumbnails = ConcurrentHashMap.newKeySet<String>()
+
+    /**
+     * Load a thumbnail by its S3 key, decoded for a [width] x [height] pixel target
+     * (0 means unconstrained). Checks the memory cache, then the disk cache,
+     * and only downloads from S3 when neither has the image.
+     */
     @OptIn(ExperimentalCoroutinesApi::class, FlowPreview::class)
-    fun loadImage(key: String): Flow<ImageLoadingState> = flow {
+    fun loadImage(key: String, width: Int = 0, height: Int = 0): Flow<ImageLoadingState> = flow {
+        val targetWidth = DecodeSizing.bucket(width)
+        val targetHeight = DecodeSizing.bucket(height)
+        val memoryKey = ImageCache.memoryKey(key, targetWidth, targetHeight)
+
+        // Memory hit: no spinner, no IO
+        imageCache.getBitmap(memoryKey)?.let { cached ->
+            emit(ImageLoadingState.Success(cached))
+            return@flow
+        }
+
         emit(ImageLoadingState.Loading)
 
         try {
-
-            // Download from S3
-            val tempFile = File(context.cacheDir, "images/$key")
-            val download = Amplify.Storage.downloadFile(StoragePath.fromString("images/$key"), tempFile)
-            val file = download.result().file
-
-            // Load bitmap with Glide
-            val bitmap = withContext(Dispatchers.IO) {
-                Glide.with(context)
-                    .asBitmap()
-                    .load(file)
-                    .submit()
-                    .get()
+            val bitmap = decodes.run(memoryKey) {
+                imageCache.getBitmap(memoryKey) ?: decode(key, targetWidth, targetHeight).also { decoded ->
+                    imageCache.putBitmap(memoryKey, decoded)
+                }
             }
-
             emit(ImageLoadingState.Success(bitmap))
+        } catch (e: CancellationException) {
+            throw e
         } catch (e: Exception) {
             emit(ImageLoadingState.Error(e))
         }
     }
 
+    private suspend fun decode(key: String, width: Int, height: Int): Bitmap {
+        // Small targets use the thumbnail variant produced by the upload pipeline.
+        // Images uploaded before it existed only have the full-size object.
+        if (prefersThumbnail(width, height) && !missingThumbnails.contains(key)) {
+            try {
+                return decodeCached(THUMBNAIL_CACHE_PREFIX + key, ImageUploader.thumbnailPath(key), width, height)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                // Only a missing object is remembered; a timeout or being
+                // offline must not rule out the thumbnail for the whole process
+                if (isNotFound(e)) {
+                    Log.d(TAG, "No thumbnail variant for $key, using full image")
+                    missingThumbnails.add(key)
+                } else {
+                    Log.d(TAG, "Could not load thumbnail for $key, using full image", e)
+                }
+            }
+        }
+
+        return decodeCached(key, ImageUploader.fullPath(key), width, height)
+    }
+
+    /**
+     * Whether a storage failure means the object does not exist. Amplify
+     * wraps the S3 error, so the whole cause chain is checked.
+     */
+    private fun isNotFound(error: Throwable): Boolean {
+        return generateSequence(error) { it.cause }.take(MAX_CAUSE_DEPTH).any { cause ->
+            val name = cause.javaClass.simpleName
+            val message = cause.message.orEmpty()
+            name == "NoSuchKey" || name.endsWith("NotFoundException") ||
+                message.contains("NoSuchKey") || message.contains("404") || message.contains("Not Found", ignoreCase = true)
+        }
+    }
+
+    private fun prefersThumbnail(width: Int, height: Int): Boolean {
+        val longestEdge = maxOf(width, height)
+        return longestEdge in 1..TranscodeOptions().thumbnailEdgePx
+    }
+
+    /**
+     * Decode the cached file, downloading it first when needed. The file is
+     * pinned while it is decoded so eviction cannot delete it underneath.
+     */
+    private suspend fun decodeCached(cacheKey: String, storagePath: String, width: Int, height: Int): Bitmap {
+        val diskCache = imageCache.diskCache
+        val file = diskCache.acquire(cacheKey) ?: run {
+            downloads.run(cacheKey) {
+                diskCache.get(cacheKey) ?: downloadToDiskCache(cacheKey, storagePath)
+            }
+            // Each caller pins for itself; the shared download only fills the cache
+            diskCache.acquire(cacheKey) ?: throw IOException("$cacheKey was evicted right after download")
+        }
+        try {
+            return decodeFile(file, width, height)
+        } finally {
+            diskCache.release(cacheKey)
+        }
+    }
+
+    private suspend fun decodeFile(file: File, width: Int, height: Int): Bitmap {
+        // Decode downsampled to the target size
+        return withContext(Dispatchers.IO) {
+            BitmapDecoder.decodeSampled(file, width, height)
+        }
+    }
+
+    /**
+     * Download from S3 into a temp file and move it into the disk cache once complete
+     */
+    private suspend fun downloadToDiskCache(cacheKey: String, storagePath: String): File {
+        val tempFile = imageCache.diskCache.tempFileFor(cacheKey)
+        try {
+            val download = Amplify.Storage.downloadFile(StoragePath.fromString(storagePath), tempFile)
+            val downloaded = download.result().file
+            return imageCache.diskCache.commit(cacheKey, downloaded)
+        } finally {
+            if (tempFile.exists()) tempFile.delete()
+        }
+    }
+
 sealed class ImageLoadingState {
     object Loading : ImageLoadingState()
     data class Success(val bitmap: Bitmap) : ImageLoadingState()
@@ -53,5 +182,5 @@ sealed class ImageLoadingState {
 
 @Composable
 fun rememberImageLoader(context: Context): ImageLoader {
-    return remember { ImageLoader(context) }
-}
\ No newline at end of file
+    return remember { ImageLoader.getInstance(context) }
+}
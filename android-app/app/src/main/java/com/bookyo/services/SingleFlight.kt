@@ -0,0 +1,49 @@
+package com.bookyo.services
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.async
+
+/**
+ * Coalesces concurrent calls for the same key into one shared [Deferred].
+ *
+ * Every caller of [run] for a key that is already in flight awaits the same
+ * result. The underlying work is cancelled only when its last caller is
+ * cancelled, so one screen leaving does not abort a load another screen
+ * still needs.
+ */
+class SingleFlight<K, V>(private val scope: CoroutineScope) {
+
+    private class Call<V>(val deferred: Deferred<V>) {
+        var subscribers = 0
+    }
+
+    private val calls = HashMap<K, Call<V>>()
+
+    suspend fun run(key: K, block: suspend () -> V): V {
+        val call = synchronized(calls) {
+            calls.getOrPut(key) {
+                Call(scope.async(start = CoroutineStart.LAZY) { block() })
+            }.also { it.subscribers++ }
+        }
+
+        call.deferred.start()
+        try {
+            return call.deferred.await()
+        } finally {
+            synchronized(calls) {
+                call.subscribers--
+                if (call.subscribers == 0) {
+                    if (calls[key] === call) calls.remove(key)
+                    if (!call.deferred.isCompleted) call.deferred.cancel()
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of keys currently in flight
+     */
+    fun inFlightCount(): Int = synchronized(calls) { calls.size }
+}
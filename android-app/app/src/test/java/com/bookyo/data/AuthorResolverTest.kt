@@ -0,0 +1,96 @@
+package com.bookyo.data
+
+import com.amplifyframework.datastore.generated.model.Author
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class AuthorResolverTest {
+
+    private val api = FakeCatalogApi()
+    private val store = InMemoryAuthorNameStore()
+    private val resolver = AuthorResolver(api, store)
+
+    @Test
+    fun normalize_ignoresCaseAccentsAndSpacing() {
+        assertEquals("gabriel garcia marquez", AuthorResolver.normalize("  Gabriel   García MÁRQUEZ "))
+    }
+
+    @Test
+    fun resolve_reusesCachedAuthorForNameVariants() = runBlocking {
+        val first = resolver.resolve("Frank Herbert")
+        api.calls.clear()
+
+        val second = resolver.resolve("  frank  HERBERT")
+
+        assertEquals(first.id, second.id)
+        assertEquals(emptyList<String>(), api.calls)
+    }
+
+    @Test
+    fun prefetch_looksUpAllUnknownNamesInOneQuery() = runBlocking {
+        listOf("Ursula K. Le Guin", "Octavia E. Butler").forEachIndexed { i, name ->
+            val author = Author.builder().name(name).id("author-$i").build()
+            api.authors[author.id] = author
+        }
+
+        resolver.prefetch(listOf("Ursula K. Le Guin", "Octavia E. Butler", "Ursula K. Le Guin"))
+        val ursula = resolver.resolve("Ursula K. Le Guin")
+        val octavia = resolver.resolve("Octavia E. Butler")
+
+        assertEquals(listOf("listAuthors"), api.calls)
+        assertEquals("author-0", ursula.id)
+        assertEquals("author-1", octavia.id)
+    }
+
+    @Test
+    fun resolve_matchesLegacyAuthorsOnTheNormalizedName() = runBlocking {
+        val legacy = Author.builder().name("Gabriel García Márquez").id("legacy-1").build()
+        api.authors[legacy.id] = legacy
+
+        val resolved = resolver.resolve("  gabriel garcia  MARQUEZ")
+
+        assertEquals("legacy-1", resolved.id)
+        assertEquals(listOf("listAuthors"), api.calls)
+    }
+
+    @Test
+    fun resolve_scansTheServerOnceForManyUnknownNames() = runBlocking {
+        listOf("Ann Leckie", "Martha Wells", "Becky Chambers").forEach { resolver.resolve(it) }
+
+        assertEquals(1, api.calls.count { it == "listAuthors" })
+        assertEquals(3, api.authors.size)
+    }
+
+    @Test
+    fun resolve_concurrentCreatesMakeOneAuthor() = runBlocking {
+        val resolved = (1..5).map { async { resolver.resolve("Ted Chiang") } }.awaitAll()
+
+        assertEquals(1, api.authors.size)
+        assertEquals(1, resolved.map { it.id }.distinct().size)
+        assertEquals(AuthorResolver.authorIdFor("ted chiang"), resolved.first().id)
+    }
+
+    @Test
+    fun resolve_otherDeviceCreatingSameAuthorTargetsSameRecord() = runBlocking {
+        val otherDevice = AuthorResolver(FakeCatalogApi())
+        val theirs = otherDevice.resolve("N. K. Jemisin")
+
+        val ours = resolver.resolve("n. k. jemisin")
+
+        assertEquals(theirs.id, ours.id)
+    }
+
+    @Test
+    fun resolve_usesPersistedIdsAfterRestart() = runBlocking {
+        val created = resolver.resolve("Frank Herbert")
+        api.calls.clear()
+
+        val restarted = AuthorResolver(api, store)
+
+        assertEquals(created.id, restarted.resolve("Frank Herbert").id)
+        assertEquals(emptyList<String>(), api.calls)
+    }
+}
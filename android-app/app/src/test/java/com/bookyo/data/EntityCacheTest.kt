@@ -0,0 +1,119 @@
+package com.bookyo.data
+
+import com.amplifyframework.core.model.LoadedModelReference
+import com.amplifyframework.datastore.generated.model.Author
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.User
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class EntityCacheTest {
+
+    private var now = 1_000L
+    private val cache = EntityCache(maxEntries = 10) { now }
+
+    private val author = Author.builder().name("Frank Herbert").id("author-1").build()
+    private val book = Book.builder().title("Dune").isbn("9780441013593").id("book-1").author(author).build()
+    private val seller = User.builder().email("seller@bookyo.com").build()
+
+    private fun listing(id: String, price: Double = 10.0, book: Book = this.book) =
+        Listing.builder().price(price).photos(listOf("photo.jpg")).id(id).book(book).user(seller).build()
+
+    private fun Book.authorName() = (author as LoadedModelReference<Author>).value?.name
+
+    private fun Listing.loadedBook() = (book as LoadedModelReference<Book>).value
+
+    @Test
+    fun put_storesNestedModelsAsEntities() {
+        cache.put(listing("listing-1"))
+
+        assertEquals("Dune", cache.get(Book::class.java, "book-1")?.title)
+        assertEquals("Frank Herbert", cache.get(Author::class.java, "author-1")?.name)
+        assertNotNull(cache.get(User::class.java, seller.primaryKeyString))
+    }
+
+    @Test
+    fun get_resolvesNestedModelsToTheirLatestVersion() {
+        cache.put(listing("listing-1"))
+
+        cache.put(author.copyOfBuilder().name("F. Herbert").build())
+
+        val cached = cache.get(Listing::class.java, "listing-1")!!
+        assertEquals("F. Herbert", cached.loadedBook()?.authorName())
+    }
+
+    @Test
+    fun put_keepsCachedRelationsMissingFromTheNewCopy() {
+        cache.put(book)
+
+        cache.put(Book.builder().title("Dune (reissue)").isbn("9780441013593").id("book-1").build())
+
+        val cached = cache.get(Book::class.java, "book-1")!!
+        assertEquals("Dune (reissue)", cached.title)
+        assertEquals("Frank Herbert", cached.authorName())
+    }
+
+    @Test
+    fun put_ignoresIdOnlyReferences() {
+        cache.put(book)
+
+        cache.put(listing("listing-1", book = Book.justId("book-1")))
+
+        assertEquals("Dune", cache.get(Book::class.java, "book-1")?.title)
+        assertEquals("Dune", cache.get(Listing::class.java, "listing-1")?.loadedBook()?.title)
+    }
+
+    @Test
+    fun getFresh_expiresAfterMaxAge() {
+        cache.put(book)
+
+        now += 500
+        assertNotNull(cache.getFresh(Book::class.java, "book-1", maxAgeMs = 1_000))
+
+        now += 1_000
+        assertNull(cache.getFresh(Book::class.java, "book-1", maxAgeMs = 1_000))
+        assertNotNull(cache.get(Book::class.java, "book-1"))
+    }
+
+    @Test
+    fun replaceWhere_dropsEntitiesMissingFromTheResult() {
+        val other = Book.builder().title("Emma").isbn("9780141439587").id("book-2").author(author).build()
+        cache.putAll(listOf(listing("listing-1"), listing("listing-2"), listing("listing-3", book = other)))
+
+        cache.replaceWhere(Listing::class.java, listOf(listing("listing-2", price = 12.0))) {
+            it.loadedBook()?.id == "book-1"
+        }
+
+        val ids = cache.query(Listing::class.java).map { it.id }.sorted()
+        assertEquals(listOf("listing-2", "listing-3"), ids)
+        assertEquals(12.0, cache.get(Listing::class.java, "listing-2")?.price)
+    }
+
+    @Test
+    fun observeQuery_emitsWritesFromElsewhere() = runBlocking {
+        val forBook = cache.observeQuery(Listing::class.java) { it.loadedBook()?.id == "book-1" }
+        assertEquals(emptyList<Listing>(), forBook.first())
+
+        cache.put(listing("listing-1"))
+
+        assertEquals(listOf("listing-1"), forBook.first().map { it.id })
+    }
+
+    @Test
+    fun putAll_evictsTheStalestEntriesBeyondTheLimit() {
+        cache.put(book)
+        (1..10).forEach { i ->
+            cache.put(Author.builder().name("Author $i").id("a-$i").build())
+        }
+
+        // The book's author was stored just before the book, so both go first
+        assertNull(cache.get(Book::class.java, "book-1"))
+        assertNull(cache.get(Author::class.java, "author-1"))
+        assertNotNull(cache.get(Author::class.java, "a-1"))
+    }
+}
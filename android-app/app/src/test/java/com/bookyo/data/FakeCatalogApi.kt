@@ -0,0 +1,58 @@
+package com.bookyo.data
+
+import com.amplifyframework.datastore.generated.model.Author
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.Listing
+import com.amplifyframework.datastore.generated.model.User
+
+/**
+ * In-memory [CatalogApi] that records every call
+ */
+class FakeCatalogApi(
+    private val userEmail: String = "reader@bookyo.com"
+) : CatalogApi {
+    val authors = mutableMapOf<String, Author>()
+    val books = mutableMapOf<String, Book>()
+    val users = mutableMapOf<String, User>()
+    val listings = mutableMapOf<String, Listing>()
+    val calls = mutableListOf<String>()
+
+    var failCreateBook: Exception? = null
+
+    override suspend fun currentUserEmail(): String {
+        calls += "currentUserEmail"
+        return userEmail
+    }
+
+    override suspend fun listAuthors(): List<Author> {
+        calls += "listAuthors"
+        return authors.values.toList()
+    }
+
+    override suspend fun createAuthor(author: Author): Author {
+        calls += "createAuthor"
+        return authors.getOrPut(author.id) { author }
+    }
+
+    override suspend fun getBook(id: String): Book? {
+        calls += "getBook"
+        return books[id]
+    }
+
+    override suspend fun getUser(email: String): User? {
+        calls += "getUser"
+        return users[email]
+    }
+
+    override suspend fun createBook(book: Book): Book {
+        calls += "createBook"
+        failCreateBook?.let { throw it }
+        // Same replay semantics as the real API: an existing id is success
+        return books.getOrPut(book.id) { book }
+    }
+
+    override suspend fun createListing(listing: Listing): Listing {
+        calls += "createListing"
+        return listings.getOrPut(listing.id) { listing }
+    }
+}
@@ -0,0 +1,82 @@
+package com.bookyo.listing
+
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.ListingStatus
+import com.amplifyframework.datastore.generated.model.User
+import com.bookyo.data.FakeCatalogApi
+import com.bookyo.outbox.OutboxMutation
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+
+class CreateListingUseCaseTest {
+
+    private val api = FakeCatalogApi(userEmail = "seller@bookyo.com")
+    private val notifications = mutableListOf<OutboxMutation.CreateNotification>()
+    private val createListing = CreateListingUseCase(api) { notifications += it }
+
+    @Before
+    fun setUp() {
+        api.books["book-1"] = Book.builder().title("Dune").isbn("9780441013593").id("book-1").build()
+        api.users["seller@bookyo.com"] = User.builder().email("seller@bookyo.com").build()
+    }
+
+    @Test
+    fun create_buildsAvailableListing() = runBlocking {
+        val listing = createListing(bookId = "book-1", price = 12.5, imageKeys = listOf("listing-a.webp"))
+
+        assertEquals(12.5, listing.price, 0.0)
+        assertEquals(listOf("listing-a.webp"), listing.photos)
+        assertEquals(ListingStatus.available, listing.status)
+        assertEquals(1, notifications.size)
+        assertTrue(notifications.single().body.contains("Dune"))
+    }
+
+    @Test
+    fun create_replayWithSameIdDoesNotDuplicate() = runBlocking {
+        createListing(bookId = "book-1", price = 10.0, imageKeys = listOf("a.webp"), listingId = "outbox-2")
+        createListing(bookId = "book-1", price = 10.0, imageKeys = listOf("a.webp"), listingId = "outbox-2")
+
+        assertEquals(listOf("outbox-2"), api.listings.keys.toList())
+    }
+
+    @Test
+    fun create_withoutImagesFailsBeforeAnyCall() = runBlocking {
+        try {
+            createListing(bookId = "book-1", price = 10.0, imageKeys = emptyList())
+            fail("Expected the listing to be rejected")
+        } catch (e: Exception) {
+            // Expected
+        }
+
+        assertTrue(api.calls.isEmpty())
+    }
+
+    @Test
+    fun create_cancelledWhileQueueingTheNotificationIsNotSwallowed() = runBlocking {
+        val cancelling = CreateListingUseCase(api) { throw CancellationException("Worker stopped") }
+
+        try {
+            cancelling(bookId = "book-1", price = 10.0, imageKeys = listOf("a.webp"))
+            fail("Expected the cancellation to propagate")
+        } catch (e: CancellationException) {
+            assertEquals("Worker stopped", e.message)
+        }
+    }
+
+    @Test
+    fun create_unknownBookFails() = runBlocking {
+        try {
+            createListing(bookId = "missing", price = 10.0, imageKeys = listOf("a.webp"))
+            fail("Expected the listing to fail")
+        } catch (e: Exception) {
+            assertTrue(e.message!!.contains("missing"))
+        }
+
+        assertTrue(api.listings.isEmpty())
+    }
+}
@@ -0,0 +1,171 @@
+package com.bookyo.media
+
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import java.util.UUID
+import kotlin.random.Random
+
+class ResumableUploaderTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    /**
+     * Local stand-in for S3: keeps transfers (like the Amplify transfer
+     * database) so an interrupted upload can continue from its offset.
+     */
+    private class FakeUploadStorage : UploadStorage {
+        val objects = mutableMapOf<String, ByteArray>()
+        val resumedFrom = mutableListOf<Pair<String, Long>>()
+        var bytesSent = 0L
+        var failAfterBytes: Long? = null
+        var latencyMs = 0L
+        var maxInFlight = 0
+
+        private var inFlight = 0
+
+        private val transfers = mutableMapOf<String, Long>()
+
+        override suspend fun upload(
+            path: String,
+            file: File,
+            checkpoint: UploadCheckpoint?,
+            onCheckpoint: (UploadCheckpoint) -> Unit
+        ) {
+            inFlight++
+            maxInFlight = maxOf(maxInFlight, inFlight)
+            try {
+                if (latencyMs > 0) delay(latencyMs)
+                transfer(path, file, checkpoint, onCheckpoint)
+            } finally {
+                inFlight--
+            }
+        }
+
+        private fun transfer(
+            path: String,
+            file: File,
+            checkpoint: UploadCheckpoint?,
+            onCheckpoint: (UploadCheckpoint) -> Unit
+        ) {
+            val data = file.readBytes()
+            val transferId = checkpoint?.transferId?.takeIf { it in transfers }
+                ?: UUID.randomUUID().toString().also { transfers[it] = 0L }
+
+            var offset = transfers.getValue(transferId)
+            resumedFrom.add(path to offset)
+            onCheckpoint(UploadCheckpoint(path, transferId, offset, data.size.toLong()))
+
+            while (offset < data.size) {
+                val chunk = minOf(CHUNK_BYTES, data.size - offset)
+                val limit = failAfterBytes
+                if (limit != null && bytesSent + chunk > limit) {
+                    failAfterBytes = null
+                    throw IOException("Connection reset")
+                }
+                offset += chunk
+                bytesSent += chunk
+                transfers[transferId] = offset
+                onCheckpoint(UploadCheckpoint(path, transferId, offset, data.size.toLong()))
+            }
+
+            objects[path] = data
+        }
+
+        companion object {
+            const val CHUNK_BYTES = 64L * 1024
+        }
+    }
+
+    private fun imageFile(name: String, size: Int): File {
+        return tempFolder.newFile(name).apply { writeBytes(Random(name.hashCode()).nextBytes(size)) }
+    }
+
+    @Test
+    fun upload_resumesFromCheckpointAfterFailure() = runBlocking {
+        val storage = FakeUploadStorage()
+        val store = UploadCheckpointStore(tempFolder.newFolder("checkpoints"))
+        val image = imageFile("img_1.webp", 1024 * 1024)
+
+        storage.failAfterBytes = 600L * 1024
+        try {
+            ResumableUploader(storage, store).uploadAll("record-1", listOf(image))
+            fail("Expected the first run to fail")
+        } catch (e: IOException) {
+            // Interrupted mid-upload
+        }
+
+        // A fresh uploader, as a new worker run would create
+        val keys = ResumableUploader(storage, store).uploadAll("record-1", listOf(image))
+
+        val path = ImageUploader.fullPath(keys.single())
+        assertArrayEquals(image.readBytes(), storage.objects[path])
+        assertTrue("second run should not restart from zero", storage.resumedFrom.last().second > 0)
+        assertTrue("bytes sent should be close to one full upload", storage.bytesSent < 2L * image.length())
+    }
+
+    @Test
+    fun upload_skipsCompletedImagesAndKeepsKeys() = runBlocking {
+        val storage = FakeUploadStorage()
+        val store = UploadCheckpointStore(tempFolder.newFolder("checkpoints"))
+        val first = imageFile("img_1.webp", 128 * 1024)
+        PendingImageWriter.thumbnailFileFor(first).writeBytes(ByteArray(16 * 1024))
+        val second = imageFile("img_2.webp", 512 * 1024)
+
+        // Fail while the second image is uploading
+        storage.failAfterBytes = 300L * 1024
+        val firstKeys = try {
+            ResumableUploader(storage, store).uploadAll("record-2", listOf(first, second), "listing-")
+            null
+        } catch (e: IOException) {
+            store.load("record-2").keys
+        }
+
+        val uploadsBeforeRetry = storage.resumedFrom.size
+        val keys = ResumableUploader(storage, store).uploadAll("record-2", listOf(first, second), "listing-")
+
+        assertEquals(listOf(firstKeys!!.getValue(first.absolutePath), firstKeys.getValue(second.absolutePath)), keys)
+        assertTrue(keys.all { it.startsWith("listing-") && it.endsWith(".webp") })
+
+        // Only the interrupted image was uploaded again
+        val retried = storage.resumedFrom.drop(uploadsBeforeRetry).map { it.first }
+        assertEquals(listOf(ImageUploader.fullPath(keys[1])), retried)
+        assertTrue(storage.objects.containsKey(ImageUploader.thumbnailPath(keys[0])))
+        assertFalse(storage.objects.containsKey(ImageUploader.thumbnailPath(keys[1])))
+    }
+
+    @Test
+    fun upload_runsImagesConcurrentlyUpToTheLimit() = runBlocking {
+        val storage = FakeUploadStorage().apply { latencyMs = 50 }
+        val store = UploadCheckpointStore(tempFolder.newFolder("checkpoints"))
+        val images = (1..5).map { imageFile("img_$it.webp", 1024) }
+
+        val keys = ResumableUploader(storage, store).uploadAll("record-4", images, maxConcurrency = 2)
+
+        assertEquals(2, storage.maxInFlight)
+        assertEquals(keys.map { ImageUploader.fullPath(it) }.toSet(), storage.objects.keys)
+        assertTrue(store.load("record-4").checkpoints.values.all { it.completed })
+    }
+
+    @Test
+    fun clear_forgetsRecordState() = runBlocking {
+        val storage = FakeUploadStorage()
+        val store = UploadCheckpointStore(tempFolder.newFolder("checkpoints"))
+        val uploader = ResumableUploader(storage, store)
+
+        uploader.uploadAll("record-3", listOf(imageFile("img_3.webp", 1024)))
+        uploader.clear("record-3")
+
+        assertTrue(store.load("record-3").keys.isEmpty())
+    }
+}
@@ -0,0 +1,139 @@
+package com.bookyo.outbox
+
+import com.amplifyframework.datastore.generated.model.Book
+import com.amplifyframework.datastore.generated.model.User
+import com.bookyo.data.FakeCatalogApi
+import com.bookyo.listing.CreateListingUseCase
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+
+class OutboxDrainTest {
+
+    /**
+     * In-memory outbox, oldest first like [OutboxStore]
+     */
+    private class FakeOutboxQueue : OutboxQueue {
+        val stored = mutableListOf<OutboxItem>()
+
+        fun enqueue(mutation: OutboxMutation): OutboxItem {
+            return OutboxItem(mutation = mutation).also { stored += it }
+        }
+
+        override suspend fun items(): List<OutboxItem> = stored.toList()
+
+        override suspend fun update(id: String, transform: (OutboxItem) -> OutboxItem): OutboxItem? {
+            val index = stored.indexOfFirst { it.id == id }
+            if (index < 0) return null
+            return transform(stored[index]).also { stored[index] = it }
+        }
+
+        override suspend fun remove(id: String) {
+            stored.removeAll { it.id == id }
+        }
+    }
+
+    private val queue = FakeOutboxQueue()
+    private val executed = mutableListOf<OutboxMutation>()
+
+    private fun add(bookId: String) = OutboxMutation.AddToWishlist("list-1", bookId)
+    private fun remove(bookId: String) = OutboxMutation.RemoveFromWishlist("list-1", bookId)
+
+    @Test
+    fun itemsSharingAKey_runInEnqueueOrder() = runBlocking {
+        queue.enqueue(add("book-1"))
+        queue.enqueue(remove("book-1"))
+        queue.enqueue(add("book-2"))
+
+        val drain = OutboxDrain(queue, maxConcurrency = 3) { item ->
+            // The first item is the slowest; its key must still go in order
+            if (item.mutation == add("book-1")) delay(50)
+            executed += item.mutation
+        }
+
+        assertFalse(drain.drain())
+        assertEquals(listOf(add("book-2"), add("book-1"), remove("book-1")), executed)
+        assertTrue(queue.stored.isEmpty())
+    }
+
+    @Test
+    fun failedItem_blocksItsKeyForItemsQueuedDuringTheDrain() = runBlocking {
+        queue.enqueue(add("book-1"))
+        var online = false
+
+        val drain = OutboxDrain(queue, maxConcurrency = 3) { item ->
+            if (!online) {
+                // Queued after the add started, while it is still in flight
+                queue.enqueue(remove("book-1"))
+                throw IOException("Connection reset")
+            }
+            executed += item.mutation
+        }
+
+        assertTrue(drain.drain())
+        assertTrue(executed.isEmpty())
+        assertEquals(listOf(OutboxState.QUEUED, OutboxState.QUEUED), queue.stored.map { it.state })
+        assertEquals(1, queue.stored.first().attempts)
+
+        online = true
+        assertFalse(drain.drain())
+        assertEquals(listOf(add("book-1"), remove("book-1")), executed)
+    }
+
+    @Test
+    fun transientFailure_isRetriedUntilTheAttemptBudgetRunsOut() = runBlocking {
+        queue.enqueue(add("book-1"))
+        val drain = OutboxDrain(queue, maxConcurrency = 1) { throw IOException("Timeout") }
+
+        repeat(OutboxDrain.MAX_ATTEMPTS - 1) { assertTrue(drain.drain()) }
+        assertFalse(drain.drain())
+
+        val item = queue.stored.single()
+        assertEquals(OutboxState.FAILED, item.state)
+        assertEquals(OutboxDrain.MAX_ATTEMPTS, item.attempts)
+        assertEquals("Timeout", item.lastError)
+
+        // Failed items wait for a manual retry
+        assertFalse(drain.drain())
+        assertEquals(OutboxDrain.MAX_ATTEMPTS, queue.stored.single().attempts)
+    }
+
+    @Test
+    fun permanentFailure_discardsFireAndForgetItems() = runBlocking {
+        queue.enqueue(OutboxMutation.MarkNotificationsRead(listOf("n1")))
+        val drain = OutboxDrain(queue, maxConcurrency = 1) { throw PermanentOutboxException("Unauthorized") }
+
+        assertFalse(drain.drain())
+        assertTrue(queue.stored.isEmpty())
+    }
+
+    @Test
+    fun replayAfterLostResponse_doesNotDuplicateTheListing() = runBlocking {
+        val api = FakeCatalogApi(userEmail = "seller@bookyo.com")
+        api.books["book-1"] = Book.builder().title("Dune").isbn("9780441013593").id("book-1").build()
+        api.users["seller@bookyo.com"] = User.builder().email("seller@bookyo.com").build()
+        val createListing = CreateListingUseCase(api) { queue.enqueue(it) }
+
+        val item = queue.enqueue(OutboxMutation.CreateListing("book-1", 12.5))
+        var responseLost = true
+
+        val drain = OutboxDrain(queue, maxConcurrency = 1) { queued ->
+            val mutation = queued.mutation as? OutboxMutation.CreateListing ?: return@OutboxDrain
+            createListing(mutation.bookId, mutation.price, listOf("a.webp"), listingId = queued.idempotencyKey)
+            if (responseLost) {
+                responseLost = false
+                throw IOException("Connection reset after the create reached the server")
+            }
+        }
+
+        assertTrue(drain.drain())
+        assertFalse(drain.drain())
+
+        assertEquals(listOf(item.idempotencyKey), api.listings.keys.toList())
+        assertTrue(queue.stored.isEmpty())
+    }
+}
@@ -0,0 +1,67 @@
+package com.bookyo.publish
+
+import com.amplifyframework.datastore.generated.model.Author
+import com.bookyo.data.FakeCatalogApi
+import com.bookyo.outbox.OutboxMutation
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+
+class PublishBookUseCaseTest {
+
+    private val api = FakeCatalogApi()
+    private val notifications = mutableListOf<OutboxMutation.CreateNotification>()
+    private val publishBook = PublishBookUseCase(api) { notifications += it }
+
+    @Test
+    fun publish_createsAuthorAndBook() = runBlocking {
+        val book = publishBook(
+            title = "Dune",
+            isbn = "9780441013593",
+            authorName = "Frank Herbert",
+            imageKey = "cover.webp"
+        )
+
+        assertEquals("Dune", book.title)
+        assertEquals("cover.webp", book.thumbnail)
+        assertEquals(listOf("Frank Herbert"), api.authors.values.map { it.name })
+        assertEquals(1, api.books.size)
+        assertEquals(1, notifications.size)
+        assertTrue(notifications.single().body.contains("Frank Herbert"))
+    }
+
+    @Test
+    fun publish_reusesExistingAuthor() = runBlocking {
+        val existing = Author.builder().name("Ursula K. Le Guin").id("author-1").build()
+        api.authors[existing.id] = existing
+
+        publishBook(title = "The Dispossessed", isbn = "9780061054884", authorName = existing.name)
+
+        assertEquals(1, api.authors.size)
+        assertTrue("createAuthor" !in api.calls)
+    }
+
+    @Test
+    fun publish_replayWithSameIdDoesNotDuplicate() = runBlocking {
+        publishBook(title = "Dune", isbn = "9780441013593", authorName = "Frank Herbert", bookId = "outbox-1")
+        publishBook(title = "Dune", isbn = "9780441013593", authorName = "Frank Herbert", bookId = "outbox-1")
+
+        assertEquals(listOf("outbox-1"), api.books.keys.toList())
+    }
+
+    @Test
+    fun publish_failureSkipsNotification() = runBlocking {
+        api.failCreateBook = IllegalStateException("boom")
+
+        try {
+            publishBook(title = "Dune", isbn = "9780441013593", authorName = "Frank Herbert")
+            fail("Expected the publish to fail")
+        } catch (e: IllegalStateException) {
+            // Expected
+        }
+
+        assertTrue(notifications.isEmpty())
+    }
+}
@@ -0,0 +1,41 @@
+package com.bookyo.searchFeed
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FeedRenderModelTest {
+
+    private fun book(id: String, isListed: Boolean = false) =
+        BookUIModel(id, "Title $id", AuthorUIModel("author", "Author"), "isbn-$id", null, isListed)
+
+    private fun listing(id: String, book: BookUIModel, price: Double) =
+        ListingUIModel(id, book.copy(isListed = true), "seller", price)
+
+    @Test
+    fun build_flagsListedBooksAndKeepsUnchangedRows() {
+        val unlisted = book("1")
+        val listed = book("2")
+
+        val feed = FeedRenderModel.build(listOf(unlisted, listed), emptyList(), setOf("2"), null)
+
+        assertSame(unlisted, feed.books[0])
+        assertTrue(feed.books[1].isListed)
+    }
+
+    @Test
+    fun build_pairsSearchResultsWithTheirCheapestListing() {
+        val dune = book("dune")
+        val listings = listOf(
+            listing("a", dune, 12.0),
+            listing("b", dune, 8.5),
+            listing("c", book("other"), 1.0)
+        )
+
+        val feed = FeedRenderModel.build(emptyList(), listings, setOf("dune", "other"), listOf(dune, book("kindred")))
+
+        assertEquals(listOf("b", null), feed.searchResults!!.map { it.listing?.id })
+        assertTrue(feed.searchResults!![0].book.isListed)
+    }
+}
@@ -0,0 +1,82 @@
+package com.bookyo.searchFeed
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.async
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PagerTest {
+
+    /**
+     * Pages of three ints; the cursor is the index of the first item
+     */
+    private class Source(private val total: Int) {
+        val loads = mutableListOf<Int?>()
+
+        suspend fun load(cursor: Int?): Page<Int, Int> {
+            loads += cursor
+            val start = cursor ?: 0
+            val end = minOf(start + 3, total)
+            return Page((start until end).toList(), if (end < total) end else null)
+        }
+    }
+
+    @Test
+    fun loadNext_followsCursorsToTheEnd() = runBlocking {
+        val source = Source(total = 7)
+        val pager = Pager(load = source::load)
+
+        pager.refresh()
+        while (pager.loadNext()) Unit
+
+        assertEquals((0 until 7).toList(), pager.items)
+        assertFalse(pager.hasNext)
+        assertEquals(listOf(null, 3, 6), source.loads)
+    }
+
+    @Test
+    fun window_dropsOldestPagesAndReloadsThem() = runBlocking {
+        val source = Source(total = 30)
+        val pager = Pager(maxPages = 2, load = source::load)
+
+        pager.refresh()
+        pager.loadNext()
+        pager.loadNext()
+
+        // First page dropped: the window holds pages two and three only
+        assertEquals((3 until 9).toList(), pager.items)
+        assertTrue(pager.hasPrevious)
+
+        assertTrue(pager.loadPrevious())
+        assertEquals((0 until 6).toList(), pager.items)
+        assertFalse(pager.hasPrevious)
+
+        // Scrolling down again continues from the page that was dropped last
+        pager.loadNext()
+        assertEquals((3 until 9).toList(), pager.items)
+    }
+
+    @Test
+    fun loadNext_skipsWhileAnotherLoadRuns() = runBlocking {
+        val gate = CompletableDeferred<Unit>()
+        var loads = 0
+        val pager = Pager<Int, Int> { cursor ->
+            loads++
+            if (cursor != null) gate.await()
+            Page(listOf(cursor ?: 0), (cursor ?: 0) + 1)
+        }
+        pager.refresh()
+
+        val first = async { pager.loadNext() }
+        yield()
+        assertFalse(pager.loadNext())
+
+        gate.complete(Unit)
+        assertTrue(first.await())
+        assertEquals(2, loads)
+    }
+}
@@ -0,0 +1,174 @@
+package com.bookyo.searchFeed
+
+import com.amplifyframework.core.model.query.predicate.QueryPredicate
+import com.amplifyframework.core.model.query.predicate.QueryPredicateGroup
+import com.amplifyframework.datastore.generated.model.Book
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestScope
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+@OptIn(ExperimentalCoroutinesApi::class)
+class RemoteBookSearchTest {
+
+    private val dune = BookUIModel("dune", "Dune", AuthorUIModel("herbert", "Frank Herbert"), "9780441172719", null)
+
+    private val fetched = mutableListOf<QueryPredicate>()
+    private val queries = MutableSharedFlow<String>(extraBufferCapacity = 16)
+
+    /**
+     * Search running on the test scheduler, so debouncing, the TTL and
+     * requests all follow virtual time
+     */
+    private fun TestScope.search(fetch: suspend (QueryPredicate) -> List<BookUIModel> = { listOf(dune) }) =
+        RemoteBookSearch(
+            fetch = { predicate ->
+                fetched += predicate
+                fetch(predicate)
+            },
+            debounceMs = 50,
+            dispatcher = StandardTestDispatcher(testScheduler),
+            clock = { testScheduler.currentTime }
+        )
+
+    /**
+     * Collect the states for [queries] until the test ends
+     */
+    private fun TestScope.collect(
+        search: RemoteBookSearch,
+        shouldFetch: suspend (String) -> Boolean = { true }
+    ): List<RemoteSearchState> {
+        val states = mutableListOf<RemoteSearchState>()
+        backgroundScope.launch { search.results(queries, shouldFetch).toList(states) }
+        runCurrent()
+        return states
+    }
+
+    private fun TestScope.advance(ms: Long) {
+        advanceTimeBy(ms)
+        runCurrent()
+    }
+
+    @Test
+    fun results_sendsOneRequestPerPauseInTyping() = runTest {
+        val states = collect(search())
+
+        listOf("d", "du", "dun", "dune").forEach {
+            queries.emit(it)
+            advance(5)
+        }
+        assertTrue(fetched.isEmpty())
+
+        advance(50)
+        assertEquals(listOf(RemoteBookSearch.predicateFor("dune")), fetched)
+        assertEquals(
+            listOf(RemoteSearchState.Searching("dune"), RemoteSearchState.Done("dune", listOf(dune))),
+            states
+        )
+    }
+
+    @Test
+    fun results_cancelsTheRequestOfASupersededQuery() = runTest {
+        val firstCancelled = CompletableDeferred<Unit>()
+        val states = collect(search {
+            if (fetched.size == 1) {
+                try {
+                    awaitCancellation()
+                } finally {
+                    firstCancelled.complete(Unit)
+                }
+            }
+            listOf(dune)
+        })
+
+        queries.emit("dun")
+        advance(200)
+        assertFalse(firstCancelled.isCompleted)
+
+        queries.emit("dune")
+        advance(200)
+
+        assertTrue(firstCancelled.isCompleted)
+        assertEquals(
+            listOf(
+                RemoteSearchState.Searching("dun"),
+                RemoteSearchState.Searching("dune"),
+                RemoteSearchState.Done("dune", listOf(dune))
+            ),
+            states
+        )
+    }
+
+    @Test
+    fun results_reusesRecentResultsForTheSameNormalizedQuery() = runTest {
+        val states = collect(search())
+
+        queries.emit("Dune")
+        advance(200)
+        queries.emit("kindred")
+        advance(200)
+        queries.emit("  dune ")
+        advance(200)
+
+        assertEquals(2, fetched.size)
+        assertEquals(RemoteSearchState.Done("dune", listOf(dune)), states.last())
+    }
+
+    @Test
+    fun results_fetchesAgainOnceTheTtlExpires() = runTest {
+        collect(search())
+
+        queries.emit("dune")
+        advance(200)
+        queries.emit("kindred")
+        advance(RemoteBookSearch.TTL_MS)
+        queries.emit("dune")
+        advance(200)
+
+        assertEquals(3, fetched.size)
+    }
+
+    @Test
+    fun results_skipsQueriesAnsweredLocally() = runTest {
+        val states = collect(search(), shouldFetch = { false })
+
+        queries.emit("dune")
+        advance(200)
+
+        assertEquals(emptyList<QueryPredicate>(), fetched)
+        assertEquals(listOf(RemoteSearchState.Idle), states)
+    }
+
+    @Test
+    fun predicateFor_matchesIsbnPrefixesWithAndWithoutHyphens() {
+        assertEquals(
+            QueryPredicateGroup(
+                QueryPredicateGroup.Type.OR,
+                listOf(Book.ISBN.beginsWith("978-0-441"), Book.ISBN.beginsWith("9780441"))
+            ),
+            RemoteBookSearch.predicateFor(" 978-0-441 ")
+        )
+    }
+
+    @Test
+    fun predicateFor_matchesTitlesInCommonCasings() {
+        assertEquals(
+            QueryPredicateGroup(
+                QueryPredicateGroup.Type.OR,
+                listOf(Book.TITLE.contains("dune messiah"), Book.TITLE.contains("Dune Messiah"))
+            ),
+            RemoteBookSearch.predicateFor("dune  messiah")
+        )
+    }
+}
@@ -0,0 +1,36 @@
+package com.bookyo.services
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DecodeSizingTest {
+
+    @Test
+    fun sampleSize_isOne_whenNoTargetSize() {
+        assertEquals(1, DecodeSizing.calculateInSampleSize(4000, 3000, 0, 0))
+    }
+
+    @Test
+    fun sampleSize_isOne_whenSourceSmallerThanTarget() {
+        assertEquals(1, DecodeSizing.calculateInSampleSize(200, 300, 400, 600))
+    }
+
+    @Test
+    fun sampleSize_keepsBothDimensionsAboveTarget() {
+        // 4000x3000 camera photo shown in a 256x256 box: 500x375 is the smallest power-of-two fit
+        assertEquals(8, DecodeSizing.calculateInSampleSize(4000, 3000, 256, 256))
+    }
+
+    @Test
+    fun sampleSize_ignoresUnconstrainedAxis() {
+        assertEquals(16, DecodeSizing.calculateInSampleSize(4096, 4096, 256, 0))
+    }
+
+    @Test
+    fun bucket_roundsUpToStep() {
+        assertEquals(0, DecodeSizing.bucket(0))
+        assertEquals(64, DecodeSizing.bucket(1))
+        assertEquals(64, DecodeSizing.bucket(64))
+        assertEquals(320, DecodeSizing.bucket(275))
+    }
+}
@@ -0,0 +1,109 @@
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+// JMH benchmarks for the hot paths in :core. Run with ./gradlew :benchmarks:jmh
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+    alias(libs.plugins.jmh)
+}
+
+kotlin {
+    compilerOptions {
+        jvmTarget.set(JvmTarget.JVM_11)
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    jmh(project(":core"))
+}
+
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+}
+
+// Baselines are the scores of a reference run, stored next to this file.
+// Scores only compare on the same JDK and hardware, so no baselines are
+// committed and the check is manual, not part of `check`. Record them on the
+// machine that runs the check:
+//   ./gradlew :benchmarks:recordBenchmarkBaselines
+// and verify a change against them with:
+//   ./gradlew :benchmarks:checkBenchmarkBaselines [-PbenchmarkTolerance=0.2]
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val baselineFile = layout.projectDirectory.file("baselines.json")
+
+// Benchmark id with its parameters -> score and score error, in the
+// benchmark's own unit. Only average-time results are accepted: the check
+// treats a higher score as slower, which a throughput score would invert.
+fun readJmhScores(file: File): Map<String, Pair<Double, Double>> {
+    @Suppress("UNCHECKED_CAST")
+    val runs = groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>
+    return runs.associate { run ->
+        if (run["mode"] != "avgt") {
+            throw GradleException("${run["benchmark"]} runs in mode ${run["mode"]}; baselines only support Mode.AverageTime")
+        }
+        @Suppress("UNCHECKED_CAST")
+        val params = (run["params"] as Map<String, Any?>?).orEmpty()
+            .toSortedMap()
+            .entries
+            .joinToString(",") { (name, value) -> "$name=$value" }
+        @Suppress("UNCHECKED_CAST")
+        val metric = run["primaryMetric"] as Map<String, Any?>
+        val score = (metric["score"] as Number).toDouble()
+        val error = (metric["scoreError"] as? Number)?.toDouble()?.takeUnless { it.isNaN() } ?: 0.0
+        "${run["benchmark"]}[$params]" to (score to error)
+    }
+}
+
+tasks.register("recordBenchmarkBaselines") {
+    group = "verification"
+    description = "Runs the benchmarks and stores their scores as the new baselines"
+    dependsOn("jmh")
+    doLast {
+        val scores = readJmhScores(jmhResults.get().asFile).mapValues { it.value.first }
+        baselineFile.asFile.writeText(groovy.json.JsonOutput.prettyPrint(groovy.json.JsonOutput.toJson(scores.toSortedMap())) + "\n")
+        logger.lifecycle("Recorded ${scores.size} baselines in ${baselineFile.asFile}")
+    }
+}
+
+tasks.register("checkBenchmarkBaselines") {
+    group = "verification"
+    description = "Runs the benchmarks and fails when one is significantly slower than its baseline"
+    dependsOn("jmh")
+    doLast {
+        val baselines = baselineFile.asFile
+        if (!baselines.exists()) {
+            throw GradleException("No benchmark baselines; record them with :benchmarks:recordBenchmarkBaselines")
+        }
+        val tolerance = (findProperty("benchmarkTolerance") as String?)?.toDouble() ?: 0.2
+
+        @Suppress("UNCHECKED_CAST")
+        val expected = (groovy.json.JsonSlurper().parse(baselines) as Map<String, Number>)
+            .mapValues { it.value.toDouble() }
+        val scores = readJmhScores(jmhResults.get().asFile)
+
+        val missing = scores.keys - expected.keys
+        // Slower than allowed even at the fast end of the error margin
+        val regressions = scores.filter { (id, measured) ->
+            val baseline = expected[id] ?: return@filter false
+            measured.first - measured.second > baseline * (1 + tolerance)
+        }
+
+        scores.forEach { (id, measured) ->
+            val baseline = expected[id] ?: return@forEach
+            logger.lifecycle(String.format("%-90s %12.3f (baseline %.3f, %+.1f%%)", id, measured.first, baseline, (measured.first / baseline - 1) * 100))
+        }
+        if (missing.isNotEmpty()) {
+            throw GradleException("No baseline for: ${missing.joinToString()}; record them with :benchmarks:recordBenchmarkBaselines")
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Benchmarks slower than baseline by more than ${(tolerance * 100).toInt()}%: ${regressions.keys.joinToString()}")
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.bookyo.benchmarks
+
+import com.bookyo.core.IncrementalMapper
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Feed mapping with the shape of the search screen: books with a nested
+ * author, mapped to flat UI rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class IncrementalMapperBenchmark {
+
+    data class Entity(
+        val id: String,
+        val title: String,
+        val isbn: String,
+        val thumbnail: String?,
+        val authorId: String,
+        val authorName: String
+    )
+
+    data class Row(
+        val id: String,
+        val title: String,
+        val isbn: String,
+        val thumbnail: String?,
+        val authorId: String,
+        val authorName: String
+    )
+
+    @Param("1000", "10000", "100000")
+    var books: Int = 0
+
+    private lateinit var loaded: List<Entity>
+    private lateinit var withNextPage: List<Entity>
+    private lateinit var warmMapper: IncrementalMapper<Entity, Row>
+    private lateinit var appendMapper: IncrementalMapper<Entity, Row>
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        loaded = List(books) { entity(it) }
+        withNextPage = loaded + List(PAGE_SIZE) { entity(books + it) }
+        warmMapper = newMapper().apply { map(loaded) }
+    }
+
+    // Each append starts from a mapper holding exactly the loaded items;
+    // refilling it is excluded from the measurement
+    @Setup(Level.Invocation)
+    fun setUpAppend() {
+        appendMapper = newMapper().apply { map(loaded) }
+    }
+
+    /**
+     * Mapping everything from scratch, as a full rebuild would
+     */
+    @Benchmark
+    fun mapAllCold(): List<Row> = newMapper().map(loaded)
+
+    /**
+     * Publishing again with nothing changed
+     */
+    @Benchmark
+    fun remapUnchanged(): List<Row> = warmMapper.map(loaded)
+
+    /**
+     * A page arriving at the end of the loaded items
+     */
+    @Benchmark
+    fun appendPage(): List<Row> = appendMapper.map(withNextPage)
+
+    private fun newMapper() = IncrementalMapper<Entity, Row>(
+        idOf = { it.id },
+        isCurrent = { entity, row ->
+            row.title == entity.title &&
+                row.isbn == entity.isbn &&
+                row.thumbnail == entity.thumbnail &&
+                row.authorId == entity.authorId &&
+                row.authorName == entity.authorName
+        },
+        convert = { Row(it.id, it.title, it.isbn, it.thumbnail, it.authorId, it.authorName) },
+        maxEntries = books + PAGE_SIZE
+    )
+
+    private fun entity(i: Int) = Entity(
+        id = "book-$i",
+        title = "Title $i",
+        isbn = (9_780_000_000_000L + i).toString(),
+        thumbnail = if (i % 3 == 0) null else "thumbnails/$i.jpg",
+        authorId = "author-${i % 997}",
+        authorName = "Author ${i % 997}"
+    )
+
+    private companion object {
+        const val PAGE_SIZE = 20
+    }
+}
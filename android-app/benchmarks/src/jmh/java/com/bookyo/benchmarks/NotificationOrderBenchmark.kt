@@ -0,0 +1,44 @@
+package com.bookyo.benchmarks
+
+import com.bookyo.notifications.NotificationOrder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Inbox ordering, run after every change to the stored inbox
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class NotificationOrderBenchmark {
+
+    data class Item(val id: String, val read: Boolean, val createdAt: String)
+
+    private val order = NotificationOrder.newestFirst<Item>({ it.createdAt }, { it.read }, { it.id })
+
+    @Param("50", "1000", "10000")
+    var notifications: Int = 0
+
+    private lateinit var items: List<Item>
+
+    @Setup
+    fun setUp() {
+        val random = Random(42)
+        // Broadcasts share creation times, so ties are common
+        items = List(notifications) {
+            val minute = random.nextInt(notifications / 4 + 1)
+            Item("n-$it", random.nextInt(4) != 0, "2025-01-01T%02d:%02d:00.000Z".format(minute / 60 % 24, minute % 60))
+        }
+    }
+
+    @Benchmark
+    fun newestFirst(): List<Item> = items.sortedWith(order)
+}
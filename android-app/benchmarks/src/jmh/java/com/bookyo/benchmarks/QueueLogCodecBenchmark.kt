@@ -0,0 +1,67 @@
+package com.bookyo.benchmarks
+
+import com.bookyo.outbox.OutboxItem
+import com.bookyo.outbox.OutboxMutation
+import com.bookyo.queue.QueueLogCodec
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Outbox log records: written on every queue change, read back on replay
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class QueueLogCodecBenchmark {
+
+    @Param("100", "1000")
+    var records: Int = 0
+
+    private val codec = QueueLogCodec(OutboxItem.serializer())
+
+    private lateinit var items: List<OutboxItem>
+    private lateinit var lines: List<String>
+
+    @Setup
+    fun setUp() {
+        items = List(records) { i ->
+            val mutation = if (i % 2 == 0) {
+                OutboxMutation.CreateBook(
+                    title = "Title $i",
+                    isbn = (9_780_000_000_000L + i).toString(),
+                    authorName = "Author ${i % 97}",
+                    imagePath = "/data/files/outbox_images/$i.jpg"
+                )
+            } else {
+                OutboxMutation.CreateListing(
+                    bookId = "book-$i",
+                    price = 10.0 + i,
+                    imagePaths = listOf("/data/files/outbox_images/$i-a.jpg", "/data/files/outbox_images/$i-b.jpg")
+                )
+            }
+            OutboxItem(id = "item-$i", mutation = mutation, createdAt = 1_700_000_000_000L + i)
+        }
+        lines = items.map { codec.encodePut(it.id, it) }
+    }
+
+    @Benchmark
+    fun encode(): Int {
+        var length = 0
+        for (item in items) length += codec.encodePut(item.id, item).length
+        return length
+    }
+
+    @Benchmark
+    fun decode(): Int {
+        var decoded = 0
+        for (line in lines) if (codec.decode(line) != null) decoded++
+        return decoded
+    }
+}
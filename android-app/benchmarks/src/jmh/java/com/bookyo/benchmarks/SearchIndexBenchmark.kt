@@ -0,0 +1,76 @@
+package com.bookyo.benchmarks
+
+import com.bookyo.searchFeed.SearchIndex
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Per-keystroke search and index building over synthetic catalogs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SearchIndexBenchmark {
+
+    @Param("1000", "10000", "100000")
+    var books: Int = 0
+
+    private lateinit var docs: List<SearchIndex.Document>
+    private lateinit var index: SearchIndex
+    private lateinit var prefixes: List<String>
+    private lateinit var typos: List<String>
+    private var next = 0
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        val random = Random(42)
+        val words = List(5_000) { randomWord(random) }
+        docs = List(books) { i ->
+            SearchIndex.Document(
+                id = "book-$i",
+                title = List(1 + random.nextInt(4)) { words.random(random) }.joinToString(" "),
+                author = List(2) { words.random(random) }.joinToString(" "),
+                isbn = "978" + random.nextLong(1_000_000_000L, 9_999_999_999L)
+            )
+        }
+        index = SearchIndex().apply { rebuild(docs) }
+
+        val queried = words.shuffled(random).take(QUERIES)
+        prefixes = queried.map { it.take(4) }
+        typos = queried.map { it.substring(0, 2) + it[3] + it[2] + it.substring(4) }
+    }
+
+    /**
+     * A few letters typed: many prefix matches to rank
+     */
+    @Benchmark
+    fun prefixKeystroke(): Any = index.search(prefixes[next++ % QUERIES])
+
+    /**
+     * A whole word with swapped letters: trigram candidates and edit distance
+     */
+    @Benchmark
+    fun typoKeystroke(): Any = index.search(typos[next++ % QUERIES])
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    fun rebuild(): Any = SearchIndex().apply { rebuild(docs) }
+
+    private fun randomWord(random: Random): String {
+        val length = 5 + random.nextInt(6)
+        return String(CharArray(length) { 'a' + random.nextInt(26) })
+    }
+
+    private companion object {
+        const val QUERIES = 256
+    }
+}
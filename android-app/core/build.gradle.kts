@@ -0,0 +1,26 @@
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+// Plain Kotlin logic shared with the app, kept free of Android so it can be
+// unit-tested and benchmarked on the JVM
+plugins {
+    alias(libs.plugins.kotlin.jvm)
+    kotlin("plugin.serialization")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+kotlin {
+    compilerOptions {
+        jvmTarget.set(JvmTarget.JVM_1_8)
+    }
+}
+
+dependencies {
+    api("org.jetbrains.kotlinx:kotlinx-coroutines-core:1.7.3")
+    api("org.jetbrains.kotlinx:kotlinx-serialization-json:1.6.0")
+
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,63 @@
+package com.bookyo.core
+
+/**
+ * Maps entities to UI models, reusing the model made for an entity last
+ * time while it has not changed. Appending a page then only converts the
+ * new items, and unchanged rows keep their instance.
+ *
+ * [isCurrent] tells whether a model made earlier still matches its entity.
+ * [convert] returns null for entities that cannot be shown; those are not
+ * remembered. At most [maxEntries] models are kept, least recently mapped
+ * dropped first. Thread-safe.
+ */
+class IncrementalMapper<S : Any, T : Any>(
+    private val idOf: (S) -> String,
+    private val isCurrent: (S, T) -> Boolean,
+    private val convert: (S) -> T?,
+    private val maxEntries: Int = DEFAULT_MAX_ENTRIES
+) {
+    companion object {
+        const val DEFAULT_MAX_ENTRIES = 5_000
+    }
+
+    // Least recently mapped first
+    private val models = object : LinkedHashMap<String, T>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, T>): Boolean {
+            return size > maxEntries
+        }
+    }
+
+    val size: Int
+        get() = synchronized(models) { models.size }
+
+    /**
+     * Models of [items] in order, without the ones [convert] rejects
+     */
+    fun map(items: Iterable<S>): List<T> {
+        val result = if (items is Collection<*>) ArrayList<T>(items.size) else ArrayList()
+        synchronized(models) {
+            for (item in items) mapLocked(item)?.let { result.add(it) }
+        }
+        return result
+    }
+
+    fun map(item: S): T? = synchronized(models) { mapLocked(item) }
+
+    fun clear() {
+        synchronized(models) { models.clear() }
+    }
+
+    private fun mapLocked(item: S): T? {
+        val id = idOf(item)
+        val cached = models[id]
+        if (cached != null && isCurrent(item, cached)) return cached
+
+        val model = convert(item)
+        if (model == null) {
+            models.remove(id)
+            return null
+        }
+        models[id] = model
+        return model
+    }
+}
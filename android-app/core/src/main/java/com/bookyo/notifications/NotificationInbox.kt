@@ -0,0 +1,97 @@
+package com.bookyo.notifications
+
+import com.bookyo.queue.QueueStore
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.serialization.Serializable
+import java.io.File
+
+/**
+ * A notification as stored in the inbox. [createdAt] is the server's
+ * ISO-8601 timestamp.
+ */
+@Serializable
+data class InboxItem(
+    val id: String,
+    val title: String,
+    val body: String,
+    val recipient: String,
+    val type: String? = null,
+    val read: Boolean = false,
+    val createdAt: String? = null
+)
+
+/**
+ * The user's notifications, persisted in a [QueueStore] log so the inbox
+ * opens from disk and only notifications newer than [newest] are fetched.
+ *
+ * Items are read a page at a time in [NotificationOrder.newestFirst] order.
+ * The sorted view is rebuilt only after a change, so paging through an
+ * unchanged inbox does not sort again.
+ */
+class NotificationInbox(file: File) {
+    private val store = QueueStore(file, InboxItem.serializer()) { it.id }
+
+    private val order = NotificationOrder.newestFirst<InboxItem>({ it.createdAt }, { it.read }, { it.id })
+
+    private val mutex = Mutex()
+
+    // Null after a change until the next read
+    private var sorted: List<InboxItem>? = null
+
+    /**
+     * The first [limit] items and how many there are in all
+     */
+    suspend fun top(limit: Int): Pair<List<InboxItem>, Int> = mutex.withLock {
+        val all = sortedItems()
+        all.take(limit) to all.size
+    }
+
+    /**
+     * Creation time of the newest stored notification; fetch from there
+     */
+    suspend fun newest(): String? = mutex.withLock {
+        // Missing creation times sort last, so the first item is the newest
+        sortedItems().firstOrNull()?.createdAt
+    }
+
+    /**
+     * Store fetched notifications. A notification read on this device stays
+     * read; ones already stored unchanged are not written again.
+     */
+    suspend fun merge(items: List<InboxItem>) {
+        mutex.withLock {
+            val changed = items.mapNotNull { item ->
+                val stored = store.get(item.id)
+                val merged = if (stored?.read == true) item.copy(read = true) else item
+                merged.takeIf { it != stored }
+            }
+            if (changed.isEmpty()) return@withLock
+            store.enqueueAll(changed)
+            sorted = null
+        }
+    }
+
+    /**
+     * Stored notifications not read yet
+     */
+    suspend fun unread(): List<InboxItem> = mutex.withLock {
+        sortedItems().filter { !it.read }
+    }
+
+    /**
+     * Mark stored notifications as read, with a single write for all of them
+     */
+    suspend fun markRead(ids: Collection<String>) {
+        mutex.withLock {
+            val unread = ids.filter { store.get(it)?.read == false }
+            if (unread.isEmpty()) return@withLock
+            store.updateAll(unread) { it.copy(read = true) }
+            sorted = null
+        }
+    }
+
+    private suspend fun sortedItems(): List<InboxItem> {
+        return sorted ?: store.snapshot().sortedWith(order).also { sorted = it }
+    }
+}
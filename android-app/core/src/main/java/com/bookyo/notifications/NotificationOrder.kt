@@ -0,0 +1,21 @@
+package com.bookyo.notifications
+
+/**
+ * Order of the notifications inbox
+ */
+object NotificationOrder {
+    /**
+     * Newest first by [createdAt] (ISO-8601, so it orders as a string), unread
+     * before read when created at the same time, then by [id] so the order
+     * is stable across reloads. Missing creation times go last.
+     */
+    fun <T> newestFirst(
+        createdAt: (T) -> String?,
+        isRead: (T) -> Boolean,
+        id: (T) -> String
+    ): Comparator<T> {
+        return compareByDescending<T, String?>(nullsFirst()) { createdAt(it) }
+            .thenBy { isRead(it) }
+            .thenBy { id(it) }
+    }
+}
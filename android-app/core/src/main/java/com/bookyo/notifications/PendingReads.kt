@@ -0,0 +1,83 @@
+package com.bookyo.notifications
+
+import com.bookyo.queue.QueueStore
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.serialization.Serializable
+import java.io.File
+
+/**
+ * Notification reads waiting to be written to the server, coalesced so a
+ * burst of taps becomes one write.
+ *
+ * Each read is appended to a [QueueStore] log as soon as it happens, so it
+ * survives process death. [windowMs] after the first read of a burst, every
+ * pending id is handed to [flush] at once and dropped from the log once
+ * [flush] returns. Ids left over by a killed process go out with the next
+ * [flushNow].
+ */
+class PendingReads(
+    file: File,
+    private val scope: CoroutineScope,
+    private val windowMs: Long = DEFAULT_WINDOW_MS,
+    private val onError: (Exception) -> Unit = {},
+    private val flush: suspend (List<String>) -> Unit
+) {
+    companion object {
+        const val DEFAULT_WINDOW_MS = 1_500L
+    }
+
+    @Serializable
+    data class PendingRead(val id: String)
+
+    private val store = QueueStore(file, PendingRead.serializer()) { it.id }
+
+    private val flushLock = Mutex()
+    private var scheduled: Job? = null
+
+    /**
+     * Record reads and schedule a flush at the end of the current window
+     */
+    suspend fun add(ids: Collection<String>) {
+        if (ids.isEmpty()) return
+        store.enqueueAll(ids.map { PendingRead(it) })
+        schedule()
+    }
+
+    /**
+     * Flush every pending read now. Returns the ids flushed.
+     */
+    suspend fun flushNow(): List<String> = flushLock.withLock {
+        val ids = store.snapshot().map { it.id }
+        if (ids.isEmpty()) return@withLock ids
+        flush(ids)
+        val flushed = ids.toHashSet()
+        store.removeIf { it.id in flushed }
+        ids
+    }
+
+    suspend fun size(): Int = store.size()
+
+    @Synchronized
+    private fun schedule() {
+        if (scheduled?.isActive == true) return
+        scheduled = scope.launch {
+            delay(windowMs)
+            // Reads added during the flush below start a window of their own
+            synchronized(this@PendingReads) { scheduled = null }
+            try {
+                flushNow()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                // Still pending; the next read or start retries
+                onError(e)
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.bookyo.notifications
+
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.collectLatest
+import kotlinx.coroutines.flow.distinctUntilChanged
+import kotlin.random.Random
+
+/**
+ * Delays between retries: [initialMs], doubling up to [maxMs], each spread
+ * by up to [jitter] either way so many devices do not retry in step
+ */
+class Backoff(
+    private val initialMs: Long = 5_000L,
+    private val maxMs: Long = 5 * 60_000L,
+    private val jitter: Double = 0.2,
+    private val random: Random = Random.Default
+) {
+    private var attempt = 0
+
+    fun next(): Long {
+        val base = (initialMs shl minOf(attempt, 30)).coerceAtMost(maxMs)
+        attempt++
+        if (jitter <= 0.0) return base
+        return (base * (1 + jitter * (2 * random.nextDouble() - 1))).toLong()
+    }
+
+    fun reset() {
+        attempt = 0
+    }
+}
+
+/**
+ * Keeps local state in step with the server while the app is in the
+ * foreground.
+ *
+ * The realtime subscription is the source of updates while it is up. When
+ * it cannot connect or drops, each reconnect attempt polls [catchUp]
+ * instead, spaced by [Backoff]. Once the subscription is back (also on
+ * every return to the foreground), a single [catchUp] covers what was
+ * missed.
+ * Nothing runs in the background.
+ *
+ * [subscribe] returns once the subscription is established; the flow ends or
+ * throws when it drops.
+ */
+class RealtimeSync<E>(
+    private val subscribe: suspend () -> Flow<E>,
+    private val catchUp: suspend () -> Unit,
+    private val onEvent: suspend (E) -> Unit,
+    private val backoff: Backoff = Backoff(),
+    private val onError: (String, Exception) -> Unit = { _, _ -> },
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    companion object {
+        // A subscription that lasted this long resets the backoff; one that
+        // keeps dropping sooner is retried less and less often
+        const val STABLE_MS = 60_000L
+    }
+
+    /**
+     * Sync while [foreground] is true; suspends until cancelled
+     */
+    suspend fun run(foreground: Flow<Boolean>) {
+        foreground.distinctUntilChanged().collectLatest { inForeground ->
+            if (inForeground) syncUntilCancelled()
+        }
+    }
+
+    private suspend fun syncUntilCancelled(): Nothing {
+        backoff.reset()
+        while (true) {
+            val events = attempt("subscribe") { subscribe() }
+            if (events != null) {
+                val connectedAt = clock()
+                attempt("catchUp") { catchUp() }
+                attempt("subscription") { events.collect { onEvent(it) } }
+                if (clock() - connectedAt >= STABLE_MS) backoff.reset()
+            } else {
+                // Subscription down: poll instead
+                attempt("catchUp") { catchUp() }
+            }
+            delay(backoff.next())
+        }
+    }
+
+    private suspend fun <T> attempt(step: String, block: suspend () -> T): T? {
+        return try {
+            block()
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            onError(step, e)
+            null
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.bookyo.notifications
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.jsonObject
+import java.io.File
+import java.io.FileOutputStream
+import java.time.Instant
+import java.time.ZoneOffset
+import java.time.format.DateTimeFormatter
+
+/**
+ * Exact count of the user's unread notifications, kept from local state so
+ * refreshing it only costs id-only queries for what changed.
+ *
+ * The state, persisted to [file] after every change, is:
+ * - the ids of the unread notifications, so events and polls that report the
+ *   same notification are counted once;
+ * - the ids read on this device, which the server may not reflect yet;
+ * - a watermark: the newest creation time seen in a reconciliation, so the
+ *   next one only asks for newer notifications.
+ *
+ * Every [FULL_RECONCILE_MS] (and when there is no watermark yet) the next
+ * reconciliation lists every unread id instead, which picks up reads and
+ * deletions made elsewhere.
+ *
+ * Broadcasts are never marked read on the server (their flag is shared by
+ * every user), so they only count for [BROADCAST_RETENTION_MS]. Older ones
+ * are left out of the query, see [broadcastCutoff], which keeps a full
+ * reconciliation and the set of local reads from growing with every
+ * broadcast ever sent.
+ */
+class UnreadCounter(
+    private val file: File,
+    private val clock: () -> Long = System::currentTimeMillis
+) {
+    companion object {
+        const val FULL_RECONCILE_MS = 15 * 60_000L
+        const val BROADCAST_RETENTION_MS = 30L * 24 * 60 * 60_000
+
+        // Recipient of notifications meant for every user
+        const val BROADCAST = "*"
+
+        // Same shape as the server's timestamps, so the two compare as strings
+        private val timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC)
+
+        private val json = Json { ignoreUnknownKeys = true }
+
+        /**
+         * One page of a list query selecting `items { id recipient read createdAt }`
+         * and `nextToken`, from the raw `data` of the response
+         */
+        fun parsePage(data: String, field: String): Page {
+            val list = json.parseToJsonElement(data).jsonObject[field] as? JsonObject
+                ?: return Page(emptyList(), null)
+            return json.decodeFromJsonElement(Page.serializer(), list)
+        }
+    }
+
+    /**
+     * A notification as far as counting goes. [createdAt] is the server's
+     * ISO-8601 timestamp, which orders as a string.
+     */
+    @Serializable
+    data class Entry(
+        val id: String,
+        val read: Boolean = false,
+        val createdAt: String? = null,
+        val recipient: String? = null
+    )
+
+    @Serializable
+    data class Page(val items: List<Entry>, val nextToken: String? = null)
+
+    @Serializable
+    private data class State(
+        val unread: Set<String> = emptySet(),
+        val readLocally: Set<String> = emptySet(),
+        val watermark: String? = null,
+        val reconciledAt: Long = 0L
+    )
+
+    private val mutex = Mutex()
+
+    // Null until loaded from the file
+    private var state: State? = null
+
+    // Ids counted from events since the current reconciliation started, which
+    // its results may predate
+    private val arrivedDuringReconcile = HashSet<String>()
+
+    private val _count = MutableStateFlow(0)
+    val count: StateFlow<Int> = _count.asStateFlow()
+
+    /**
+     * Start a reconciliation. Returns the creation time to fetch unread
+     * notifications after, or null when every unread id must be fetched.
+     */
+    suspend fun beginReconcile(): String? = mutex.withLock {
+        val current = loaded()
+        arrivedDuringReconcile.clear()
+        current.watermark?.takeIf { clock() - current.reconciledAt < FULL_RECONCILE_MS }
+    }
+
+    /**
+     * Creation time before which broadcasts no longer count; the query
+     * leaves them out
+     */
+    fun broadcastCutoff(): String {
+        return timestampFormat.format(Instant.ofEpochMilli(clock() - BROADCAST_RETENTION_MS))
+    }
+
+    /**
+     * Apply the unread notifications fetched for [since], the value returned
+     * by [beginReconcile]
+     */
+    suspend fun reconcile(since: String?, fetched: List<Entry>) {
+        val cutoff = broadcastCutoff()
+        mutate { current ->
+            // In case the server returned expired broadcasts anyway
+            val unread = fetched.filter { !it.read && !(it.recipient == BROADCAST && (it.createdAt ?: cutoff) < cutoff) }
+            val fetchedIds = unread.mapTo(HashSet()) { it.id }
+            val watermark = (unread.mapNotNull { it.createdAt } + listOfNotNull(current.watermark)).maxOrNull()
+
+            if (since == null) {
+                // Server-side reads caught up with local ones that are no longer listed
+                val readLocally = current.readLocally.filterTo(HashSet()) { it in fetchedIds }
+                current.copy(
+                    unread = (fetchedIds + arrivedDuringReconcile) - readLocally,
+                    readLocally = readLocally,
+                    watermark = watermark,
+                    reconciledAt = clock()
+                )
+            } else {
+                current.copy(
+                    unread = current.unread + (fetchedIds - current.readLocally),
+                    watermark = watermark
+                )
+            }
+        }
+    }
+
+    /**
+     * Count a notification delivered by an event. Returns false when it was
+     * already counted or is read.
+     */
+    suspend fun onCreated(entry: Entry): Boolean {
+        var counted = false
+        mutate { current ->
+            if (entry.read || entry.id in current.readLocally || entry.id in current.unread) {
+                return@mutate current
+            }
+            counted = true
+            arrivedDuringReconcile.add(entry.id)
+            current.copy(unread = current.unread + entry.id)
+        }
+        return counted
+    }
+
+    /**
+     * Stop counting notifications the user read on this device
+     */
+    suspend fun markRead(ids: Collection<String>) {
+        if (ids.isEmpty()) return
+        mutate { current ->
+            arrivedDuringReconcile.removeAll(ids.toSet())
+            current.copy(unread = current.unread - ids.toSet(), readLocally = current.readLocally + ids)
+        }
+    }
+
+    /**
+     * Stop counting every unread notification, including ones not listed
+     * on this device yet
+     */
+    suspend fun markAllRead() {
+        mutate { current ->
+            arrivedDuringReconcile.clear()
+            current.copy(unread = emptySet(), readLocally = current.readLocally + current.unread)
+        }
+    }
+
+    /**
+     * Load the persisted count, if not loaded yet
+     */
+    suspend fun load() {
+        mutex.withLock { loaded() }
+    }
+
+    private suspend fun mutate(transform: (State) -> State) {
+        mutex.withLock {
+            val current = loaded()
+            val updated = transform(current)
+            if (updated == current) return@withLock
+            state = updated
+            _count.value = updated.unread.size
+            withContext(Dispatchers.IO) { write(updated) }
+        }
+    }
+
+    private suspend fun loaded(): State {
+        state?.let { return it }
+        return withContext(Dispatchers.IO) { read() }.also {
+            state = it
+            _count.value = it.unread.size
+        }
+    }
+
+    private fun read(): State {
+        if (!file.exists()) return State()
+        return try {
+            json.decodeFromString(State.serializer(), file.readText())
+        } catch (e: Exception) {
+            // Unreadable state only costs a full reconciliation
+            State()
+        }
+    }
+
+    private fun write(current: State) {
+        file.parentFile?.mkdirs()
+        val temp = File(file.parentFile, "${file.name}.tmp")
+        FileOutputStream(temp).use { out ->
+            out.write(json.encodeToString(State.serializer(), current).toByteArray())
+            out.fd.sync()
+        }
+        if (!temp.renameTo(file)) {
+            temp.copyTo(file, overwrite = true)
+            temp.delete()
+        }
+    }
+}
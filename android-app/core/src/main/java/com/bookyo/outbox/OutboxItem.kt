@@ -0,0 +1,118 @@
+package com.bookyo.outbox
+
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import java.util.UUID
+
+/**
+ * Lifecycle of an outbox item. Items are removed once committed, so there is
+ * no "done" state; an item left UPLOADING or COMMITTING by a killed process
+ * is simply picked up again by the next drain.
+ */
+@Serializable
+enum class OutboxState {
+    QUEUED,
+    UPLOADING,
+    COMMITTING,
+    FAILED
+}
+
+/**
+ * A mutation that can be queued while offline and replayed later
+ */
+@Serializable
+sealed interface OutboxMutation {
+    /**
+     * Local image files owned by the mutation; deleted with the item
+     */
+    val imagePaths: List<String> get() = emptyList()
+
+    /**
+     * Items sharing an ordering key are applied one after another, in
+     * enqueue order. Items without one run concurrently.
+     */
+    val orderingKey: String? get() = null
+
+    /**
+     * Whether the item is dropped instead of kept as FAILED when it cannot
+     * be applied. For writes whose effect is already kept on the device and
+     * that nobody retries by hand.
+     */
+    val discardOnFailure: Boolean get() = false
+
+    @Serializable
+    @SerialName("create_book")
+    data class CreateBook(
+        val title: String,
+        val isbn: String,
+        val authorName: String,
+        val imagePath: String? = null
+    ) : OutboxMutation {
+        override val imagePaths: List<String> get() = listOfNotNull(imagePath)
+    }
+
+    @Serializable
+    @SerialName("create_listing")
+    data class CreateListing(
+        val bookId: String,
+        val price: Double,
+        override val imagePaths: List<String> = emptyList()
+    ) : OutboxMutation
+
+    @Serializable
+    @SerialName("create_notification")
+    data class CreateNotification(
+        val title: String,
+        val body: String,
+        val recipient: String,
+        // Name of a NotificationType constant
+        val type: String
+    ) : OutboxMutation
+
+    /**
+     * Reads of the user's own notifications, coalesced into one item
+     */
+    @Serializable
+    @SerialName("notifications_read")
+    data class MarkNotificationsRead(
+        val notificationIds: List<String>
+    ) : OutboxMutation {
+        override val discardOnFailure: Boolean get() = true
+    }
+
+    @Serializable
+    @SerialName("wishlist_add")
+    data class AddToWishlist(
+        val wishlistId: String,
+        val bookId: String
+    ) : OutboxMutation {
+        override val orderingKey: String get() = "wishlist:$wishlistId:$bookId"
+    }
+
+    @Serializable
+    @SerialName("wishlist_remove")
+    data class RemoveFromWishlist(
+        val wishlistId: String,
+        val bookId: String
+    ) : OutboxMutation {
+        override val orderingKey: String get() = "wishlist:$wishlistId:$bookId"
+    }
+}
+
+/**
+ * One queued mutation and its delivery state.
+ *
+ * [idempotencyKey] is used as the id of the record the mutation creates, so
+ * replaying an item whose commit already reached the server is detected
+ * instead of creating a duplicate.
+ */
+@Serializable
+data class OutboxItem(
+    val id: String = UUID.randomUUID().toString(),
+    val mutation: OutboxMutation,
+    val idempotencyKey: String = id,
+    val state: OutboxState = OutboxState.QUEUED,
+    val attempts: Int = 0,
+    val lastError: String? = null,
+    val createdAt: Long = System.currentTimeMillis()
+)
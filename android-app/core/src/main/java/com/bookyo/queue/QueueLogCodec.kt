@@ -0,0 +1,58 @@
+package com.bookyo.queue
+
+import kotlinx.serialization.KSerializer
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+
+/**
+ * Line format of a [QueueStore] log: one JSON object per line, either
+ * `{"op":"put","id":...,"item":...}` or a `{"op":"del","id":...}` tombstone.
+ *
+ * Records are encoded and decoded in a single pass, item included.
+ */
+class QueueLogCodec<T>(itemSerializer: KSerializer<T>) {
+    companion object {
+        private const val OP_PUT = "put"
+        private const val OP_DELETE = "del"
+    }
+
+    sealed class Record<out T> {
+        data class Put<T>(val id: String, val item: T) : Record<T>()
+        data class Delete(val id: String) : Record<Nothing>()
+    }
+
+    @Serializable
+    private class LogRecord<T>(
+        val op: String,
+        val id: String,
+        val item: T? = null
+    )
+
+    private val json = Json { ignoreUnknownKeys = true }
+    private val recordSerializer = LogRecord.serializer(itemSerializer)
+
+    fun encodePut(id: String, item: T): String {
+        return json.encodeToString(recordSerializer, LogRecord(OP_PUT, id, item))
+    }
+
+    fun encodeDelete(id: String): String {
+        return json.encodeToString(recordSerializer, LogRecord(OP_DELETE, id))
+    }
+
+    /**
+     * The record on [line], or null when it is torn, unreadable or of an
+     * unknown kind
+     */
+    fun decode(line: String): Record<T>? {
+        val record = try {
+            json.decodeFromString(recordSerializer, line)
+        } catch (e: Exception) {
+            return null
+        }
+        return when (record.op) {
+            OP_PUT -> record.item?.let { Record.Put(record.id, it) }
+            OP_DELETE -> Record.Delete(record.id)
+            else -> null
+        }
+    }
+}
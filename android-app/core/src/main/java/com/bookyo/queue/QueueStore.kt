@@ -0,0 +1,235 @@
+package com.bookyo.queue
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.map
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.KSerializer
+import java.io.File
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+
+/**
+ * Persistent queue backed by an append-only log file.
+ *
+ * Every change is one JSON line appended to [file] (see [QueueLogCodec]): a
+ * `put` record carrying the item, or a `del` tombstone carrying only its id. The log is replayed
+ * once, into an in-memory index kept in enqueue order, so:
+ * - enqueue and remove append a single line (no rewrite of the whole queue);
+ * - lookups and removal by id are hash lookups;
+ * - reads never touch the disk after the first load.
+ *
+ * When dead records (tombstones and replaced puts) outnumber live items the
+ * log is compacted by writing the live items to a temp file and renaming it.
+ * A torn last line from a crash mid-append is skipped on replay and dropped
+ * by the compaction that follows.
+ *
+ * Every change is appended before the index is updated, so a failed write
+ * leaves memory matching the log.
+ *
+ * Use one instance per file; instances do not coordinate with each other.
+ */
+class QueueStore<T>(
+    private val file: File,
+    serializer: KSerializer<T>,
+    private val compactionThreshold: Int = DEFAULT_COMPACTION_THRESHOLD,
+    private val idOf: (T) -> String
+) {
+    companion object {
+        const val DEFAULT_COMPACTION_THRESHOLD = 32
+    }
+
+    private val codec = QueueLogCodec(serializer)
+    private val mutex = Mutex()
+
+    // Live items in enqueue order; null until the log has been replayed
+    private var index: LinkedHashMap<String, T>? = null
+    private var deadRecords = 0
+
+    // Bumped on every change so observers re-read the index
+    private val version = MutableStateFlow(0L)
+
+    /**
+     * Add [item] at the end of the queue, or replace the item with the same
+     * id in place.
+     */
+    suspend fun enqueue(item: T) {
+        enqueueAll(listOf(item))
+    }
+
+    /**
+     * Add several items with a single append
+     */
+    suspend fun enqueueAll(items: List<T>) {
+        if (items.isEmpty()) return
+        mutate { live ->
+            append(items.map { codec.encodePut(idOf(it), it) })
+            items.forEach { item ->
+                if (live.put(idOf(item), item) != null) deadRecords++
+            }
+        }
+    }
+
+    /**
+     * Replace the item with [id] by [transform] of it, keeping its position.
+     * Returns the new item, or null when it was not queued.
+     */
+    suspend fun update(id: String, transform: (T) -> T): T? {
+        return mutate { live ->
+            val current = live[id] ?: return@mutate null
+            val updated = transform(current)
+            append(listOf(codec.encodePut(id, updated)))
+            live[id] = updated
+            deadRecords++
+            updated
+        }
+    }
+
+    /**
+     * Replace each queued item among [ids] by [transform] of it, with a
+     * single append. Returns the updated items.
+     */
+    suspend fun updateAll(ids: Collection<String>, transform: (T) -> T): List<T> {
+        return mutate { live ->
+            val updated = LinkedHashMap<String, T>()
+            ids.forEach { id ->
+                val current = updated[id] ?: live[id] ?: return@forEach
+                updated[id] = transform(current)
+            }
+            if (updated.isEmpty()) return@mutate emptyList()
+            append(updated.map { (id, item) -> codec.encodePut(id, item) })
+            live.putAll(updated)
+            deadRecords += updated.size
+            updated.values.toList()
+        }
+    }
+
+    /**
+     * Remove the item with [id]. Returns the removed item, or null when it
+     * was not queued (in which case nothing is written).
+     */
+    suspend fun remove(id: String): T? {
+        return mutate { live ->
+            if (id !in live) return@mutate null
+            append(listOf(codec.encodeDelete(id)))
+            // The tombstone and the put it cancels are both dead now
+            deadRecords += 2
+            live.remove(id)
+        }
+    }
+
+    /**
+     * Remove every item matching [predicate], with a single append
+     */
+    suspend fun removeIf(predicate: (T) -> Boolean): List<T> {
+        return mutate { live ->
+            val removed = live.values.filter(predicate)
+            if (removed.isEmpty()) return@mutate removed
+            append(removed.map { codec.encodeDelete(idOf(it)) })
+            removed.forEach { live.remove(idOf(it)) }
+            deadRecords += removed.size * 2
+            removed
+        }
+    }
+
+    suspend fun get(id: String): T? = read { it[id] }
+
+    suspend fun size(): Int = read { it.size }
+
+    /**
+     * Current items in enqueue order (oldest first). Copies references from
+     * the in-memory index; nothing is decoded or read from disk.
+     */
+    suspend fun snapshot(): List<T> = read { it.values.toList() }
+
+    /**
+     * Emits a snapshot now and after every change
+     */
+    fun observe(): Flow<List<T>> = version.map { snapshot() }
+
+    private suspend fun <R> read(block: (LinkedHashMap<String, T>) -> R): R {
+        return mutex.withLock { block(loadedIndex()) }
+    }
+
+    private suspend fun <R> mutate(block: (LinkedHashMap<String, T>) -> R): R {
+        val result = mutex.withLock {
+            val live = loadedIndex()
+            val result = withContext(Dispatchers.IO) { block(live) }
+            if (deadRecords >= compactionThreshold && deadRecords > live.size) {
+                withContext(Dispatchers.IO) { compact(live) }
+            }
+            result
+        }
+        version.value++
+        return result
+    }
+
+    private suspend fun loadedIndex(): LinkedHashMap<String, T> {
+        index?.let { return it }
+        return withContext(Dispatchers.IO) { replay() }.also { index = it }
+    }
+
+    private fun replay(): LinkedHashMap<String, T> {
+        val live = LinkedHashMap<String, T>()
+        if (!file.exists()) return live
+
+        var corrupt = false
+        file.useLines { lines ->
+            for (line in lines) {
+                if (line.isBlank()) continue
+                when (val record = codec.decode(line)) {
+                    is QueueLogCodec.Record.Put -> {
+                        if (live.put(record.id, record.item) != null) deadRecords++
+                    }
+                    is QueueLogCodec.Record.Delete -> {
+                        live.remove(record.id)
+                        deadRecords += 2
+                    }
+                    null -> corrupt = true
+                }
+            }
+        }
+
+        // Rewrite right away so later appends never follow a torn line
+        if (corrupt || !endsWithNewline()) compact(live)
+        return live
+    }
+
+    private fun endsWithNewline(): Boolean {
+        RandomAccessFile(file, "r").use { raf ->
+            if (raf.length() == 0L) return true
+            raf.seek(raf.length() - 1)
+            return raf.read() == '\n'.code
+        }
+    }
+
+    private fun append(lines: List<String>) {
+        file.parentFile?.mkdirs()
+        FileOutputStream(file, true).use { out ->
+            out.write(lines.joinToString(separator = "\n", postfix = "\n").toByteArray())
+            out.fd.sync()
+        }
+    }
+
+    private fun compact(live: LinkedHashMap<String, T>) {
+        file.parentFile?.mkdirs()
+        val temp = File(file.parentFile, "${file.name}.tmp")
+        FileOutputStream(temp).use { out ->
+            val writer = out.bufferedWriter()
+            live.forEach { (id, item) ->
+                writer.write(codec.encodePut(id, item))
+                writer.write("\n")
+            }
+            writer.flush()
+            out.fd.sync()
+        }
+        if (!temp.renameTo(file)) {
+            temp.copyTo(file, overwrite = true)
+            temp.delete()
+        }
+        deadRecords = 0
+    }
+}
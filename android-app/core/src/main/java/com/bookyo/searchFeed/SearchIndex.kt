@@ -0,0 +1,330 @@
+package com.bookyo.searchFeed
+
+import java.text.Normalizer
+import java.util.Locale
+import java.util.PriorityQueue
+import java.util.TreeMap
+
+/**
+ * In-memory full-text index over book titles, author names and ISBNs.
+ *
+ * Every query word must match a word of the book, either exactly, as a
+ * prefix (so results follow each keystroke) or within one or two typos.
+ * Typo candidates come from a trigram index and are confirmed with an edit
+ * distance, so a query only looks at words that share enough trigrams with
+ * it. Hits are ranked by field (title and ISBN over author) and match
+ * quality.
+ *
+ * Documents can be added, replaced and removed one by one as they sync, and
+ * [rebuild] recreates the index from scratch. Not thread-safe; callers
+ * synchronize.
+ */
+class SearchIndex {
+    data class Document(
+        val id: String,
+        val title: String,
+        val author: String,
+        val isbn: String
+    )
+
+    data class Hit(val id: String, val score: Float)
+
+    private enum class Field(val weight: Float) {
+        TITLE(3f),
+        AUTHOR(2f),
+        ISBN(3f);
+
+        val bit = 1 shl ordinal
+    }
+
+    companion object {
+        const val DEFAULT_LIMIT = 50
+
+        private const val EXACT = 1f
+        private const val PREFIX = 0.7f
+        private const val FUZZY = 0.5f
+
+        // Shorter words have too few trigrams to tell typos from other words
+        private const val MIN_FUZZY_LENGTH = 3
+
+        private const val WORD_START = '\u0002'
+        private const val WORD_END = '\u0003'
+
+        private val NON_ALPHANUMERIC = Regex("[^\\p{L}\\p{Nd}]+")
+        private val COMBINING_MARKS = Regex("\\p{Mn}+")
+        private val ISBN_LIKE = Regex("[\\d\\s-]*\\d[\\d\\s-]*[xX]?")
+
+        fun normalize(text: String): String {
+            return Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replace(COMBINING_MARKS, "")
+                .lowercase(Locale.ROOT)
+        }
+
+        fun tokenize(text: String): List<String> {
+            return normalize(text).split(NON_ALPHANUMERIC).filter { it.isNotEmpty() }
+        }
+
+        /**
+         * ISBNs are indexed and queried as one word, without separators
+         */
+        private fun isbnToken(text: String): String = normalize(text).replace(NON_ALPHANUMERIC, "")
+
+        private fun trigrams(word: String): Array<String> {
+            val padded = "$WORD_START$word$WORD_END"
+            return Array(padded.length - 2) { padded.substring(it, it + 3) }
+        }
+
+        private fun maxEdits(word: String): Int = if (word.length <= 5) 1 else 2
+    }
+
+    private class Term(val text: String) {
+        val trigrams = trigrams(text)
+
+        // Document slot -> bits of the fields containing this term
+        val postings = HashMap<Int, Int>()
+    }
+
+    private class Indexed(val doc: Document, val terms: Set<Term>)
+
+    private val terms = HashMap<String, Term>()
+    private val sortedTerms = TreeMap<String, Term>()
+    private val termsByTrigram = HashMap<String, HashSet<Term>>()
+
+    private val slots = ArrayList<Indexed?>()
+    private val freeSlots = ArrayDeque<Int>()
+    private val slotById = HashMap<String, Int>()
+
+    val size: Int
+        get() = slotById.size
+
+    operator fun contains(id: String): Boolean = id in slotById
+
+    /**
+     * Add [doc], replacing the document with the same id if any
+     */
+    fun upsert(doc: Document) {
+        val existing = slotById[doc.id]?.let { slots[it] }
+        if (existing?.doc == doc) return
+        remove(doc.id)
+
+        val slot = freeSlots.removeLastOrNull() ?: slots.size.also { slots.add(null) }
+        val docTerms = HashSet<Term>()
+
+        fun add(word: String, field: Field) {
+            val term = terms.getOrPut(word) { newTerm(word) }
+            term.postings[slot] = (term.postings[slot] ?: 0) or field.bit
+            docTerms += term
+        }
+
+        tokenize(doc.title).forEach { add(it, Field.TITLE) }
+        tokenize(doc.author).forEach { add(it, Field.AUTHOR) }
+        isbnToken(doc.isbn).takeIf { it.isNotEmpty() }?.let { add(it, Field.ISBN) }
+
+        slots[slot] = Indexed(doc, docTerms)
+        slotById[doc.id] = slot
+    }
+
+    fun upsertAll(docs: Iterable<Document>) = docs.forEach { upsert(it) }
+
+    fun remove(id: String) {
+        val slot = slotById.remove(id) ?: return
+        val indexed = slots[slot] ?: return
+        slots[slot] = null
+        freeSlots.addLast(slot)
+
+        for (term in indexed.terms) {
+            term.postings.remove(slot)
+            if (term.postings.isEmpty()) dropTerm(term)
+        }
+    }
+
+    fun clear() {
+        terms.clear()
+        sortedTerms.clear()
+        termsByTrigram.clear()
+        slots.clear()
+        freeSlots.clear()
+        slotById.clear()
+    }
+
+    /**
+     * Recreate the index from [docs] alone
+     */
+    fun rebuild(docs: Iterable<Document>) {
+        clear()
+        upsertAll(docs)
+    }
+
+    /**
+     * Best matches for [query], highest score first. Ties go to the
+     * shorter title.
+     */
+    fun search(query: String, limit: Int = DEFAULT_LIMIT): List<Hit> {
+        val words = queryWords(query)
+        if (words.isEmpty() || limit <= 0) return emptyList()
+
+        // Longest words first: they match the fewest documents
+        var scores: HashMap<Int, Float>? = null
+        for (word in words.sortedByDescending { it.length }) {
+            val matches = match(word)
+            scores = if (scores == null) {
+                matches
+            } else {
+                val combined = HashMap<Int, Float>(minOf(scores.size, matches.size))
+                for ((slot, score) in scores) {
+                    matches[slot]?.let { combined[slot] = score + it }
+                }
+                combined
+            }
+            if (scores.isEmpty()) return emptyList()
+        }
+
+        return topHits(scores ?: return emptyList(), limit)
+    }
+
+    private fun queryWords(query: String): List<String> {
+        if (query.matches(ISBN_LIKE)) {
+            return listOf(isbnToken(query))
+        }
+        return tokenize(query).distinct()
+    }
+
+    /**
+     * Document slot -> best score of [word] among that document's terms
+     */
+    private fun match(word: String): HashMap<Int, Float> {
+        val matches = HashMap<Int, Float>()
+        val prefixMatched = HashSet<Term>()
+
+        for (term in sortedTerms.subMap(word, true, word + Char.MAX_VALUE, false).values) {
+            val quality = if (term.text.length == word.length) {
+                EXACT
+            } else {
+                PREFIX + (EXACT - PREFIX) / 2 * word.length / term.text.length
+            }
+            addPostings(term, quality, matches)
+            prefixMatched += term
+        }
+
+        if (word.length >= MIN_FUZZY_LENGTH) {
+            fuzzyMatch(word, prefixMatched, matches)
+        }
+        return matches
+    }
+
+    private fun fuzzyMatch(word: String, skip: Set<Term>, matches: HashMap<Int, Float>) {
+        val wordTrigrams = trigrams(word)
+        val shared = HashMap<Term, Int>()
+        for (trigram in wordTrigrams.distinct()) {
+            termsByTrigram[trigram]?.forEach { shared[it] = (shared[it] ?: 0) + 1 }
+        }
+
+        val maxEdits = maxEdits(word)
+
+        // One edit changes at most three trigrams, a swap four; one more for
+        // the word end, which a prefix of the term does not have
+        val minShared = wordTrigrams.size - 4 * maxEdits - 1
+
+        for ((term, count) in shared) {
+            if (count < minShared || term in skip) continue
+
+            // Typos in the whole word, or in what has been typed of it so far
+            val edits = minOf(
+                editDistance(word, term.text, maxEdits),
+                editDistance(word, term.text.take(word.length), maxEdits)
+            )
+            if (edits > maxEdits) continue
+
+            addPostings(term, FUZZY * (1f - edits.toFloat() / (word.length + 1)), matches)
+        }
+    }
+
+    private fun addPostings(term: Term, quality: Float, matches: HashMap<Int, Float>) {
+        for ((slot, fields) in term.postings) {
+            val score = quality * weightOf(fields)
+            val current = matches[slot]
+            if (current == null || score > current) matches[slot] = score
+        }
+    }
+
+    private fun weightOf(fields: Int): Float {
+        var weight = 0f
+        for (field in Field.values()) {
+            if (fields and field.bit != 0 && field.weight > weight) weight = field.weight
+        }
+        return weight
+    }
+
+    private fun topHits(scores: Map<Int, Float>, limit: Int): List<Hit> {
+        // Worst kept hit at the head, so it is the one replaced
+        val order = compareBy<Pair<Int, Float>> { it.second }
+            .thenByDescending { slots[it.first]!!.doc.title.length }
+            .thenByDescending { slots[it.first]!!.doc.id }
+        val heap = PriorityQueue(limit + 1, order)
+
+        for ((slot, score) in scores) {
+            heap.add(slot to score)
+            if (heap.size > limit) heap.poll()
+        }
+
+        val hits = ArrayList<Hit>(heap.size)
+        while (heap.isNotEmpty()) {
+            val (slot, score) = heap.poll()!!
+            hits.add(Hit(slots[slot]!!.doc.id, score))
+        }
+        hits.reverse()
+        return hits
+    }
+
+    private fun newTerm(word: String): Term {
+        val term = Term(word)
+        sortedTerms[word] = term
+        for (trigram in term.trigrams) {
+            termsByTrigram.getOrPut(trigram) { HashSet() }.add(term)
+        }
+        return term
+    }
+
+    private fun dropTerm(term: Term) {
+        terms.remove(term.text)
+        sortedTerms.remove(term.text)
+        for (trigram in term.trigrams) {
+            val set = termsByTrigram[trigram] ?: continue
+            set.remove(term)
+            if (set.isEmpty()) termsByTrigram.remove(trigram)
+        }
+    }
+
+    /**
+     * Optimal string alignment distance (adjacent swaps count as one edit),
+     * or [max] + 1 as soon as it is known to exceed [max]
+     */
+    private fun editDistance(a: String, b: String, max: Int): Int {
+        if (kotlin.math.abs(a.length - b.length) > max) return max + 1
+
+        var prevPrev = IntArray(b.length + 1)
+        var prev = IntArray(b.length + 1) { it }
+        var current = IntArray(b.length + 1)
+
+        for (i in 1..a.length) {
+            current[0] = i
+            var rowMin = current[0]
+            for (j in 1..b.length) {
+                val cost = if (a[i - 1] == b[j - 1]) 0 else 1
+                var value = minOf(prev[j] + 1, current[j - 1] + 1, prev[j - 1] + cost)
+                if (i > 1 && j > 1 && a[i - 1] == b[j - 2] && a[i - 2] == b[j - 1]) {
+                    value = minOf(value, prevPrev[j - 2] + 1)
+                }
+                current[j] = value
+                if (value < rowMin) rowMin = value
+            }
+            if (rowMin > max) return max + 1
+
+            val recycled = prevPrev
+            prevPrev = prev
+            prev = current
+            current = recycled
+        }
+        return prev[b.length]
+    }
+}
@@ -0,0 +1,65 @@
+package com.bookyo.core
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class IncrementalMapperTest {
+
+    private data class Entity(val id: String, val title: String)
+    private data class Row(val id: String, val title: String)
+
+    private val converted = mutableListOf<String>()
+
+    private val mapper = IncrementalMapper<Entity, Row>(
+        idOf = { it.id },
+        isCurrent = { entity, row -> row.title == entity.title },
+        convert = { entity ->
+            converted += entity.id
+            if (entity.title.isEmpty()) null else Row(entity.id, entity.title)
+        },
+        maxEntries = 3
+    )
+
+    @Test
+    fun map_convertsOnlyNewItemsWhenAPageIsAppended() {
+        val first = mapper.map(listOf(Entity("1", "Dune"), Entity("2", "Kindred")))
+        converted.clear()
+
+        val appended = mapper.map(listOf(Entity("1", "Dune"), Entity("2", "Kindred"), Entity("3", "Emma")))
+
+        assertEquals(listOf("3"), converted)
+        assertSame(first[0], appended[0])
+        assertSame(first[1], appended[1])
+    }
+
+    @Test
+    fun map_convertsChangedItemsAgain() {
+        val before = mapper.map(Entity("1", "Dune"))
+
+        val after = mapper.map(Entity("1", "Dune Messiah"))
+
+        assertNotSame(before, after)
+        assertEquals(Row("1", "Dune Messiah"), after)
+    }
+
+    @Test
+    fun map_skipsItemsThatCannotBeShown() {
+        assertEquals(listOf(Row("2", "Kindred")), mapper.map(listOf(Entity("1", ""), Entity("2", "Kindred"))))
+        assertEquals(1, mapper.size)
+    }
+
+    @Test
+    fun map_dropsLeastRecentlyMappedBeyondTheLimit() {
+        mapper.map(listOf(Entity("1", "a"), Entity("2", "b"), Entity("3", "c")))
+        mapper.map(Entity("1", "a"))
+        mapper.map(Entity("4", "d"))
+        converted.clear()
+
+        mapper.map(listOf(Entity("1", "a"), Entity("2", "b")))
+
+        assertEquals(listOf("2"), converted)
+        assertEquals(3, mapper.size)
+    }
+}
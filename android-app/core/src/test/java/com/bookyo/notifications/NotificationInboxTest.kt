@@ -0,0 +1,57 @@
+package com.bookyo.notifications
+
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class NotificationInboxTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private fun item(id: String, createdAt: String, read: Boolean = false) =
+        InboxItem(id, "Title $id", "Body $id", "*", "NEW_BOOK", read, createdAt)
+
+    @Test
+    fun top_pagesNewestFirstAndSurvivesReopen() = runBlocking {
+        val file = File(tempFolder.root, "inbox.log")
+        val inbox = NotificationInbox(file)
+        inbox.merge((1..50).map { item("n$it", "2025-01-01T00:00:%02d.000Z".format(it)) })
+
+        val (page, total) = NotificationInbox(file).top(10)
+        assertEquals(50, total)
+        assertEquals((50 downTo 41).map { "n$it" }, page.map { it.id })
+    }
+
+    @Test
+    fun newest_isTheLatestCreationTime() = runBlocking {
+        val inbox = NotificationInbox(File(tempFolder.root, "inbox.log"))
+        assertNull(inbox.newest())
+
+        inbox.merge(listOf(item("a", "2025-01-02T00:00:00.000Z"), item("b", "2025-01-03T00:00:00.000Z")))
+        assertEquals("2025-01-03T00:00:00.000Z", inbox.newest())
+    }
+
+    @Test
+    fun merge_keepsLocalReadsAndSkipsUnchangedItems() = runBlocking {
+        val file = File(tempFolder.root, "inbox.log")
+        val inbox = NotificationInbox(file)
+        inbox.merge(listOf(item("a", "2025-01-01T00:00:00.000Z"), item("b", "2025-01-01T00:00:00.000Z")))
+        inbox.markRead(listOf("a"))
+        val size = file.length()
+
+        // Overlapping delta sync reports both again, unread on the server
+        inbox.merge(listOf(item("a", "2025-01-01T00:00:00.000Z"), item("b", "2025-01-01T00:00:00.000Z")))
+
+        assertEquals(size, file.length())
+        val (page, _) = inbox.top(10)
+        // Same creation time: unread first
+        assertEquals(listOf("b", "a"), page.map { it.id })
+        assertTrue(page.last().read)
+    }
+}
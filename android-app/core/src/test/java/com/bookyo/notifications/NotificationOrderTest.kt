@@ -0,0 +1,24 @@
+package com.bookyo.notifications
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class NotificationOrderTest {
+
+    private data class Item(val id: String, val read: Boolean, val createdAt: String?)
+
+    private val order = NotificationOrder.newestFirst<Item>({ it.createdAt }, { it.read }, { it.id })
+
+    @Test
+    fun newestFirst_thenUnreadFirstAtTheSameTime() {
+        val items = listOf(
+            Item("a", false, "2025-01-01T00:00:00.000Z"),
+            Item("b", true, "2025-01-03T00:00:00.000Z"),
+            Item("c", false, "2025-01-03T00:00:00.000Z"),
+            Item("d", false, null),
+            Item("e", true, "2025-01-02T00:00:00.000Z")
+        )
+
+        assertEquals(listOf("c", "b", "e", "a", "d"), items.sortedWith(order).map { it.id })
+    }
+}
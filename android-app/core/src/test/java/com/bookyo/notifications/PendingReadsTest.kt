@@ -0,0 +1,77 @@
+package com.bookyo.notifications
+
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class PendingReadsTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private val flushes = mutableListOf<List<String>>()
+
+    @Test
+    fun readsInOneWindow_flushTogether() = runBlocking {
+        val reads = PendingReads(File(tempFolder.root, "reads.log"), this, windowMs = 50) { flushes += it }
+
+        reads.add(listOf("a"))
+        reads.add(listOf("b"))
+        reads.add(listOf("a"))
+        delay(200)
+
+        assertEquals(listOf(listOf("a", "b")), flushes)
+        assertEquals(0, reads.size())
+    }
+
+    @Test
+    fun readAddedDuringAFlush_isFlushedInTheNextWindow() = runBlocking {
+        lateinit var reads: PendingReads
+        reads = PendingReads(File(tempFolder.root, "reads.log"), this, windowMs = 50) { ids ->
+            if (flushes.isEmpty()) reads.add(listOf("late"))
+            flushes += ids
+        }
+
+        reads.add(listOf("a"))
+        delay(300)
+
+        assertEquals(listOf(listOf("a"), listOf("late")), flushes)
+        assertEquals(0, reads.size())
+    }
+
+    @Test
+    fun readsLeftByAKilledProcess_flushOnNextStart() = runBlocking {
+        val file = File(tempFolder.root, "reads.log")
+        // Window never ends, as if the process died before it did
+        PendingReads(file, this, windowMs = Long.MAX_VALUE) { flushes += it }.apply {
+            add(listOf("a", "b"))
+        }
+        coroutineContext.cancelChildren()
+
+        val reopened = PendingReads(file, this) { flushes += it }
+        assertEquals(listOf("a", "b"), reopened.flushNow())
+        assertEquals(listOf(listOf("a", "b")), flushes)
+    }
+
+    @Test
+    fun failedFlush_keepsReadsPending() = runBlocking {
+        var fail = true
+        val reads = PendingReads(File(tempFolder.root, "reads.log"), this, windowMs = 10) {
+            if (fail) throw IllegalStateException("offline")
+            flushes += it
+        }
+        reads.add(listOf("a"))
+        delay(100)
+        assertEquals(1, reads.size())
+
+        fail = false
+        reads.flushNow()
+        assertEquals(listOf(listOf("a")), flushes)
+        assertEquals(0, reads.size())
+    }
+}
@@ -0,0 +1,90 @@
+package com.bookyo.notifications
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.onCompletion
+import kotlinx.coroutines.flow.receiveAsFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+
+class RealtimeSyncTest {
+
+    private val events = Channel<String>(Channel.UNLIMITED)
+    private val received = mutableListOf<String>()
+    private var catchUps = 0
+    private var subscribes = 0
+    private var subscriptionUp = true
+    private var closed = CompletableDeferred<Unit>()
+
+    private val sync = RealtimeSync(
+        subscribe = {
+            subscribes++
+            if (!subscriptionUp) throw IOException("offline")
+            events.receiveAsFlow().onCompletion { closed.complete(Unit) }
+        },
+        catchUp = { catchUps++ },
+        onEvent = { received += it },
+        backoff = Backoff(initialMs = 20, maxMs = 80, jitter = 0.0)
+    )
+
+    @Test
+    fun run_reliesOnTheSubscriptionWhileItIsUp() = runBlocking {
+        val job = launch { sync.run(MutableStateFlow(true)) }
+        events.send("a")
+        events.send("b")
+        delay(200)
+        job.cancelAndJoin()
+
+        assertEquals(listOf("a", "b"), received)
+        assertEquals(1, subscribes)
+        assertEquals(1, catchUps)
+    }
+
+    @Test
+    fun run_pollsWithGrowingDelaysWhileTheSubscriptionIsDown() = runBlocking {
+        subscriptionUp = false
+        val job = launch { sync.run(MutableStateFlow(true)) }
+        // Attempts at about 0, 20, 60, 140, 220 ms
+        delay(250)
+        job.cancelAndJoin()
+
+        assertTrue("polled $catchUps times", catchUps in 4..6)
+        assertEquals(catchUps, subscribes)
+    }
+
+    @Test
+    fun run_pausesInTheBackgroundAndCatchesUpOnceOnReturn() = runBlocking {
+        val foreground = MutableStateFlow(true)
+        val job = launch { sync.run(foreground) }
+        delay(50)
+
+        foreground.value = false
+        closed.await()
+        delay(100)
+        assertEquals(1, catchUps)
+
+        closed = CompletableDeferred()
+        foreground.value = true
+        delay(50)
+        job.cancelAndJoin()
+
+        assertEquals(2, catchUps)
+        assertEquals(2, subscribes)
+    }
+
+    @Test
+    fun backoff_doublesUpToTheMaximum() {
+        val backoff = Backoff(initialMs = 10, maxMs = 50, jitter = 0.0)
+
+        assertEquals(listOf(10L, 20L, 40L, 50L, 50L), List(5) { backoff.next() })
+        backoff.reset()
+        assertEquals(10L, backoff.next())
+    }
+}
@@ -0,0 +1,146 @@
+package com.bookyo.notifications
+
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.time.Instant
+
+class UnreadCounterTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    private var now = 0L
+
+    private fun open(file: File = File(tempFolder.root, "unread.json")) = UnreadCounter(file) { now }
+
+    private fun entry(id: String, createdAt: String = "2025-01-01T00:00:00.000Z") =
+        UnreadCounter.Entry(id, read = false, createdAt = createdAt)
+
+    @Test
+    fun fullReconcile_countsBeyondAnyPageCap() = runBlocking {
+        val counter = open()
+        val since = counter.beginReconcile()
+        assertNull(since)
+
+        counter.reconcile(since, (1..250).map { entry("n$it") })
+        assertEquals(250, counter.count.value)
+    }
+
+    @Test
+    fun eventAndLaterPoll_countOnce() = runBlocking {
+        val counter = open()
+        counter.reconcile(counter.beginReconcile(), listOf(entry("a", "2025-01-01T00:00:00.000Z")))
+
+        assertTrue(counter.onCreated(entry("b", "2025-01-02T00:00:00.000Z")))
+        assertFalse(counter.onCreated(entry("b", "2025-01-02T00:00:00.000Z")))
+
+        val since = counter.beginReconcile()
+        assertEquals("2025-01-01T00:00:00.000Z", since)
+        counter.reconcile(since, listOf(entry("a"), entry("b", "2025-01-02T00:00:00.000Z")))
+        assertEquals(2, counter.count.value)
+    }
+
+    @Test
+    fun localReads_stayReadUntilServerStopsListingThem() = runBlocking {
+        val counter = open()
+        counter.reconcile(counter.beginReconcile(), listOf(entry("a"), entry("b")))
+        counter.markRead(listOf("a"))
+        assertEquals(1, counter.count.value)
+
+        // Still unread on the server
+        now += UnreadCounter.FULL_RECONCILE_MS
+        counter.reconcile(counter.beginReconcile(), listOf(entry("a"), entry("b")))
+        assertEquals(1, counter.count.value)
+        assertFalse(counter.onCreated(entry("a")))
+    }
+
+    @Test
+    fun fullReconcile_keepsEventsThatArrivedDuringIt() = runBlocking {
+        val counter = open()
+        val since = counter.beginReconcile()
+        counter.onCreated(entry("late"))
+
+        counter.reconcile(since, listOf(entry("a")))
+        assertEquals(2, counter.count.value)
+    }
+
+    @Test
+    fun fullReconcile_dropsNotificationsGoneFromServer() = runBlocking {
+        val counter = open()
+        counter.reconcile(counter.beginReconcile(), listOf(entry("a"), entry("b")))
+
+        now += UnreadCounter.FULL_RECONCILE_MS
+        val since = counter.beginReconcile()
+        assertNull(since)
+        counter.reconcile(since, listOf(entry("b")))
+        assertEquals(1, counter.count.value)
+    }
+
+    @Test
+    fun markAllRead_clearsTheCountAndKeepsItClearedOnPoll() = runBlocking {
+        val counter = open()
+        counter.reconcile(counter.beginReconcile(), listOf(entry("a"), entry("b")))
+
+        counter.markAllRead()
+        assertEquals(0, counter.count.value)
+
+        counter.reconcile(counter.beginReconcile(), listOf(entry("a"), entry("b")))
+        assertEquals(0, counter.count.value)
+    }
+
+    @Test
+    fun state_survivesReopen() = runBlocking {
+        val file = File(tempFolder.root, "unread.json")
+        val counter = open(file)
+        counter.reconcile(counter.beginReconcile(), listOf(entry("a"), entry("b"), entry("c")))
+        counter.markRead(listOf("c"))
+
+        val reopened = open(file)
+        reopened.load()
+        assertEquals(2, reopened.count.value)
+        assertEquals("2025-01-01T00:00:00.000Z", reopened.beginReconcile())
+    }
+
+    @Test
+    fun manyReadBroadcasts_areForgottenOnceTheyExpire() = runBlocking {
+        val file = File(tempFolder.root, "unread.json")
+        now = Instant.parse("2025-03-01T00:00:00Z").toEpochMilli()
+        val counter = open(file)
+        assertEquals("2025-01-30T00:00:00.000Z", counter.broadcastCutoff())
+
+        val broadcasts = (1..5_000).map {
+            UnreadCounter.Entry("b$it", createdAt = "2025-02-15T00:00:00.000Z", recipient = UnreadCounter.BROADCAST)
+        }
+        counter.reconcile(counter.beginReconcile(), broadcasts + entry("own", "2025-02-20T00:00:00.000Z"))
+        counter.markRead(broadcasts.map { it.id })
+        assertEquals(1, counter.count.value)
+        val sizeWithReads = file.length()
+
+        // Past the retention the query leaves them out; entries returned anyway are ignored
+        now += UnreadCounter.BROADCAST_RETENTION_MS
+        val since = counter.beginReconcile()
+        assertNull(since)
+        counter.reconcile(since, broadcasts.take(10) + entry("own", "2025-02-20T00:00:00.000Z"))
+
+        assertEquals(1, counter.count.value)
+        assertTrue(file.length() * 100 < sizeWithReads)
+        assertTrue(counter.onCreated(entry("new", "2025-04-01T00:00:00.000Z")))
+    }
+
+    @Test
+    fun parsePage_readsIdsAndNextToken() {
+        val page = UnreadCounter.parsePage(
+            """{"listNotifications":{"items":[{"id":"a","read":false,"createdAt":"2025-01-01T00:00:00.000Z"}],"nextToken":"t"}}""",
+            "listNotifications"
+        )
+        assertEquals(listOf(entry("a")), page.items)
+        assertEquals("t", page.nextToken)
+    }
+}
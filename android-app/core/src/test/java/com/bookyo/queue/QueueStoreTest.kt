@@ -0,0 +1,123 @@
+package com.bookyo.queue
+
+import kotlinx.coroutines.runBlocking
+import kotlinx.serialization.Serializable
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class QueueStoreTest {
+
+    @get:Rule
+    val tempFolder = TemporaryFolder()
+
+    @Serializable
+    data class Item(val id: String, val value: Int)
+
+    private fun open(file: File, threshold: Int = QueueStore.DEFAULT_COMPACTION_THRESHOLD) =
+        QueueStore(file, Item.serializer(), threshold) { it.id }
+
+    @Test
+    fun enqueueAndRemove_surviveReopen() = runBlocking {
+        val file = File(tempFolder.root, "queue.log")
+        val queue = open(file)
+        queue.enqueue(Item("a", 1))
+        queue.enqueue(Item("b", 2))
+        queue.enqueue(Item("c", 3))
+        assertEquals(Item("b", 2), queue.remove("b"))
+
+        val reopened = open(file)
+        assertEquals(listOf(Item("a", 1), Item("c", 3)), reopened.snapshot())
+        assertNull(reopened.get("b"))
+    }
+
+    @Test
+    fun enqueue_replacesItemInPlace() = runBlocking {
+        val file = File(tempFolder.root, "queue.log")
+        val queue = open(file)
+        queue.enqueueAll(listOf(Item("a", 1), Item("b", 2)))
+        queue.enqueue(Item("a", 10))
+
+        assertEquals(listOf(Item("a", 10), Item("b", 2)), open(file).snapshot())
+    }
+
+    @Test
+    fun update_keepsPositionAndSurvivesReopen() = runBlocking {
+        val file = File(tempFolder.root, "queue.log")
+        val queue = open(file)
+        queue.enqueueAll(listOf(Item("a", 1), Item("b", 2)))
+
+        assertEquals(Item("a", 5), queue.update("a") { it.copy(value = it.value + 4) })
+        assertNull(queue.update("missing") { it })
+
+        assertEquals(listOf(Item("a", 5), Item("b", 2)), open(file).snapshot())
+    }
+
+    @Test
+    fun updateAll_appendsOnceAndSkipsMissingIds() = runBlocking {
+        val file = File(tempFolder.root, "queue.log")
+        val queue = open(file)
+        queue.enqueueAll(listOf(Item("a", 1), Item("b", 2), Item("c", 3)))
+        val linesBefore = file.readLines().size
+
+        val updated = queue.updateAll(listOf("a", "c", "missing")) { it.copy(value = 0) }
+
+        assertEquals(listOf(Item("a", 0), Item("c", 0)), updated)
+        assertEquals(linesBefore + 2, file.readLines().size)
+        assertEquals(listOf(Item("a", 0), Item("b", 2), Item("c", 0)), open(file).snapshot())
+    }
+
+    @Test
+    fun failedAppend_leavesTheIndexUnchanged() = runBlocking {
+        // The parent is a regular file, so every append fails
+        val queue = open(File(tempFolder.newFile("blocker"), "queue.log"))
+
+        val failure = runCatching { queue.enqueue(Item("a", 1)) }.exceptionOrNull()
+
+        assertTrue(failure is java.io.IOException)
+        assertEquals(emptyList<Item>(), queue.snapshot())
+    }
+
+    @Test
+    fun remove_appendsInsteadOfRewriting() = runBlocking {
+        val file = File(tempFolder.root, "queue.log")
+        val queue = open(file)
+        queue.enqueueAll((1..100).map { Item("id$it", it) })
+        val sizeBefore = file.length()
+
+        queue.remove("id50")
+
+        // One short tombstone line, regardless of the queue size
+        val appended = file.length() - sizeBefore
+        assertTrue("appended $appended bytes", appended in 1..64)
+    }
+
+    @Test
+    fun compaction_dropsDeadRecords() = runBlocking {
+        val file = File(tempFolder.root, "queue.log")
+        val queue = open(file, threshold = 4)
+        queue.enqueueAll((1..10).map { Item("id$it", it) })
+        (1..8).forEach { queue.remove("id$it") }
+
+        assertEquals(2, file.readLines().size)
+        assertEquals(listOf(Item("id9", 9), Item("id10", 10)), open(file).snapshot())
+    }
+
+    @Test
+    fun replay_skipsTornLastLine() = runBlocking {
+        val file = File(tempFolder.root, "queue.log")
+        open(file).enqueue(Item("a", 1))
+        file.appendText("{\"op\":\"put\",\"id\":\"b\",\"item\":{\"id\":\"b\"")
+
+        val reopened = open(file)
+        assertEquals(listOf(Item("a", 1)), reopened.snapshot())
+
+        // Later appends must not be glued to the torn line
+        reopened.enqueue(Item("c", 3))
+        assertEquals(listOf(Item("a", 1), Item("c", 3)), open(file).snapshot())
+    }
+}
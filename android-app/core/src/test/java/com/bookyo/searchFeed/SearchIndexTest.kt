@@ -0,0 +1,121 @@
+package com.bookyo.searchFeed
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.random.Random
+
+class SearchIndexTest {
+
+    private fun doc(id: String, title: String, author: String = "", isbn: String = "") =
+        SearchIndex.Document(id, title, author, isbn)
+
+    private val index = SearchIndex().apply {
+        upsertAll(
+            listOf(
+                doc("dune", "Dune", "Frank Herbert", "978-0-441-17271-9"),
+                doc("messiah", "Dune Messiah", "Frank Herbert", "978-0-593-09823-5"),
+                doc("dunes", "The Dunes of Arrakis", "Brian Herbert"),
+                doc("leguin", "The Left Hand of Darkness", "Ursula K. Le Guin"),
+                doc("garcia", "Cien años de soledad", "Gabriel García Márquez")
+            )
+        )
+    }
+
+    private fun ids(query: String) = index.search(query).map { it.id }
+
+    @Test
+    fun search_matchesPrefixesAsTheQueryIsTyped() {
+        assertEquals(listOf("leguin"), ids("dark"))
+        assertTrue("dune" in ids("du"))
+    }
+
+    @Test
+    fun search_ranksExactWordsAboveLongerOnesAndTitlesAboveAuthors() {
+        assertEquals("dune", ids("dune").first())
+        assertEquals(listOf("leguin"), ids("left").take(1))
+        assertEquals(listOf("dune", "messiah", "dunes"), ids("herbert dune"))
+    }
+
+    @Test
+    fun search_toleratesTypos() {
+        assertEquals("dune", ids("dume").first())
+        assertTrue("dune" in ids("herbret"))
+        assertTrue("leguin" in ids("darknes"))
+    }
+
+    @Test
+    fun search_ignoresCaseAndAccents() {
+        assertEquals(listOf("garcia"), ids("GARCIA anos"))
+    }
+
+    @Test
+    fun search_findsIsbnsWithOrWithoutHyphens() {
+        assertEquals(listOf("dune"), ids("9780441172719"))
+        assertEquals(listOf("dune"), ids("978-0-441"))
+    }
+
+    @Test
+    fun search_requiresEveryWordToMatch() {
+        assertEquals(listOf("messiah"), ids("dune messiah"))
+        assertEquals(emptyList<String>(), ids("dune darkness"))
+    }
+
+    @Test
+    fun upsertAndRemove_keepTheIndexCurrent() {
+        index.upsert(doc("dune", "Children of Dune", "Frank Herbert"))
+        assertTrue("dune" in ids("children"))
+
+        index.remove("messiah")
+        assertEquals(emptyList<String>(), ids("messiah"))
+        assertEquals(4, index.size)
+    }
+
+    @Test
+    fun rebuild_dropsEverythingNotPassedIn() {
+        index.rebuild(listOf(doc("kindred", "Kindred", "Octavia E. Butler")))
+
+        assertEquals(emptyList<String>(), ids("dune"))
+        assertEquals(listOf("kindred"), ids("kin"))
+        assertEquals(1, index.size)
+    }
+
+    /**
+     * Coarse latency guard for a keystroke over a large catalog
+     */
+    @Test
+    fun search_answersKeystrokesQuicklyOnALargeCatalog() {
+        val random = Random(42)
+        val words = List(5_000) { randomWord(random) }
+        val large = SearchIndex()
+        large.rebuild(List(30_000) { i ->
+            doc(
+                id = "book-$i",
+                title = List(1 + random.nextInt(4)) { words.random(random) }.joinToString(" "),
+                author = List(2) { words.random(random) }.joinToString(" "),
+                isbn = "978" + random.nextLong(1_000_000_000L, 9_999_999_999L)
+            )
+        })
+
+        // Every prefix of some words, with a typo in half of them
+        val queries = words.shuffled(random).take(200).flatMapIndexed { i, word ->
+            val typed = if (i % 2 == 0) word else word.substring(0, 2) + word[3] + word[2] + word.substring(4)
+            (1..typed.length).map { typed.take(it) }
+        }
+
+        repeat(3) { queries.forEach { large.search(it) } }
+        val timings = queries.map { query ->
+            val start = System.nanoTime()
+            large.search(query)
+            System.nanoTime() - start
+        }.sorted()
+
+        val p95Ms = timings[timings.size * 95 / 100] / 1_000_000.0
+        assertTrue("p95 was $p95Ms ms", p95Ms < 20.0)
+    }
+
+    private fun randomWord(random: Random): String {
+        val length = 5 + random.nextInt(6)
+        return String(CharArray(length) { 'a' + random.nextInt(26) })
+    }
+}
@@ -22,3 +22,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Bookyo"
 include(":app")
+include(":core")
+include(":benchmarks")